@@ -0,0 +1,30 @@
+package com.spring.getready.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class ExtractionConfig {
+
+	@Value("${extraction.pool-size:2}")
+	private int poolSize;
+
+	@Value("${extraction.queue-capacity:100}")
+	private int queueCapacity;
+
+	@Bean(name = "extractionExecutor")
+	public ThreadPoolTaskExecutor extractionExecutor() {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(poolSize);
+		executor.setMaxPoolSize(poolSize);
+		executor.setQueueCapacity(queueCapacity);
+		executor.setThreadNamePrefix("extraction-");
+		// parsing yields to request threads when the CPU is contended
+		executor.setThreadPriority(Thread.NORM_PRIORITY - 1);
+		executor.setWaitForTasksToCompleteOnShutdown(false);
+		return executor;
+	}
+
+}
@@ -0,0 +1,158 @@
+package com.spring.getready.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.apache.catalina.connector.Connector;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.tomcat.TomcatConnectorCustomizer;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import com.spring.getready.services.RecruitmentService;
+import com.spring.getready.services.ingestion.ApplicationIngestionService;
+import com.spring.getready.services.ingestion.JournalReplayService;
+import com.spring.getready.services.journal.ApplicationJournal;
+
+/**
+ * Drains work in order when the context closes, before any executor or the
+ * data source is destroyed: the connector stops taking requests and finishes
+ * the ones in flight, including upload handlers running on the upload pool,
+ * the journal replay stops, then screening and
+ * extraction get what is left of the deadline. Whatever does not finish is
+ * already recorded for the next start, as journal records or as applications
+ * still in "Processing", whose screening leases are released for whichever
+ * instance starts next.
+ */
+@Component
+public class GracefulShutdown implements TomcatConnectorCustomizer, ApplicationListener<ContextClosedEvent>,
+		WebServerFactoryCustomizer<TomcatServletWebServerFactory> {
+
+	@Value("${shutdown.timeout-seconds:25}")
+	private long timeoutSeconds;
+
+	private volatile Connector connector;
+
+	@Override
+	public void customize(TomcatServletWebServerFactory factory) {
+		factory.addConnectorCustomizers(this);
+	}
+
+	@Override
+	public void customize(Connector connector) {
+		this.connector = connector;
+	}
+
+	@Override
+	public void onApplicationEvent(ContextClosedEvent event) {
+		// looked up here rather than injected, so the web server factory does not pull in the services early
+		ApplicationContext context = event.getApplicationContext();
+		JournalReplayService journalReplayService = context.getBean(JournalReplayService.class);
+		RecruitmentService recruitmentService = context.getBean(RecruitmentService.class);
+		ApplicationJournal applicationJournal = context.getBean(ApplicationJournal.class);
+		ThreadPoolTaskExecutor ingestionExecutor = context.getBean("ingestionExecutor", ThreadPoolTaskExecutor.class);
+		ThreadPoolTaskExecutor extractionExecutor = context.getBean("extractionExecutor", ThreadPoolTaskExecutor.class);
+		ThreadPoolTaskExecutor importExecutor = context.getBean("importExecutor", ThreadPoolTaskExecutor.class);
+		ThreadPoolTaskExecutor uploadExecutor = context.getBean("uploadExecutor", ThreadPoolTaskExecutor.class);
+		long deadline = System.currentTimeMillis() + timeoutSeconds * 1000;
+		System.out.println("=== Graceful shutdown (" + timeoutSeconds + "s) ===");
+		try {
+			drainRequests(uploadExecutor, deadline);
+			// the replay thread feeds screening, so it stops first
+			boolean replayStopped = journalReplayService.stop(remaining(deadline));
+			System.out.println("Journal replay " + (replayStopped ? "stopped" : "interrupted") + ", "
+					+ applicationJournal.getBacklog() + " applications deferred in the journal");
+
+			List<Integer> deferredScreenings = new ArrayList<>();
+			drain("Screening", ingestionExecutor, deadline, task -> {
+				if (task instanceof ApplicationIngestionService.ScreeningTask) {
+					deferredScreenings.add(((ApplicationIngestionService.ScreeningTask) task).getApplicationId());
+				}
+			});
+			if (!deferredScreenings.isEmpty()) {
+				System.out.println("Applications left in Processing for the next start: " + deferredScreenings);
+				releaseScreenings(recruitmentService, deferredScreenings);
+			}
+
+			// an unfinished import leaves its remaining files stored without rows
+			drain("Import", importExecutor, deadline, task -> { });
+
+			// unextracted text is extracted again the next time it is read
+			drain("Extraction", extractionExecutor, deadline, task -> {
+				if (task instanceof Future) {
+					((Future<?>) task).cancel(false);
+				}
+			});
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			System.out.println("Graceful shutdown interrupted");
+		}
+		System.out.println("=== Graceful shutdown complete ===");
+	}
+
+	private static void releaseScreenings(RecruitmentService recruitmentService, List<Integer> applicationIds) {
+		try {
+			recruitmentService.releaseScreenings(applicationIds);
+		} catch (RuntimeException e) {
+			System.out.println("Could not release screening leases, they expire on their own: " + e.getMessage());
+		}
+	}
+
+	private void drainRequests(ThreadPoolTaskExecutor uploadExecutor, long deadline) throws InterruptedException {
+		if (connector == null) {
+			return;
+		}
+		connector.pause();
+		// upload handlers dispatch back to a request thread to render, so they finish first
+		drain("Uploads", uploadExecutor, deadline, task -> { });
+		Executor executor = connector.getProtocolHandler().getExecutor();
+		if (executor instanceof ThreadPoolExecutor) {
+			ThreadPoolExecutor requests = (ThreadPoolExecutor) executor;
+			int active = requests.getActiveCount();
+			requests.shutdown();
+			if (!requests.awaitTermination(remaining(deadline), TimeUnit.MILLISECONDS)) {
+				System.out.println("Requests: " + requests.getActiveCount() + " of " + active
+						+ " still running at the deadline");
+			} else {
+				System.out.println("Requests: " + active + " in flight drained");
+			}
+		}
+	}
+
+	/**
+	 * Lets the running and queued tasks finish until the deadline, then
+	 * interrupts the running ones and hands the queued ones to the given
+	 * consumer.
+	 */
+	private static void drain(String name, ThreadPoolTaskExecutor executor, long deadline,
+			Consumer<Runnable> deferred) throws InterruptedException {
+		ThreadPoolExecutor pool = executor.getThreadPoolExecutor();
+		long completedBefore = pool.getCompletedTaskCount();
+		pool.shutdown();
+		int interrupted = 0;
+		int queued = 0;
+		if (!pool.awaitTermination(remaining(deadline), TimeUnit.MILLISECONDS)) {
+			interrupted = pool.getActiveCount();
+			List<Runnable> leftover = pool.shutdownNow();
+			queued = leftover.size();
+			leftover.forEach(deferred);
+		}
+		System.out.println(name + ": " + (pool.getCompletedTaskCount() - completedBefore) + " drained, "
+				+ interrupted + " interrupted, " + queued + " deferred");
+	}
+
+	private static long remaining(long deadline) {
+		return Math.max(deadline - System.currentTimeMillis(), 0);
+	}
+
+}
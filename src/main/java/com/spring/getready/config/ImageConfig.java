@@ -0,0 +1,30 @@
+package com.spring.getready.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class ImageConfig {
+
+	@Value("${image.pool-size:1}")
+	private int poolSize;
+
+	@Value("${image.queue-capacity:50}")
+	private int queueCapacity;
+
+	@Bean(name = "imageExecutor")
+	public ThreadPoolTaskExecutor imageExecutor() {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(poolSize);
+		executor.setMaxPoolSize(poolSize);
+		executor.setQueueCapacity(queueCapacity);
+		executor.setThreadNamePrefix("image-");
+		executor.setThreadPriority(Thread.NORM_PRIORITY - 1);
+		// a missing variant is generated again the next time it is asked for
+		executor.setWaitForTasksToCompleteOnShutdown(false);
+		return executor;
+	}
+
+}
@@ -0,0 +1,47 @@
+package com.spring.getready.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class IngestionConfig {
+
+	@Value("${ingestion.pool-size:2}")
+	private int poolSize;
+
+	@Value("${ingestion.queue-capacity:50}")
+	private int queueCapacity;
+
+	@Value("${import.pool-size:0}")
+	private int importPoolSize;
+
+	@Bean(name = "ingestionExecutor")
+	public ThreadPoolTaskExecutor ingestionExecutor() {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(poolSize);
+		executor.setMaxPoolSize(poolSize);
+		executor.setQueueCapacity(queueCapacity);
+		executor.setThreadNamePrefix("ingestion-");
+		executor.setWaitForTasksToCompleteOnShutdown(false);
+		return executor;
+	}
+
+	/**
+	 * Extracts and scores bulk imports. Sized to the cores unless configured,
+	 * since the work is CPU-bound; callers bound the queue themselves.
+	 */
+	@Bean(name = "importExecutor")
+	public ThreadPoolTaskExecutor importExecutor() {
+		int size = importPoolSize > 0 ? importPoolSize : Runtime.getRuntime().availableProcessors();
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(size);
+		executor.setMaxPoolSize(size);
+		executor.setThreadNamePrefix("import-");
+		executor.setThreadPriority(Thread.NORM_PRIORITY - 1);
+		executor.setWaitForTasksToCompleteOnShutdown(false);
+		return executor;
+	}
+
+}
@@ -0,0 +1,31 @@
+package com.spring.getready.config;
+
+import javax.servlet.DispatcherType;
+
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.spring.getready.interceptor.RateLimitFilter;
+
+@Configuration
+public class RateLimitConfig {
+
+	/**
+	 * Runs the rate limiter ahead of the upload spooler and Spring Security,
+	 * on the initial dispatch only, so a throttled upload is refused before its
+	 * body is read and a spooled one is not counted twice. The user comes from
+	 * the session.
+	 */
+	@Bean
+	public FilterRegistrationBean<RateLimitFilter> rateLimitFilterRegistration(RateLimitFilter rateLimitFilter) {
+		FilterRegistrationBean<RateLimitFilter> registration = new FilterRegistrationBean<>(rateLimitFilter);
+		registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER - 2);
+		registration.setDispatcherTypes(DispatcherType.REQUEST);
+		registration.setAsyncSupported(true);
+		registration.addUrlPatterns("/*");
+		return registration;
+	}
+
+}
@@ -0,0 +1,97 @@
+package com.spring.getready.config;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Paths;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+
+import com.spring.getready.services.storage.CachingStorageBackend;
+import com.spring.getready.services.storage.LocalStorageBackend;
+import com.spring.getready.services.storage.S3StorageBackend;
+import com.spring.getready.services.storage.StorageBackend;
+
+import io.micrometer.core.instrument.binder.MeterBinder;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.S3Configuration;
+
+/**
+ * Chooses where upload blobs are kept: the local disk, or with
+ * {@code storage.backend=s3} an S3-compatible bucket shared by all instances.
+ */
+@Configuration
+public class StorageConfig {
+
+	@Bean
+	@ConditionalOnProperty(name = "storage.backend", havingValue = "local", matchIfMissing = true)
+	public StorageBackend localStorageBackend(@Value("${storage.blob-path:${file.upload-path}/blobs}") String blobPath) {
+		System.out.println("Storing uploads in " + blobPath);
+		return new LocalStorageBackend(Paths.get(blobPath));
+	}
+
+	/**
+	 * Unless disabled, reads go through a local disk cache, so viewing a
+	 * resume again does not fetch it from the bucket.
+	 */
+	@Bean
+	@ConditionalOnProperty(name = "storage.backend", havingValue = "s3")
+	public StorageBackend s3StorageBackend(S3Client s3Client, @Value("${storage.s3.bucket}") String bucket,
+			@Value("${storage.s3.prefix:blobs/}") String prefix,
+			@Value("${storage.s3.part-size-mb:8}") int partSizeMb,
+			@Value("${storage.cache.enabled:true}") boolean cacheEnabled,
+			@Value("${storage.cache.path:${file.upload-path}/blob-cache}") String cachePath,
+			@Value("${storage.cache.max-mb:1024}") long cacheMaxMb) throws IOException {
+		System.out.println("Storing uploads in bucket " + bucket + "/" + prefix);
+		StorageBackend backend = new S3StorageBackend(s3Client, bucket, prefix, partSizeMb * 1024 * 1024);
+		if (cacheEnabled) {
+			backend = new CachingStorageBackend(backend, Paths.get(cachePath), cacheMaxMb * 1024 * 1024);
+		}
+		return backend;
+	}
+
+	/**
+	 * Publishes the cache hit ratio, when there is a cache.
+	 */
+	@Bean
+	public MeterBinder storageCacheMetrics(StorageBackend storageBackend) {
+		return registry -> {
+			if (storageBackend instanceof CachingStorageBackend) {
+				((CachingStorageBackend) storageBackend).bindTo(registry);
+			}
+		};
+	}
+
+	/**
+	 * Without an endpoint this talks to AWS; with one, to MinIO or another
+	 * S3-compatible store, addressing buckets by path. Without an access key
+	 * the default AWS credential chain is used.
+	 */
+	@Bean(destroyMethod = "close")
+	@ConditionalOnProperty(name = "storage.backend", havingValue = "s3")
+	public S3Client s3Client(@Value("${storage.s3.endpoint:}") String endpoint,
+			@Value("${storage.s3.region:us-east-1}") String region,
+			@Value("${storage.s3.access-key:}") String accessKey,
+			@Value("${storage.s3.secret-key:}") String secretKey) {
+		S3ClientBuilder builder = S3Client.builder().region(Region.of(region));
+		if (StringUtils.hasText(endpoint)) {
+			builder.endpointOverride(URI.create(endpoint))
+					.serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(true).build());
+		}
+		if (StringUtils.hasText(accessKey)) {
+			builder.credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey)));
+		} else {
+			builder.credentialsProvider(DefaultCredentialsProvider.create());
+		}
+		return builder.build();
+	}
+
+}
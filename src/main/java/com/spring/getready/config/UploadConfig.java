@@ -0,0 +1,89 @@
+package com.spring.getready.config;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import com.spring.getready.interceptor.SpoolingUploadFilter;
+import com.spring.getready.services.ingestion.CapacityException;
+
+@Configuration
+public class UploadConfig implements WebMvcConfigurer {
+
+	@Value("${upload.pool-size:4}")
+	private int poolSize;
+
+	@Value("${upload.queue-capacity:100}")
+	private int queueCapacity;
+
+	@Value("${upload.processing-timeout-seconds:120}")
+	private long processingTimeoutSeconds;
+
+	@Value("${upload.retry-after-seconds:30}")
+	private int retryAfterSeconds;
+
+	/**
+	 * Runs the upload handlers returned as Callables, off the request threads.
+	 * When it is saturated the upload is refused with a 503 and Retry-After
+	 * rather than handled on the request thread, which would then be held for
+	 * as long as the upload takes.
+	 */
+	@Bean(name = "uploadExecutor")
+	public ThreadPoolTaskExecutor uploadExecutor() {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(poolSize);
+		executor.setMaxPoolSize(poolSize);
+		executor.setQueueCapacity(queueCapacity);
+		executor.setThreadNamePrefix("upload-");
+		executor.setRejectedExecutionHandler((task, pool) -> {
+			// rejected on the request thread, which still holds the response
+			ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
+			HttpServletResponse response = attributes != null ? attributes.getResponse() : null;
+			if (response != null) {
+				response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+			}
+			// the cause gives the response status
+			throw new RejectedExecutionException("Upload pool is full",
+					new CapacityException("Too many uploads are being processed"));
+		});
+		executor.setWaitForTasksToCompleteOnShutdown(false);
+		return executor;
+	}
+
+	@Override
+	public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+		configurer.setTaskExecutor(uploadExecutor());
+		configurer.setDefaultTimeout(processingTimeoutSeconds * 1000);
+	}
+
+	/**
+	 * Spools multipart bodies before Spring Security, whose CSRF check would
+	 * otherwise parse them on a request thread, and after the rate limiter.
+	 * Only the initial dispatch is filtered; the dispatch of the spooled
+	 * request runs the rest of the chain as usual.
+	 */
+	@Bean
+	public FilterRegistrationBean<SpoolingUploadFilter> spoolingUploadFilterRegistration(
+			SpoolingUploadFilter spoolingUploadFilter) {
+		FilterRegistrationBean<SpoolingUploadFilter> registration = new FilterRegistrationBean<>(spoolingUploadFilter);
+		registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER - 1);
+		registration.setDispatcherTypes(DispatcherType.REQUEST);
+		registration.setAsyncSupported(true);
+		registration.addUrlPatterns("/*");
+		return registration;
+	}
+
+}
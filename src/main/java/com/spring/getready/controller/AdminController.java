@@ -1,16 +1,20 @@
 package com.spring.getready.controller;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.Date;
+import java.io.InputStream;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 import java.sql.Time;
 import java.text.SimpleDateFormat;
 
+import javax.servlet.http.HttpServletRequest;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -25,13 +29,13 @@ import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
-import com.spring.getready.config.FilePropertyConfig;
 import com.spring.getready.interceptor.FileException;
 import com.spring.getready.model.Application;
 import com.spring.getready.model.AssignmentDetail;
 import com.spring.getready.model.CourseList;
 import com.spring.getready.model.JobPosting;
 import com.spring.getready.model.StaffDetail;
+import com.spring.getready.model.UploadFile;
 import com.spring.getready.model.UserDetail;
 import com.spring.getready.repository.ApplicationRepository;
 import com.spring.getready.repository.AssignmentDetailRepository;
@@ -41,8 +45,16 @@ import com.spring.getready.repository.StaffDetailRepository;
 import com.spring.getready.repository.UserDetailRepository;
 import com.spring.getready.services.AssignmentService;
 import com.spring.getready.services.CourseService;
+import com.spring.getready.services.RecruitmentService;
 import com.spring.getready.services.StaffService;
+import com.spring.getready.services.UploadFileService;
 import com.spring.getready.services.UserService;
+import com.spring.getready.services.ingestion.BulkImport;
+import com.spring.getready.services.ingestion.BulkImportService;
+import com.spring.getready.services.storage.FileStorageService;
+import com.spring.getready.services.upload.UnsupportedFileException;
+import com.spring.getready.services.upload.UploadPolicy;
+import com.spring.getready.services.upload.UploadReceipt;
 import com.spring.getready.template.model.AssignmentTemplate;
 
 @Controller
@@ -67,7 +79,13 @@ public class AdminController {
 	private ApplicationRepository applicationRepository;
 
 	@Autowired
-	private FilePropertyConfig filePropertyConfig;
+	private RecruitmentService recruitmentService;
+
+	@Autowired
+	private FileStorageService fileStorageService;
+
+	@Autowired
+	private UploadFileService uploadFileService;
 
 	@Autowired
 	private UserService userService;
@@ -81,6 +99,9 @@ public class AdminController {
 	@Autowired
 	private AssignmentService assignmentService;
 
+	@Autowired
+	private BulkImportService bulkImportService;
+
 	@RequestMapping(path = "/admin", method = RequestMethod.GET)
 	public ModelAndView redirectAdminHome(ModelAndView modelAndView) {
 		modelAndView.setViewName("redirect:/admin/users");
@@ -115,25 +136,28 @@ public class AdminController {
 	}
 
 	@RequestMapping(path = "/admin/upload/users", method = RequestMethod.POST)
-	public ModelAndView upload(@RequestParam("users") MultipartFile file, ModelAndView modelView,
-			RedirectAttributes redirectAttributes) throws FileException {
-		if (file != null) {
-			String fileName = new Date().getTime() + "_" + file.getOriginalFilename();
-			Path path = Paths.get(new File(filePropertyConfig.getFilePath() + File.separator + fileName).toURI());
-			try {
-				Path outputPath = Files.write(path, file.getBytes());
-				if (outputPath != null) {
-					boolean result = userService.uploadUsers(path.toAbsolutePath().toString());
+	public Callable<ModelAndView> upload(@RequestParam("users") MultipartFile file, ModelAndView modelView,
+			RedirectAttributes redirectAttributes) {
+		return () -> {
+			if (file != null) {
+				try {
+					UploadReceipt receipt = fileStorageService.store(file, UploadPolicy.USER_IMPORT);
+					boolean result;
+					try (InputStream input = fileStorageService.open(receipt.getFileName(), receipt.getSha256())) {
+						result = userService.uploadUsers(input);
+					}
 					if (result) {
 						redirectAttributes.addFlashAttribute("message", "Users created successfully");
 					}
 					modelView.setViewName("redirect:/admin/users");
+				} catch (UnsupportedFileException unsupported) {
+					throw unsupported;
+				} catch (IOException io) {
+					throw new FileException("Error while upload users");
 				}
-			} catch (IOException io) {
-				throw new FileException("Error while upload users");
 			}
-		}
-		return modelView;
+			return modelView;
+		};
 	}
 
 	@RequestMapping(path = "/admin/user/reset", method = RequestMethod.POST)
@@ -205,7 +229,7 @@ public class AdminController {
 		job.setIsActive(true);
 		job.setUserDetail(userDetail);
 		
-		jobPostingRepository.save(job);
+		recruitmentService.saveJobPosting(job);
 		modelView.setViewName("redirect:/admin/jobs");
 		return modelView;
 	}
@@ -215,12 +239,40 @@ public class AdminController {
 		JobPosting job = jobPostingRepository.findById(id).orElse(null);
 		if (job != null) {
 			job.setIsActive(!job.getIsActive());
-			jobPostingRepository.save(job);
+			recruitmentService.saveJobPosting(job);
 		}
 		modelView.setViewName("redirect:/admin/jobs");
 		return modelView;
 	}
 
+	@PostMapping(path = "/admin/job/{id}/import", consumes = { "application/zip", "application/x-zip-compressed",
+			"application/octet-stream" })
+	public Callable<ResponseEntity<Map<String, Object>>> importResumes(@PathVariable Integer id,
+			HttpServletRequest request) {
+		JobPosting job = jobPostingRepository.findById(id).orElse(null);
+		if (job == null) {
+			return () -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+					.body(Collections.singletonMap("message", "Job not found"));
+		}
+		String contextPath = request.getContextPath();
+		// the body is read as it arrives on an upload worker, never buffered or unpacked to a temp directory
+		return () -> {
+			BulkImport bulkImport = bulkImportService.importZip(job, request.getInputStream());
+			return ResponseEntity.status(HttpStatus.ACCEPTED)
+					.header(HttpHeaders.LOCATION, contextPath + "/admin/import/" + bulkImport.getImportId())
+					.body(bulkImport.toReport());
+		};
+	}
+
+	@GetMapping("/admin/import/{importId}")
+	public ResponseEntity<Map<String, Object>> importProgress(@PathVariable String importId) {
+		BulkImport bulkImport = bulkImportService.getImport(importId);
+		if (bulkImport == null) {
+			return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Collections.singletonMap("message", "Import not found"));
+		}
+		return ResponseEntity.ok(bulkImport.toReport());
+	}
+
 	@GetMapping("/admin/application/status/{id}")
 	public String updateApplicationStatus(@PathVariable Integer id, @RequestParam(required = false) String status) {
 		if (status != null && !status.isEmpty()) {
@@ -360,6 +412,11 @@ public class AdminController {
 			Application application = applicationRepository.findById(applicationId).orElse(null);
 			if (application != null) {
 				applicationRepository.deleteById(applicationId);
+				UploadFile resume = application.getResume();
+				// other applications may share a reused resume
+				if (resume != null && applicationRepository.countByResume(resume) == 0) {
+					uploadFileService.releaseUploadFile(resume);
+				}
 				redirectAttributes.addFlashAttribute("message", "Application deleted successfully");
 			} else {
 				redirectAttributes.addFlashAttribute("error", "Application not found");
@@ -0,0 +1,98 @@
+package com.spring.getready.controller;
+
+import com.spring.getready.services.upload.ChunkedUpload;
+import com.spring.getready.services.upload.ChunkedUploadService;
+import com.spring.getready.services.upload.UploadPolicy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Resumable resume uploads: POST creates a session, each PUT writes one
+ * chunk given by its Content-Range, GET tells where to resume, and the
+ * application form then refers to the finished upload by its id.
+ */
+@RestController
+@RequestMapping("/recruitment/uploads")
+public class ChunkedUploadController {
+
+    private static final String UPLOAD_OFFSET = "Upload-Offset";
+
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+)");
+
+    @Autowired
+    private ChunkedUploadService chunkedUploadService;
+
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> create(@RequestParam String fileName, @RequestParam long size,
+            Authentication auth) throws IOException {
+        ChunkedUpload upload = chunkedUploadService.create(auth.getName(), fileName, size, UploadPolicy.RESUME);
+        System.out.println("Upload session " + upload.getId() + " for " + auth.getName() + ": "
+                + upload.getFileName() + ", " + size + " bytes");
+        Map<String, Object> body = status(upload);
+        body.put("chunkSize", chunkedUploadService.getChunkSize());
+        return ResponseEntity.created(ServletUriComponentsBuilder.fromCurrentRequest().path("/{id}")
+                .buildAndExpand(upload.getId()).toUri()).body(body);
+    }
+
+    @PutMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> writeChunk(@PathVariable String id,
+            @RequestHeader(HttpHeaders.CONTENT_RANGE) String contentRange, HttpServletRequest request,
+            Authentication auth) throws IOException {
+        Matcher range = CONTENT_RANGE.matcher(contentRange.trim());
+        if (!range.matches()) {
+            throw new IllegalArgumentException("Content-Range must be bytes <first>-<last>/<total>");
+        }
+        long first = Long.parseLong(range.group(1));
+        long last = Long.parseLong(range.group(2));
+        ChunkedUpload upload = chunkedUploadService.get(id, auth.getName());
+        if (Long.parseLong(range.group(3)) != upload.getSize()) {
+            throw new IllegalArgumentException("The upload is " + upload.getSize() + " bytes, not " + range.group(3));
+        }
+        if (last < first) {
+            throw new IllegalArgumentException("Content-Range ends before it starts");
+        }
+        long offset = chunkedUploadService.write(id, auth.getName(), first, last - first + 1, request.getInputStream());
+        return ResponseEntity.ok().header(UPLOAD_OFFSET, String.valueOf(offset)).body(status(upload));
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> offset(@PathVariable String id, Authentication auth) throws IOException {
+        ChunkedUpload upload = chunkedUploadService.get(id, auth.getName());
+        return ResponseEntity.ok().header(UPLOAD_OFFSET, String.valueOf(upload.getOffset())).body(status(upload));
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> cancel(@PathVariable String id, Authentication auth) throws IOException {
+        chunkedUploadService.get(id, auth.getName());
+        chunkedUploadService.discard(id);
+        return ResponseEntity.noContent().build();
+    }
+
+    @ExceptionHandler({ IllegalArgumentException.class })
+    public ResponseEntity<Map<String, Object>> badRequest(IllegalArgumentException e) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("error", e.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(body);
+    }
+
+    private static Map<String, Object> status(ChunkedUpload upload) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("uploadId", upload.getId());
+        body.put("offset", upload.getOffset());
+        body.put("size", upload.getSize());
+        body.put("complete", upload.isComplete());
+        return body;
+    }
+}
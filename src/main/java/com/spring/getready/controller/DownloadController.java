@@ -1,19 +1,26 @@
 package com.spring.getready.controller;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.http.HttpServletRequest;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -21,13 +28,29 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import com.spring.getready.config.FilePropertyConfig;
 import com.spring.getready.model.UploadFile;
 import com.spring.getready.repository.UploadFileRepository;
+import com.spring.getready.services.image.ImageVariant;
+import com.spring.getready.services.image.ImageVariantService;
+import com.spring.getready.services.storage.FileStorageService;
+import com.spring.getready.services.storage.StoredBlob;
+import com.spring.getready.services.storage.UploadAccessRecorder;
 
 @RestController
 public class DownloadController {
 
+	// request attributes through which Tomcat's NIO connector sends a file with sendfile
+	private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+
+	private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+
+	private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+
+	private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+	// smaller responses are cheaper copied through the output buffer, as Tomcat's default servlet does
+	private static final long SENDFILE_MIN_BYTES = 48 * 1024;
+
 	@Autowired
 	ResourceLoader resourceLoader;
 
@@ -35,58 +58,54 @@ public class DownloadController {
 	private UploadFileRepository uploadFileRepository;
 
 	@Autowired
-	private FilePropertyConfig filePropertyConfig;
+	private FileStorageService fileStorageService;
+
+	@Autowired
+	private UploadAccessRecorder uploadAccessRecorder;
+
+	@Autowired
+	private ImageVariantService imageVariantService;
 
 	@RequestMapping(path = "/download/{file}", method = RequestMethod.GET)
-	public ResponseEntity<byte[]> downloadFile(@PathVariable String file,
+	public ResponseEntity<Resource> downloadFile(@PathVariable String file,
 			@RequestParam(name = "id", required = false) Integer id, HttpServletRequest request)
 			throws FileNotFoundException, IOException {
-		Resource resource = null;
-		String originalFileName = null;
-		InputStreamResource streamResource = null;
-
 		try {
 			if (file.contentEquals("users")) {
-				resource = resourceLoader.getResource("classpath:format/user_template.json");
-				originalFileName = resource.getFilename();
-				streamResource = new InputStreamResource(new FileInputStream(resource.getFile()));
+				Resource resource = resourceLoader.getResource("classpath:format/user_template.json");
+				return ResponseEntity.ok().contentType(MediaType.APPLICATION_OCTET_STREAM)
+						.header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + resource.getFilename() + "\"")
+						.body(new InputStreamResource(resource.getInputStream()));
 			}
 			if (file.contentEquals("attachment")) {
 				Optional<UploadFile> referenceFile = uploadFileRepository.findById(id);
 				if (referenceFile.isPresent()) {
-					File downloadFile = new File(
-							filePropertyConfig.getFilePath() + File.separator + referenceFile.get().getFileName());
-					originalFileName = referenceFile.get().getFileOriginalName();
-					streamResource = new InputStreamResource(new FileInputStream(downloadFile));
+					return stored(referenceFile.get(), MediaType.APPLICATION_OCTET_STREAM,
+							"attachment; filename=\"" + referenceFile.get().getFileOriginalName() + "\"", request);
 				}
 			}
 		} catch (IOException ex) {
 			System.out.println("Could not determine file type.");
 		}
 
-		if (streamResource == null) {
-			String errorResponse = new String("{\"message\" : \"Request error\"}");
-			return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(errorResponse.getBytes());
-		} else {
-			return ResponseEntity.ok().contentType(MediaType.APPLICATION_OCTET_STREAM)
-					.header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + originalFileName + "\"")
-					.body(streamResource.getInputStream().readAllBytes());
-		}
+		String errorResponse = new String("{\"message\" : \"Request error\"}");
+		return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+				.body(new ByteArrayResource(errorResponse.getBytes()));
 	}
 
 	@RequestMapping(path = "/view/attachment", method = RequestMethod.GET)
-	public ResponseEntity<byte[]> viewFile(@RequestParam("id") Integer id, HttpServletRequest request)
+	public ResponseEntity<Resource> viewFile(@RequestParam("id") Integer id, HttpServletRequest request)
 			throws FileNotFoundException, IOException {
-		InputStreamResource streamResource = null;
 		String contentType = "application/pdf"; // Default to PDF
 
 		try {
 			Optional<UploadFile> referenceFile = uploadFileRepository.findById(id);
+			if (referenceFile.isPresent() && referenceFile.get().getContentType() != null) {
+				// sniffed when it was uploaded
+				return stored(referenceFile.get(), MediaType.parseMediaType(referenceFile.get().getContentType()),
+						"inline", request);
+			}
 			if (referenceFile.isPresent()) {
-				File viewFile = new File(
-						filePropertyConfig.getFilePath() + File.separator + referenceFile.get().getFileName());
-				streamResource = new InputStreamResource(new FileInputStream(viewFile));
-				
 				// Determine content type based on file extension
 				String fileName = referenceFile.get().getFileOriginalName().toLowerCase();
 				if (fileName.endsWith(".pdf")) {
@@ -96,20 +115,287 @@ public class DownloadController {
 				} else if (fileName.endsWith(".txt")) {
 					contentType = "text/plain";
 				}
+				return stored(referenceFile.get(), MediaType.parseMediaType(contentType), "inline", request);
 			}
 		} catch (IOException ex) {
 			System.out.println("Could not determine file type.");
 		}
 
-		if (streamResource == null) {
-			String errorResponse = new String("{\"message\" : \"File not found\"}");
-			return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(errorResponse.getBytes());
-		} else {
-			return ResponseEntity.ok()
-					.contentType(MediaType.parseMediaType(contentType))
-					.header(HttpHeaders.CONTENT_DISPOSITION, "inline")
-					.body(streamResource.getInputStream().readAllBytes());
+		String errorResponse = new String("{\"message\" : \"File not found\"}");
+		return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+				.body(new ByteArrayResource(errorResponse.getBytes()));
+	}
+
+	/**
+	 * Shows an uploaded image at one of the {@link ImageVariant} sizes. The
+	 * variant of an upload never changes, so browsers may keep it for a year.
+	 * Until it has been generated, the original is sent instead.
+	 */
+	@RequestMapping(path = "/view/image", method = RequestMethod.GET)
+	public ResponseEntity<Resource> viewImage(@RequestParam("id") Integer id,
+			@RequestParam(name = "size", defaultValue = "thumb") String size, HttpServletRequest request)
+			throws IOException {
+		UploadFile uploadFile = uploadFileRepository.findById(id).orElse(null);
+		ImageVariant variant = ImageVariant.forName(size);
+		if (uploadFile == null || variant == null) {
+			return ResponseEntity.notFound().build();
+		}
+		String cacheControl = CacheControl.maxAge(365, TimeUnit.DAYS).cachePrivate().getHeaderValue() + ", immutable";
+		String etag = uploadFile.getSha256() != null ? "\"" + uploadFile.getSha256() + "-" + variant.getName() + "\"" : null;
+		// only a variant that exists was ever sent with this tag
+		if (etag != null && matchesIfNoneMatch(request, etag)) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).header(HttpHeaders.CACHE_CONTROL, cacheControl)
+					.build();
+		}
+		StoredBlob stored = imageVariantService.locate(uploadFile, variant);
+		if (stored == null) {
+			imageVariantService.generateInBackground(uploadFile);
+			MediaType contentType = uploadFile.getContentType() != null ? MediaType.parseMediaType(uploadFile.getContentType())
+					: MediaTypeFactory.getMediaType(uploadFile.getFileOriginalName()).orElse(MediaType.APPLICATION_OCTET_STREAM);
+			return stored(uploadFile, contentType, "inline", request);
+		}
+		uploadAccessRecorder.recordAccess(uploadFile.getFileId());
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.IMAGE_JPEG);
+		headers.setContentLength(stored.getSize());
+		headers.setETag(etag);
+		headers.set(HttpHeaders.CACHE_CONTROL, cacheControl);
+		if (isHead(request) || sendfile(request, stored, 0, stored.getSize())) {
+			return new ResponseEntity<>(headers, HttpStatus.OK);
+		}
+		return new ResponseEntity<>(new InputStreamResource(stored.open()), headers, HttpStatus.OK);
+	}
+
+	/**
+	 * Streams a stored upload. A gzipped blob is sent as it is, with its
+	 * content encoding, to clients that accept gzip, and inflated on the fly
+	 * for the others. A single byte range is read from the backend alone.
+	 * <p>
+	 * Uploads never change, so their hash and upload time make validators.
+	 * For rows that know their size, conditional requests, HEAD and ranges are
+	 * answered from the row before storage is touched; those always get the
+	 * upload itself rather than gzip, whose length only the blob knows.
+	 */
+	private ResponseEntity<Resource> stored(UploadFile uploadFile, MediaType contentType, String disposition,
+			HttpServletRequest request) throws IOException {
+		String sha256 = uploadFile.getSha256();
+		String etag = sha256 != null ? "\"" + sha256 + "\"" : null;
+		String gzipEtag = sha256 != null ? "\"" + sha256 + "-gzip\"" : null;
+		long lastModified = uploadFile.getUploadedOn() != null ? uploadFile.getUploadedOn().getTime() : -1;
+		HttpHeaders headers = new HttpHeaders();
+		if (lastModified >= 0) {
+			headers.setLastModified(lastModified);
+		}
+		// kept by the browser, but checked with the server every time since access can change
+		headers.setCacheControl(CacheControl.noCache().cachePrivate());
+		if (etag != null) {
+			// content-addressed blobs may be gzipped
+			headers.set(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		}
+		if (isNotModified(request, lastModified, etag, gzipEtag)) {
+			if (etag != null) {
+				headers.setETag(etag);
+			}
+			return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+		}
+		headers.setContentType(contentType);
+		headers.set(HttpHeaders.CONTENT_DISPOSITION, disposition);
+		headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+		Long size = uploadFile.getFileSize();
+		HttpRange range = singleRange(request);
+		if (size != null) {
+			if (range != null && !matchesIfRange(request, lastModified, etag)) {
+				range = null;
+			}
+			if (range != null || isHead(request)) {
+				return identity(uploadFile, size, range, headers, etag, request);
+			}
+		}
+
+		StoredBlob stored = fileStorageService.locate(uploadFile.getFileName(), sha256);
+		uploadAccessRecorder.recordAccess(uploadFile.getFileId());
+		boolean inflate = false;
+		if (stored.isCompressed()) {
+			if (acceptsGzip(request)) {
+				headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+			} else {
+				inflate = true;
+			}
+		}
+		if (etag != null) {
+			headers.setETag(stored.isCompressed() && !inflate ? gzipEtag : etag);
+		}
+		long length = !inflate ? stored.getSize() : size != null ? size : stored.getContentLength();
+
+		if (range == null) {
+			headers.setContentLength(length);
+			if (!inflate && sendfile(request, stored, 0, length)) {
+				return new ResponseEntity<>(headers, HttpStatus.OK);
+			}
+			return new ResponseEntity<>(new InputStreamResource(inflate ? stored.openContent() : stored.open()),
+					headers, HttpStatus.OK);
+		}
+		long start = range.getRangeStart(length);
+		long end = range.getRangeEnd(length);
+		if (start >= length || start > end) {
+			return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+					.header(HttpHeaders.CONTENT_RANGE, "bytes */" + length).build();
+		}
+		headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+		headers.setContentLength(end - start + 1);
+		if (!inflate && sendfile(request, stored, start, end - start + 1)) {
+			return new ResponseEntity<>(headers, HttpStatus.PARTIAL_CONTENT);
+		}
+		InputStream body = inflate ? stored.openContent(start, end - start + 1) : stored.open(start, end - start + 1);
+		return new ResponseEntity<>(new InputStreamResource(body), headers, HttpStatus.PARTIAL_CONTENT);
+	}
+
+	/**
+	 * Sends the upload itself, or a range of it, sized from its row. Storage
+	 * is only opened for a GET, once the range is known to be satisfiable.
+	 */
+	private ResponseEntity<Resource> identity(UploadFile uploadFile, long size, HttpRange range, HttpHeaders headers,
+			String etag, HttpServletRequest request) throws IOException {
+		if (etag != null) {
+			headers.setETag(etag);
+		}
+		long start = 0;
+		long end = size - 1;
+		HttpStatus status = HttpStatus.OK;
+		if (range != null) {
+			start = range.getRangeStart(size);
+			end = range.getRangeEnd(size);
+			if (start >= size || start > end) {
+				return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+						.header(HttpHeaders.CONTENT_RANGE, "bytes */" + size).build();
+			}
+			headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+			status = HttpStatus.PARTIAL_CONTENT;
+		}
+		headers.setContentLength(end - start + 1);
+		if (isHead(request)) {
+			return new ResponseEntity<>(headers, status);
+		}
+		StoredBlob stored = fileStorageService.locate(uploadFile.getFileName(), uploadFile.getSha256());
+		uploadAccessRecorder.recordAccess(uploadFile.getFileId());
+		if (!stored.isCompressed() && sendfile(request, stored, start, end - start + 1)) {
+			return new ResponseEntity<>(headers, status);
+		}
+		return new ResponseEntity<>(new InputStreamResource(stored.openContent(start, end - start + 1)), headers,
+				status);
+	}
+
+	/**
+	 * Leaves sending the bytes of a blob to the connector, which copies them
+	 * from the file to the socket with {@code FileChannel.transferTo}, so they
+	 * never pass through the heap. False, and the caller streams the blob
+	 * itself, if the connector does not offer sendfile, the blob is not a
+	 * local file or it is too small to be worth it.
+	 */
+	private static boolean sendfile(HttpServletRequest request, StoredBlob stored, long offset, long length) {
+		if (length < SENDFILE_MIN_BYTES || !Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+			return false;
+		}
+		Path path = stored.getLocalPath();
+		if (path == null) {
+			return false;
+		}
+		request.setAttribute(SENDFILE_FILENAME, path.toAbsolutePath().toString());
+		request.setAttribute(SENDFILE_START, offset);
+		request.setAttribute(SENDFILE_END, offset + length);
+		return true;
+	}
+
+	private static boolean isHead(HttpServletRequest request) {
+		return "HEAD".equals(request.getMethod());
+	}
+
+	/**
+	 * Whether the client's copy is current: by If-None-Match when it is sent,
+	 * which may hold the tag of either encoding, else by If-Modified-Since.
+	 */
+	private static boolean isNotModified(HttpServletRequest request, long lastModified, String... etags) {
+		if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+			for (String etag : etags) {
+				if (etag != null && matchesIfNoneMatch(request, etag)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		long since = dateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+		return lastModified >= 0 && since >= 0 && lastModified / 1000 * 1000 <= since;
+	}
+
+	private static boolean matchesIfNoneMatch(HttpServletRequest request, String etag) {
+		String header = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+		if (header == null) {
+			return false;
+		}
+		for (String tag : header.split(",")) {
+			tag = tag.trim();
+			if (tag.equals("*") || (tag.startsWith("W/") ? tag.substring(2) : tag).equals(etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Whether a range may be sent: If-Range is absent, or names the current
+	 * version by strong tag or exact date; otherwise the whole upload is sent.
+	 */
+	private static boolean matchesIfRange(HttpServletRequest request, long lastModified, String etag) {
+		String header = request.getHeader(HttpHeaders.IF_RANGE);
+		if (header == null) {
+			return true;
+		}
+		header = header.trim();
+		if (header.startsWith("\"") || header.startsWith("W/")) {
+			return header.equals(etag);
+		}
+		long date = dateHeader(request, HttpHeaders.IF_RANGE);
+		return lastModified >= 0 && date >= 0 && lastModified / 1000 * 1000 == date;
+	}
+
+	private static long dateHeader(HttpServletRequest request, String name) {
+		try {
+			return request.getDateHeader(name);
+		} catch (IllegalArgumentException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * The requested range, or null to send everything: when there is none,
+	 * several, or the header cannot be parsed.
+	 */
+	private static HttpRange singleRange(HttpServletRequest request) {
+		String header = request.getHeader(HttpHeaders.RANGE);
+		if (header == null) {
+			return null;
+		}
+		try {
+			List<HttpRange> ranges = HttpRange.parseRanges(header);
+			return ranges.size() == 1 ? ranges.get(0) : null;
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private static boolean acceptsGzip(HttpServletRequest request) {
+		String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+		if (acceptEncoding == null) {
+			return false;
+		}
+		for (String coding : acceptEncoding.split(",")) {
+			String[] parts = coding.trim().split(";");
+			if (parts[0].trim().equalsIgnoreCase("gzip")) {
+				return parts.length == 1 || !parts[1].trim().replace(" ", "").matches("q=0(\\.0*)?");
+			}
 		}
+		return false;
 	}
 
 }
@@ -1,11 +1,7 @@
 package com.spring.getready.controller;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.Date;
+import java.util.concurrent.Callable;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -20,7 +16,6 @@ import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
-import com.spring.getready.config.FilePropertyConfig;
 import com.spring.getready.interceptor.FileException;
 import com.spring.getready.model.UploadFile;
 import com.spring.getready.model.UserDetail;
@@ -31,6 +26,10 @@ import com.spring.getready.services.ProfileService;
 import com.spring.getready.services.RelationService;
 import com.spring.getready.services.SubmissionService;
 import com.spring.getready.services.UploadFileService;
+import com.spring.getready.services.storage.FileStorageService;
+import com.spring.getready.services.upload.UnsupportedFileException;
+import com.spring.getready.services.upload.UploadPolicy;
+import com.spring.getready.services.upload.UploadReceipt;
 import com.spring.getready.template.model.AcademicTemplate;
 import com.spring.getready.template.model.ParentsTemplate;
 import com.spring.getready.template.model.ProfileTemplate;
@@ -48,7 +47,7 @@ public class HomeController {
 	private SubmissionService submissionService;
 
 	@Autowired
-	private FilePropertyConfig filePropertyConfig;
+	private FileStorageService fileStorageService;
 
 	@Autowired
 	private UploadFileService uploadFileService;
@@ -85,63 +84,65 @@ public class HomeController {
 	}
 
 	@RequestMapping(path = "/home/upload/submission", method = RequestMethod.POST)
-	public ModelAndView upload(@RequestParam("file") MultipartFile file,
+	public Callable<ModelAndView> upload(@RequestParam("file") MultipartFile file,
 			@RequestParam("assignmentId") Integer assignmentId, ModelAndView modelView,
-			RedirectAttributes redirectAttributes) throws FileException {
-		UserDetail userDetail = getCurrentUser();
-		if (file != null) {
-			String fileName = new Date().getTime() + "_" + file.getOriginalFilename();
-			Path path = Paths.get(new File(filePropertyConfig.getFilePath() + File.separator + fileName).toURI());
-			try {
-				Path outputPath = Files.write(path, file.getBytes());
-				if (outputPath != null) {
-					UploadFile uploadFile = uploadFileService.uploadFile(fileName, file.getOriginalFilename());
+			RedirectAttributes redirectAttributes) {
+		return () -> {
+			UserDetail userDetail = getCurrentUser();
+			if (file != null) {
+				try {
+					UploadReceipt receipt = fileStorageService.store(file, UploadPolicy.DOCUMENT);
+					UploadFile uploadFile = uploadFileService.uploadFile(receipt);
 					boolean result = submissionService.uploadSubmission(assignmentId, uploadFile, userDetail);
 					if (result) {
 						redirectAttributes.addFlashAttribute("message", "Assignment uploaded successfully");
 					}
 					modelView.setViewName("redirect:/home/assignment");
+				} catch (UnsupportedFileException unsupported) {
+					throw unsupported;
+				} catch (IOException io) {
+					throw new FileException("Error while submitting an assignment");
 				}
-			} catch (IOException io) {
-				throw new FileException("Error while submitting an assignment");
 			}
-		}
-		return modelView;
+			return modelView;
+		};
 	}
 
 	@RequestMapping(path = "/home/update/{section}", method = RequestMethod.POST)
-	public ModelAndView updateProfile(@PathVariable(name = "section", required = false) String section,
+	public Callable<ModelAndView> updateProfile(@PathVariable(name = "section", required = false) String section,
 			@ModelAttribute ProfileTemplate profile, @ModelAttribute AcademicTemplate academy,
 			@ModelAttribute("parents") ParentsTemplate parents, ModelAndView modelView,
 			RedirectAttributes redirectAttributes) {
-		UserDetail userDetail = getCurrentUser();
-		if (section.contentEquals("profile")) {
-			boolean result = profileService.updateProfile(profile, userDetail);
-			if (result) {
-				redirectAttributes.addFlashAttribute("message", "Profile updated successfully");
-			}
-			modelView.setViewName("redirect:/home/profile");
-		} else if (section.contentEquals("academy")) {
-			boolean result = academicService.addAcademicDetails(academy, userDetail.getUserUuid());
-			if (result) {
-				redirectAttributes.addFlashAttribute("message", "Academic details successfully added");
-			}
-			modelView.setViewName("redirect:/home/academy");
-		} else if (section.contentEquals("family")) {
-			boolean result = relationService.addFamilyDetails(parents, userDetail.getUserUuid());
-			if (result) {
-				redirectAttributes.addFlashAttribute("message", "Family details added successfully");
+		return () -> {
+			UserDetail userDetail = getCurrentUser();
+			if (section.contentEquals("profile")) {
+				boolean result = profileService.updateProfile(profile, userDetail);
+				if (result) {
+					redirectAttributes.addFlashAttribute("message", "Profile updated successfully");
+				}
+				modelView.setViewName("redirect:/home/profile");
+			} else if (section.contentEquals("academy")) {
+				boolean result = academicService.addAcademicDetails(academy, userDetail.getUserUuid());
+				if (result) {
+					redirectAttributes.addFlashAttribute("message", "Academic details successfully added");
+				}
+				modelView.setViewName("redirect:/home/academy");
+			} else if (section.contentEquals("family")) {
+				boolean result = relationService.addFamilyDetails(parents, userDetail.getUserUuid());
+				if (result) {
+					redirectAttributes.addFlashAttribute("message", "Family details added successfully");
+				}
+				modelView.setViewName("redirect:/home/family");
 			}
-			modelView.setViewName("redirect:/home/family");
-		}
-		else if (section.contentEquals("sibling")) {
-			boolean result = relationService.addSiblingDetails(parents, userDetail.getUserUuid());
-			if (result) {
-				redirectAttributes.addFlashAttribute("message", "Sibling added successfully");
+			else if (section.contentEquals("sibling")) {
+				boolean result = relationService.addSiblingDetails(parents, userDetail.getUserUuid());
+				if (result) {
+					redirectAttributes.addFlashAttribute("message", "Sibling added successfully");
+				}
+				modelView.setViewName("redirect:/home/family");
 			}
-			modelView.setViewName("redirect:/home/family");
-		}
-		return modelView;
+			return modelView;
+		};
 	}
 
 	@RequestMapping(path = "/home/delete/{section}", method = RequestMethod.POST)
@@ -6,9 +6,19 @@ import com.spring.getready.model.UploadFile;
 import com.spring.getready.model.UserDetail;
 import com.spring.getready.services.RecruitmentService;
 import com.spring.getready.services.UploadFileService;
+import com.spring.getready.services.ingestion.ApplicationIngestionService;
+import com.spring.getready.services.ingestion.CapacityException;
+import com.spring.getready.services.ingestion.IdempotentSubmissions;
+import com.spring.getready.services.ingestion.MultiApplyService;
+import com.spring.getready.services.journal.ApplicationJournal;
+import com.spring.getready.services.journal.JournalRecord;
+import com.spring.getready.services.upload.ChunkedUploadService;
+import com.spring.getready.services.upload.UploadReceipt;
 import com.spring.getready.repository.JobPostingRepository;
 import com.spring.getready.repository.UserDetailRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Controller;
@@ -16,7 +26,13 @@ import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import javax.servlet.http.HttpServletResponse;
 
 @Controller
 @RequestMapping("/recruitment")
@@ -34,6 +50,21 @@ public class RecruitmentController {
     @Autowired
     private UserDetailRepository userDetailRepository;
 
+    @Autowired
+    private ApplicationIngestionService ingestionService;
+
+    @Autowired
+    private ApplicationJournal applicationJournal;
+
+    @Autowired
+    private IdempotentSubmissions idempotentSubmissions;
+
+    @Autowired
+    private MultiApplyService multiApplyService;
+
+    @Autowired
+    private ChunkedUploadService chunkedUploadService;
+
     @GetMapping("/jobs")
     public String listJobs(Model model) {
         String username = SecurityContextHolder.getContext().getAuthentication().getName();
@@ -56,71 +87,252 @@ public class RecruitmentController {
     }
 
     @GetMapping("/apply/{id}")
-    public String showApplicationForm(@PathVariable Integer id, Model model) {
+    public String showApplicationForm(@PathVariable Integer id, Authentication auth, Model model) {
         JobPosting job = jobPostingRepository.findById(id).orElse(null);
         if (job == null) {
             return "redirect:/recruitment/jobs";
         }
         model.addAttribute("job", job);
+        model.addAttribute("idempotencyKey", UUID.randomUUID().toString());
+        model.addAttribute("previousResumes", previousResumes(auth));
         return "recruitment/apply";
     }
 
+    private List<UploadFile> previousResumes(Authentication auth) {
+        UserDetail candidate = userDetailRepository.findByEmailEquals(auth.getName());
+        return candidate != null ? recruitmentService.getPreviousResumes(candidate) : new ArrayList<>();
+    }
+
     @PostMapping("/apply")
-    public String applyForJob(
+    public Callable<String> applyForJob(
             @RequestParam Integer jobRef,
-            @RequestParam("resume") MultipartFile resume,
+            @RequestParam(value = "resume", required = false) MultipartFile resume,
+            @RequestParam(required = false) Integer resumeRef,
+            @RequestParam(required = false) String uploadId,
             @RequestParam(required = false) String notes,
+            @RequestParam(required = false) String idempotencyKey,
             Authentication auth,
+            Model model,
+            HttpServletResponse response,
             RedirectAttributes redirectAttributes) {
+        // the body is already spooled; storing and journaling run on the upload pool
+        return () -> {
         
-        System.out.println("=== APPLICATION SUBMISSION START ===");
-        System.out.println("Job ID: " + jobRef);
-        System.out.println("User: " + auth.getName());
-        System.out.println("File name: " + (resume != null ? resume.getOriginalFilename() : "NULL"));
-        System.out.println("File size: " + (resume != null ? resume.getSize() : "NULL"));
-        System.out.println("File empty: " + (resume != null ? resume.isEmpty() : "NULL"));
+            System.out.println("=== APPLICATION SUBMISSION START ===");
+            System.out.println("Job ID: " + jobRef);
+            System.out.println("User: " + auth.getName());
+            System.out.println("File name: " + (resume != null ? resume.getOriginalFilename() : "NULL"));
+            System.out.println("File size: " + (resume != null ? resume.getSize() : "NULL"));
+            System.out.println("File empty: " + (resume != null ? resume.isEmpty() : "NULL"));
         
-        try {
-            // Check if file is empty or null
-            if (resume == null || resume.isEmpty()) {
-                System.out.println("ERROR: Resume file is empty or null");
-                redirectAttributes.addFlashAttribute("error", "Please select a resume file.");
+            try {
+                UploadFile previousResume = null;
+                if (resumeRef != null) {
+                    UserDetail candidate = userDetailRepository.findByEmailEquals(auth.getName());
+                    previousResume = recruitmentService.findPreviousResume(candidate, resumeRef);
+                    if (previousResume == null) {
+                        System.out.println("ERROR: Resume " + resumeRef + " is not one of the candidate's resumes");
+                        redirectAttributes.addFlashAttribute("error", "The selected resume is no longer available.");
+                        return "redirect:/recruitment/apply/" + jobRef;
+                    }
+                    System.out.println("Reusing resume: " + previousResume.getFileName());
+                } else if (uploadId != null && !uploadId.isEmpty()) {
+                    System.out.println("Resume uploaded in chunks: " + uploadId);
+                } else if (resume == null || resume.isEmpty()) {
+                    // Check if file is empty or null
+                    System.out.println("ERROR: Resume file is empty or null");
+                    redirectAttributes.addFlashAttribute("error", "Please select a resume file.");
+                    return "redirect:/recruitment/apply/" + jobRef;
+                }
+            
+                JobPosting job = recruitmentService.findJob(jobRef);
+                if (job == null) {
+                    redirectAttributes.addFlashAttribute("error", "The job you applied for no longer exists.");
+                    return "redirect:/recruitment/jobs";
+                }
+
+                UploadFile reused = previousResume;
+                String chunked = reused == null && uploadId != null && !uploadId.isEmpty() ? uploadId : null;
+                String submissionRef;
+                if (isValidIdempotencyKey(idempotencyKey)) {
+                    // retries and double-clicks of the same form collapse into the first submission
+                    String key = auth.getName() + ":" + jobRef + ":" + idempotencyKey;
+                    submissionRef = idempotentSubmissions.execute(key,
+                            () -> acceptApplication(jobRef, resumeOf(resume, chunked, auth), reused, notes,
+                                    idempotencyKey, auth));
+                } else {
+                    submissionRef = acceptApplication(jobRef, resumeOf(resume, chunked, auth), reused, notes, null,
+                            auth);
+                }
+                if (chunked != null) {
+                    chunkedUploadService.discard(chunked);
+                }
+                System.out.println("Step 2 completed - Submission: " + submissionRef);
+            
+                redirectAttributes.addFlashAttribute("success", "Application submitted successfully!");
+                System.out.println("=== APPLICATION SUBMISSION SUCCESS ===");
+            } catch (CapacityException e) {
+                System.out.println("ERROR: " + e.getMessage() + ", rejecting application");
+                response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+                response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(ingestionService.getRetryAfterSeconds()));
+                model.addAttribute("job", recruitmentService.findJob(jobRef));
+                model.addAttribute("idempotencyKey", idempotencyKey);
+                model.addAttribute("previousResumes", previousResumes(auth));
+                model.addAttribute("error", "We are receiving a lot of applications right now. Please try again in a minute.");
+                return "recruitment/apply";
+            } catch (Exception e) {
+                System.out.println("ERROR in application submission: " + e.getClass().getSimpleName() + " - " + e.getMessage());
+                e.printStackTrace();
+                redirectAttributes.addFlashAttribute("error", "Failed to submit application: " + e.getMessage());
                 return "redirect:/recruitment/apply/" + jobRef;
             }
-            
+        
+            return "redirect:/recruitment/jobs";
+        };
+    }
+
+    /**
+     * The resume as sent with the form, or as finished by a resumable upload.
+     */
+    private MultipartFile resumeOf(MultipartFile resume, String uploadId, Authentication auth) throws IOException {
+        return uploadId != null ? chunkedUploadService.complete(uploadId, auth.getName()) : resume;
+    }
+
+    /**
+     * Journals the application, storing the uploaded resume first unless a
+     * previous one is reused, in which case its file and extracted text are
+     * shared with the earlier applications.
+     */
+    private String acceptApplication(Integer jobRef, MultipartFile resume, UploadFile previousResume, String notes,
+            String idempotencyKey, Authentication auth) throws IOException {
+        if (applicationJournal.isFull()) {
+            throw new CapacityException("Application backlog is full");
+        }
+
+        String fileName;
+        String originalFileName;
+        String sha256;
+        String contentType;
+        Long fileSize;
+        if (previousResume != null) {
+            fileName = previousResume.getFileName();
+            originalFileName = previousResume.getFileOriginalName();
+            sha256 = previousResume.getSha256();
+            contentType = previousResume.getContentType();
+            fileSize = previousResume.getFileSize();
+        } else {
             System.out.println("Step 1: Saving file...");
-            UploadFile uploadedResume = uploadFileService.saveFile(resume, auth.getName());
-            System.out.println("Step 1 completed - File ID: " + uploadedResume.getFileId());
-            
-            System.out.println("Step 2: Extracting text...");
-            String resumeText = uploadFileService.extractTextFromFile(uploadedResume);
-            System.out.println("Step 2 completed - Text length: " + resumeText.length());
-            
-            System.out.println("Step 3: Finding candidate...");
-            UserDetail candidate = userDetailRepository.findByEmailEquals(auth.getName());
-            System.out.println("Step 3 completed - Candidate ID: " + (candidate != null ? candidate.getUserId() : "NULL"));
-            
-            System.out.println("Step 4: Creating application...");
-            Application application = new Application();
-            application.setJobPosting(jobPostingRepository.findById(jobRef).orElse(null));
-            application.setCandidate(candidate);
-            application.setResume(uploadedResume);
-            application.setNotes(notes);
-            
-            System.out.println("Step 5: Submitting application...");
-            Application savedApp = recruitmentService.submitApplication(application, resumeText);
-            System.out.println("Step 5 completed - Application ID: " + savedApp.getApplicationId());
-            
-            redirectAttributes.addFlashAttribute("success", "Application submitted successfully!");
-            System.out.println("=== APPLICATION SUBMISSION SUCCESS ===");
-        } catch (Exception e) {
-            System.out.println("ERROR in application submission: " + e.getClass().getSimpleName() + " - " + e.getMessage());
-            e.printStackTrace();
-            redirectAttributes.addFlashAttribute("error", "Failed to submit application: " + e.getMessage());
-            return "redirect:/recruitment/apply/" + jobRef;
+            UploadReceipt receipt = uploadFileService.storeFile(resume);
+            System.out.println("Step 1 completed - File: " + receipt.getFileName()
+                    + ", type: " + receipt.getContentType() + ", size: " + receipt.getSize()
+                    + ", SHA-256: " + receipt.getSha256());
+            fileName = receipt.getFileName();
+            originalFileName = receipt.getOriginalFileName();
+            sha256 = receipt.getSha256();
+            contentType = receipt.getContentType();
+            fileSize = receipt.getSize();
         }
         
-        return "redirect:/recruitment/jobs";
+        System.out.println("Step 2: Journaling application...");
+        JournalRecord record = new JournalRecord(UUID.randomUUID().toString(), jobRef, auth.getName(),
+                fileName, originalFileName, sha256, contentType, fileSize, notes, idempotencyKey,
+                System.currentTimeMillis());
+        try {
+            applicationJournal.append(record);
+        } catch (IOException e) {
+            if (previousResume == null) {
+                uploadFileService.discardStoredFile(fileName, sha256);
+            }
+            throw e;
+        }
+        return record.getSubmissionRef();
+    }
+
+    @GetMapping("/apply/multi")
+    public String showMultiApplicationForm(@RequestParam(required = false) List<Integer> jobRefs, Model model,
+            RedirectAttributes redirectAttributes) {
+        List<JobPosting> jobs = findJobs(jobRefs);
+        if (jobs.isEmpty()) {
+            redirectAttributes.addFlashAttribute("error", "Please select at least one job.");
+            return "redirect:/recruitment/jobs";
+        }
+        model.addAttribute("jobs", jobs);
+        model.addAttribute("idempotencyKey", UUID.randomUUID().toString());
+        return "recruitment/apply-multi";
+    }
+
+    @PostMapping("/apply/multi")
+    public Callable<String> applyForJobs(
+            @RequestParam List<Integer> jobRefs,
+            @RequestParam("resume") MultipartFile resume,
+            @RequestParam(required = false) String notes,
+            @RequestParam(required = false) String idempotencyKey,
+            Authentication auth,
+            Model model,
+            HttpServletResponse response,
+            RedirectAttributes redirectAttributes) {
+        return () -> {
+
+            System.out.println("=== MULTI-JOB APPLICATION START ===");
+            System.out.println("Jobs: " + jobRefs + ", user: " + auth.getName());
+
+            List<JobPosting> jobs = findJobs(jobRefs);
+            if (jobs.isEmpty()) {
+                redirectAttributes.addFlashAttribute("error", "The jobs you applied for no longer exist.");
+                return "redirect:/recruitment/jobs";
+            }
+            try {
+                if (resume == null || resume.isEmpty()) {
+                    throw new IOException("Please select a resume file.");
+                }
+                if (jobs.size() > multiApplyService.getMaxJobs()) {
+                    throw new IOException("You can apply to at most " + multiApplyService.getMaxJobs() + " jobs at once.");
+                }
+                UserDetail candidate = userDetailRepository.findByEmailEquals(auth.getName());
+                String key = isValidIdempotencyKey(idempotencyKey) ? idempotencyKey : null;
+                int created;
+                if (key != null) {
+                    created = idempotentSubmissions.execute(auth.getName() + ":multi:" + key,
+                            () -> multiApplyService.apply(jobs, candidate, resume, notes, key));
+                } else {
+                    created = multiApplyService.apply(jobs, candidate, resume, notes, null);
+                }
+                redirectAttributes.addFlashAttribute("success", created + " applications submitted successfully!");
+                System.out.println("=== MULTI-JOB APPLICATION SUCCESS ===");
+            } catch (CapacityException e) {
+                System.out.println("ERROR: " + e.getMessage() + ", rejecting multi-job application");
+                response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+                response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(ingestionService.getRetryAfterSeconds()));
+                model.addAttribute("jobs", jobs);
+                model.addAttribute("idempotencyKey", idempotencyKey);
+                model.addAttribute("error", "We are receiving a lot of applications right now. Please try again in a minute.");
+                return "recruitment/apply-multi";
+            } catch (Exception e) {
+                System.out.println("ERROR in multi-job application: " + e.getClass().getSimpleName() + " - " + e.getMessage());
+                model.addAttribute("jobs", jobs);
+                model.addAttribute("idempotencyKey", idempotencyKey);
+                model.addAttribute("error", "Failed to submit applications: " + e.getMessage());
+                return "recruitment/apply-multi";
+            }
+            return "redirect:/recruitment/jobs";
+        };
+    }
+
+    private List<JobPosting> findJobs(List<Integer> jobRefs) {
+        List<JobPosting> jobs = new ArrayList<>();
+        if (jobRefs != null) {
+            for (Integer jobRef : new LinkedHashSet<>(jobRefs)) {
+                JobPosting job = jobRef != null ? recruitmentService.findJob(jobRef) : null;
+                if (job != null) {
+                    jobs.add(job);
+                }
+            }
+        }
+        return jobs;
+    }
+
+    private static boolean isValidIdempotencyKey(String key) {
+        return key != null && key.matches("[A-Za-z0-9-]{1,64}");
     }
 
     @GetMapping("/job/{id}/applications")
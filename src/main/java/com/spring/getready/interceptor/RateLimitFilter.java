@@ -0,0 +1,216 @@
+package com.spring.getready.interceptor;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Throttles the POSTs of the configured endpoints with token buckets, one per
+ * authenticated user and one per client IP, so neither a single account nor a
+ * single host can take every request thread. A request goes through only if
+ * both of its buckets have a token; otherwise it takes neither and gets a 429
+ * with the time until the next token. It runs before uploads are spooled, so
+ * a throttled request is refused before its body is read.
+ * <p>
+ * Each bucket is a single long, the time at which it will be full again,
+ * updated by compare-and-set. A bucket left idle for longer than its refill
+ * period is full and is evicted, since a new one behaves the same.
+ */
+@Component
+public class RateLimitFilter extends OncePerRequestFilter implements MeterBinder {
+
+	private static final String BY_USER = "user";
+
+	private static final String BY_IP = "ip";
+
+	// path=requests per minute, for each user; each client IP gets ip-factor times as many
+	@Value("${rate-limit.endpoints:/recruitment/apply=10,/recruitment/uploads=10,/recruitment/apply/multi=5,/home/upload/submission=20}")
+	private String endpoints;
+
+	@Value("${rate-limit.ip-factor:3}")
+	private int ipFactor;
+
+	@Value("${rate-limit.enabled:true}")
+	private boolean enabled;
+
+	private final Map<String, Rule> rules = new LinkedHashMap<>();
+
+	private final Map<String, Bucket> buckets = new ConcurrentHashMap<>(1024, 0.75f, 64);
+
+	private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+	@PostConstruct
+	public void init() {
+		for (String endpoint : endpoints.split(",")) {
+			String[] parts = endpoint.trim().split("=");
+			if (parts.length != 2) {
+				throw new IllegalArgumentException("Invalid rate-limit.endpoints entry: " + endpoint);
+			}
+			int perMinute = Integer.parseInt(parts[1].trim());
+			rules.put(parts[0].trim(), new Rule(parts[0].trim(), perMinute));
+		}
+		System.out.println("Rate limits (per minute, per user): " + endpoints + ", per IP x" + ipFactor);
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		return !enabled || !"POST".equals(request.getMethod()) || !rules.containsKey(request.getServletPath());
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		Rule rule = rules.get(request.getServletPath());
+		long now = System.nanoTime();
+		sweep(now);
+
+		long wait = 0;
+		String throttledBy = null;
+		Authentication auth = SessionAuthentication.of(request);
+		Bucket userBucket = null;
+		if (auth != null) {
+			userBucket = bucket(rule, BY_USER, auth.getName());
+			wait = userBucket.tryAcquire(now, rule.interval, rule.burst);
+			throttledBy = BY_USER;
+		}
+		if (wait == 0) {
+			long ipInterval = rule.interval / Math.max(ipFactor, 1);
+			wait = bucket(rule, BY_IP, request.getRemoteAddr()).tryAcquire(now, ipInterval, ipInterval * rule.perMinute * ipFactor);
+			throttledBy = BY_IP;
+			if (wait > 0 && userBucket != null) {
+				// the request is refused, so it does not count against the user
+				userBucket.refund(rule.interval);
+			}
+		}
+		if (wait > 0) {
+			rule.throttled(throttledBy).incrementAndGet();
+			long retryAfter = Math.max(TimeUnit.NANOSECONDS.toSeconds(wait + TimeUnit.SECONDS.toNanos(1) - 1), 1);
+			System.out.println("Rate limit: throttled " + rule.path + " for " + throttledBy + " "
+					+ (BY_USER.equals(throttledBy) ? auth.getName() : request.getRemoteAddr()) + ", retry in " + retryAfter + "s");
+			response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+			response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(),
+					"Too many requests, please try again in " + retryAfter + " seconds");
+			return;
+		}
+		chain.doFilter(request, response);
+	}
+
+	private Bucket bucket(Rule rule, String kind, String key) {
+		return buckets.computeIfAbsent(rule.path + "|" + kind + "|" + key, k -> new Bucket());
+	}
+
+	/**
+	 * Drops the buckets that have refilled completely, at most once a minute.
+	 */
+	private void sweep(long now) {
+		long last = lastSweep.get();
+		if (now - last < TimeUnit.MINUTES.toNanos(1) || !lastSweep.compareAndSet(last, now)) {
+			return;
+		}
+		int before = buckets.size();
+		buckets.entrySet().removeIf(entry -> entry.getValue().isFull(now));
+		if (before > 0) {
+			System.out.println("Rate limit: evicted " + (before - buckets.size()) + " idle of " + before + " buckets");
+		}
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		for (Rule rule : rules.values()) {
+			for (String kind : new String[] { BY_USER, BY_IP }) {
+				FunctionCounter.builder("ats.ratelimit.throttled", rule.throttled(kind), AtomicLong::get)
+						.tag("endpoint", rule.path).tag("key", kind)
+						.description("Requests rejected with 429 by the rate limiter").register(registry);
+			}
+		}
+		Gauge.builder("ats.ratelimit.buckets", buckets, Map::size)
+				.description("Token buckets currently tracked").register(registry);
+	}
+
+	private static class Rule {
+
+		private final String path;
+
+		private final int perMinute;
+
+		// nanoseconds per token, and the most a bucket can hold in the same unit
+		private final long interval;
+
+		private final long burst;
+
+		private final AtomicLong throttledByUser = new AtomicLong();
+
+		private final AtomicLong throttledByIp = new AtomicLong();
+
+		Rule(String path, int perMinute) {
+			this.path = path;
+			this.perMinute = perMinute;
+			this.interval = TimeUnit.MINUTES.toNanos(1) / Math.max(perMinute, 1);
+			this.burst = interval * perMinute;
+		}
+
+		AtomicLong throttled(String kind) {
+			return BY_USER.equals(kind) ? throttledByUser : throttledByIp;
+		}
+
+	}
+
+	static class Bucket {
+
+		// the time the bucket is full again; each token taken moves it one interval later
+		private final AtomicLong fullAt = new AtomicLong(Long.MIN_VALUE);
+
+		/**
+		 * Takes a token, returning 0, or returns how long until one is
+		 * available without taking it.
+		 */
+		long tryAcquire(long now, long interval, long burst) {
+			while (true) {
+				long current = fullAt.get();
+				long start = current == Long.MIN_VALUE || current - now < 0 ? now : current;
+				long next = start + interval;
+				if (next - now > burst) {
+					return next - now - burst;
+				}
+				if (fullAt.compareAndSet(current, next)) {
+					return 0;
+				}
+			}
+		}
+
+		/**
+		 * Gives back a token taken by {@link #tryAcquire}.
+		 */
+		void refund(long interval) {
+			fullAt.addAndGet(-interval);
+		}
+
+		boolean isFull(long now) {
+			long current = fullAt.get();
+			return current == Long.MIN_VALUE || current - now <= 0;
+		}
+
+	}
+
+}
@@ -0,0 +1,39 @@
+package com.spring.getready.interceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+
+/**
+ * The signed-in user of a request, for filters that run before Spring
+ * Security has loaded the security context: it is read from the session, where
+ * Spring Security keeps it between requests.
+ */
+final class SessionAuthentication {
+
+	private SessionAuthentication() {
+	}
+
+	/**
+	 * The authenticated, non-anonymous user, or null.
+	 */
+	static Authentication of(HttpServletRequest request) {
+		Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+		if (auth == null) {
+			HttpSession session = request.getSession(false);
+			Object context = session != null
+					? session.getAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY)
+					: null;
+			if (context instanceof SecurityContext) {
+				auth = ((SecurityContext) context).getAuthentication();
+			}
+		}
+		return auth != null && auth.isAuthenticated() && !(auth instanceof AnonymousAuthenticationToken) ? auth : null;
+	}
+
+}
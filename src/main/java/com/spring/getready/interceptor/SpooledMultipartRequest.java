@@ -0,0 +1,288 @@
+package com.spring.getready.interceptor;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.Part;
+
+import org.apache.catalina.core.ApplicationPart;
+import org.apache.tomcat.util.http.fileupload.FileItem;
+import org.apache.tomcat.util.http.fileupload.FileUploadException;
+import org.apache.tomcat.util.http.fileupload.disk.DiskFileItemFactory;
+import org.apache.tomcat.util.http.fileupload.servlet.ServletFileUpload;
+import org.apache.tomcat.util.http.fileupload.servlet.ServletRequestContext;
+import org.springframework.util.ClassUtils;
+
+/**
+ * A multipart request whose body has already been read into a spool file.
+ * Parts and form fields are parsed from the file the first time they are
+ * asked for, with the same parser and limits the container would use.
+ * <p>
+ * This is the only class that uses Tomcat's internals: its bundled copy of
+ * commons-fileupload, and {@code ApplicationPart} to expose the items as the
+ * servlet {@link Part}s Spring's multipart resolver expects. Both ship with
+ * the embedded Tomcat the application runs on, 9.0.27 as managed by Spring
+ * Boot 2.2, but are not a public API and may change in any Tomcat release,
+ * so they are checked for by {@link #isSupported()} before any request is
+ * spooled, and this class should be checked again whenever Tomcat is
+ * upgraded.
+ */
+public class SpooledMultipartRequest extends HttpServletRequestWrapper {
+
+	private final Path spool;
+
+	private final File repository;
+
+	private final int fileSizeThreshold;
+
+	private final long maxFileSize;
+
+	private final long maxRequestSize;
+
+	private List<FileItem> items;
+
+	private List<Part> parts;
+
+	private Map<String, String[]> parameters;
+
+	public SpooledMultipartRequest(HttpServletRequest request, Path spool, File repository, int fileSizeThreshold,
+			long maxFileSize, long maxRequestSize) {
+		super(request);
+		this.spool = spool;
+		this.repository = repository;
+		this.fileSizeThreshold = fileSizeThreshold;
+		this.maxFileSize = maxFileSize;
+		this.maxRequestSize = maxRequestSize;
+	}
+
+	/**
+	 * Whether the Tomcat classes the parts are parsed with are present, with
+	 * the constructor used to wrap them.
+	 */
+	static boolean isSupported() {
+		ClassLoader classLoader = SpooledMultipartRequest.class.getClassLoader();
+		try {
+			Class<?> fileItem = ClassUtils.forName("org.apache.tomcat.util.http.fileupload.FileItem", classLoader);
+			Class<?> applicationPart = ClassUtils.forName("org.apache.catalina.core.ApplicationPart", classLoader);
+			return ClassUtils.isPresent("org.apache.tomcat.util.http.fileupload.servlet.ServletFileUpload", classLoader)
+					&& ClassUtils.hasConstructor(applicationPart, fileItem, File.class);
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	Path getSpool() {
+		return spool;
+	}
+
+	@Override
+	public ServletInputStream getInputStream() throws IOException {
+		InputStream input = Files.newInputStream(spool);
+		return new ServletInputStream() {
+
+			private boolean finished;
+
+			@Override
+			public int read() throws IOException {
+				int b = input.read();
+				finished = b == -1;
+				return b;
+			}
+
+			@Override
+			public int read(byte[] buffer, int offset, int length) throws IOException {
+				int read = input.read(buffer, offset, length);
+				finished = read == -1;
+				return read;
+			}
+
+			@Override
+			public boolean isFinished() {
+				return finished;
+			}
+
+			@Override
+			public boolean isReady() {
+				return true;
+			}
+
+			@Override
+			public void setReadListener(ReadListener listener) {
+				throw new IllegalStateException("The request body has already been read");
+			}
+
+			@Override
+			public void close() throws IOException {
+				input.close();
+			}
+
+		};
+	}
+
+	@Override
+	public BufferedReader getReader() throws IOException {
+		return new BufferedReader(new InputStreamReader(getInputStream(), encoding()));
+	}
+
+	@Override
+	public int getContentLength() {
+		return (int) getContentLengthLong();
+	}
+
+	@Override
+	public long getContentLengthLong() {
+		try {
+			return Files.size(spool);
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	@Override
+	public Collection<Part> getParts() throws IOException, ServletException {
+		parse();
+		return parts;
+	}
+
+	@Override
+	public Part getPart(String name) throws IOException, ServletException {
+		for (Part part : getParts()) {
+			if (part.getName().equals(name)) {
+				return part;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public String getParameter(String name) {
+		String[] values = getParameterMap().get(name);
+		return values != null && values.length > 0 ? values[0] : null;
+	}
+
+	@Override
+	public String[] getParameterValues(String name) {
+		return getParameterMap().get(name);
+	}
+
+	@Override
+	public Enumeration<String> getParameterNames() {
+		return Collections.enumeration(getParameterMap().keySet());
+	}
+
+	@Override
+	public Map<String, String[]> getParameterMap() {
+		try {
+			parse();
+		} catch (IOException | IllegalStateException e) {
+			// like the container, a body that cannot be parsed leaves only the query string
+			System.out.println("Could not parse multipart request: " + e.getMessage());
+			if (parameters == null) {
+				parameters = Collections.unmodifiableMap(toArrays(queryParameters()));
+			}
+		}
+		return parameters;
+	}
+
+	/**
+	 * Deletes the spool file and any part written to disk.
+	 */
+	void cleanup() {
+		if (items != null) {
+			items.forEach(FileItem::delete);
+		}
+		try {
+			Files.deleteIfExists(spool);
+		} catch (IOException e) {
+			System.out.println("Could not delete upload spool " + spool + ": " + e.getMessage());
+		}
+	}
+
+	private synchronized void parse() throws IOException {
+		if (parts != null) {
+			return;
+		}
+		DiskFileItemFactory factory = new DiskFileItemFactory();
+		factory.setRepository(repository);
+		factory.setSizeThreshold(fileSizeThreshold);
+		ServletFileUpload upload = new ServletFileUpload(factory);
+		upload.setFileSizeMax(maxFileSize);
+		upload.setSizeMax(maxRequestSize);
+		List<FileItem> parsed;
+		try {
+			parsed = upload.parseRequest(new ServletRequestContext(this));
+		} catch (FileUploadException e) {
+			// the message names the exceeded limit, which Spring maps to MaxUploadSizeExceededException
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+		items = parsed;
+		Map<String, List<String>> values = queryParameters();
+		List<Part> parsedParts = new ArrayList<>();
+		for (FileItem item : parsed) {
+			parsedParts.add(new ApplicationPart(item, repository));
+			if (item.isFormField()) {
+				values.computeIfAbsent(item.getFieldName(), name -> new ArrayList<>()).add(item.getString(encoding()));
+			}
+		}
+		parameters = Collections.unmodifiableMap(toArrays(values));
+		parts = Collections.unmodifiableList(parsedParts);
+	}
+
+	private Map<String, List<String>> queryParameters() {
+		Map<String, List<String>> values = new LinkedHashMap<>();
+		String query = getQueryString();
+		if (query == null) {
+			return values;
+		}
+		for (String pair : query.split("&")) {
+			if (pair.isEmpty()) {
+				continue;
+			}
+			int equals = pair.indexOf('=');
+			String name = equals < 0 ? pair : pair.substring(0, equals);
+			String value = equals < 0 ? "" : pair.substring(equals + 1);
+			values.computeIfAbsent(decode(name), key -> new ArrayList<>()).add(decode(value));
+		}
+		return values;
+	}
+
+	private String decode(String value) {
+		try {
+			return URLDecoder.decode(value, encoding());
+		} catch (UnsupportedEncodingException | IllegalArgumentException e) {
+			return value;
+		}
+	}
+
+	private String encoding() {
+		String encoding = getCharacterEncoding();
+		return encoding != null ? encoding : StandardCharsets.UTF_8.name();
+	}
+
+	private static Map<String, String[]> toArrays(Map<String, List<String>> values) {
+		Map<String, String[]> arrays = new LinkedHashMap<>();
+		values.forEach((name, list) -> arrays.put(name, list.toArray(new String[0])));
+		return arrays;
+	}
+
+}
@@ -0,0 +1,218 @@
+package com.spring.getready.interceptor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.web.servlet.MultipartProperties;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Reads multipart uploads with non-blocking servlet I/O before anything else
+ * touches them. The body goes to a spool file as it arrives, so a slow client
+ * holds no request thread between packets; once it is complete the request is
+ * dispatched again, wrapped so that its parts are parsed from the spool file,
+ * and goes through security and the controllers as usual.
+ * <p>
+ * Spooling comes before Spring Security, whose CSRF check would otherwise
+ * parse the body on a request thread, so a request without a signed-in
+ * session is refused here before any of its body is read; the rate limiter
+ * runs earlier still. The parts are parsed by Tomcat's own multipart parser,
+ * through {@link SpooledMultipartRequest} alone, so they behave exactly as
+ * the container's would; on another container the filter turns itself off.
+ */
+@Component
+public class SpoolingUploadFilter extends OncePerRequestFilter {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	@Autowired
+	private MultipartProperties multipartProperties;
+
+	@Value("${upload.spool-enabled:true}")
+	private boolean enabled;
+
+	@Value("${upload.read-timeout-seconds:300}")
+	private long readTimeoutSeconds;
+
+	@PostConstruct
+	public void init() {
+		if (enabled && !SpooledMultipartRequest.isSupported()) {
+			System.out.println("Upload spooling needs Tomcat's multipart parser, which is not available; disabled");
+			enabled = false;
+		}
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		String contentType = request.getContentType();
+		return !enabled || !request.isAsyncSupported() || !"POST".equals(request.getMethod()) || contentType == null
+				|| !contentType.toLowerCase().startsWith("multipart/");
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		if (SessionAuthentication.of(request) == null) {
+			// every upload endpoint needs a signed-in user, which Spring Security would check only after spooling
+			response.setHeader("Connection", "close");
+			response.sendError(HttpStatus.UNAUTHORIZED.value(), "Please sign in to upload files");
+			return;
+		}
+		long maxRequestSize = multipartProperties.getMaxRequestSize().toBytes();
+		if (maxRequestSize >= 0 && request.getContentLengthLong() > maxRequestSize) {
+			response.sendError(HttpStatus.PAYLOAD_TOO_LARGE.value(), "Upload is larger than " + maxRequestSize + " bytes");
+			return;
+		}
+		File repository = StringUtils.hasText(multipartProperties.getLocation())
+				? new File(multipartProperties.getLocation())
+				: new File(System.getProperty("java.io.tmpdir"));
+		Path spool = Files.createTempFile(repository.toPath(), "upload-", ".spool");
+		SpooledMultipartRequest spooled = new SpooledMultipartRequest(request, spool, repository,
+				(int) multipartProperties.getFileSizeThreshold().toBytes(),
+				multipartProperties.getMaxFileSize().toBytes(), maxRequestSize);
+
+		AsyncContext async = request.startAsync(spooled, response);
+		async.setTimeout(readTimeoutSeconds * 1000);
+		ServletInputStream input = request.getInputStream();
+		Spooler spooler = new Spooler(input, spooled, async, maxRequestSize);
+		async.addListener(spooler);
+		input.setReadListener(spooler);
+	}
+
+	/**
+	 * Copies the body to the spool file whenever the container has data, then
+	 * dispatches the wrapped request. Also cleans up when the exchange ends,
+	 * staying registered across the async restarts of the controllers.
+	 */
+	private static class Spooler implements ReadListener, AsyncListener {
+
+		private final ServletInputStream input;
+
+		private final SpooledMultipartRequest request;
+
+		private final AsyncContext async;
+
+		private final long maxRequestSize;
+
+		private final FileChannel channel;
+
+		private final byte[] buffer = new byte[BUFFER_SIZE];
+
+		private long received;
+
+		private volatile boolean spooling = true;
+
+		Spooler(ServletInputStream input, SpooledMultipartRequest request, AsyncContext async, long maxRequestSize)
+				throws IOException {
+			this.input = input;
+			this.request = request;
+			this.async = async;
+			this.maxRequestSize = maxRequestSize;
+			this.channel = FileChannel.open(request.getSpool(), StandardOpenOption.WRITE);
+		}
+
+		@Override
+		public void onDataAvailable() throws IOException {
+			while (spooling && input.isReady()) {
+				int read = input.read(buffer);
+				if (read == -1) {
+					return;
+				}
+				received += read;
+				if (maxRequestSize >= 0 && received > maxRequestSize) {
+					abort(HttpStatus.PAYLOAD_TOO_LARGE, "Upload is larger than " + maxRequestSize + " bytes");
+					return;
+				}
+				ByteBuffer data = ByteBuffer.wrap(buffer, 0, read);
+				while (data.hasRemaining()) {
+					channel.write(data);
+				}
+			}
+		}
+
+		@Override
+		public void onAllDataRead() throws IOException {
+			if (!spooling) {
+				return;
+			}
+			spooling = false;
+			channel.close();
+			async.dispatch();
+		}
+
+		@Override
+		public void onError(Throwable t) {
+			if (spooling) {
+				System.out.println("Upload aborted after " + received + " bytes: " + t.getMessage());
+				spooling = false;
+				closeChannel();
+				async.complete();
+			}
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) throws IOException {
+			if (spooling) {
+				abort(HttpStatus.REQUEST_TIMEOUT, "Upload not received in time");
+			}
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+			closeChannel();
+			request.cleanup();
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+			onError(event.getThrowable());
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+			// listeners are dropped when a controller restarts async processing
+			event.getAsyncContext().addListener(this);
+		}
+
+		private void abort(HttpStatus status, String message) throws IOException {
+			spooling = false;
+			closeChannel();
+			System.out.println("Upload rejected after " + received + " bytes: " + message);
+			HttpServletResponse response = (HttpServletResponse) async.getResponse();
+			response.setHeader("Connection", "close");
+			response.sendError(status.value(), message);
+			async.complete();
+		}
+
+		private void closeChannel() {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				System.out.println("Could not close upload spool: " + e.getMessage());
+			}
+		}
+
+	}
+
+}
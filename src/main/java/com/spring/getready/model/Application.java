@@ -7,7 +7,7 @@ import java.sql.Date;
 import java.sql.Time;
 
 @Entity
-@Table(name="applications")
+@Table(name="applications", uniqueConstraints=@UniqueConstraint(columnNames={"job_ref", "candidate_ref", "idempotency_key"}))
 public class Application implements Serializable {
     private static final long serialVersionUID = 1L;
 
@@ -58,6 +58,16 @@ public class Application implements Serializable {
     @Column(name="notes", columnDefinition="TEXT")
     private String notes;
 
+    @Column(name="submission_ref", unique=true, length=36)
+    private String submissionRef;
+
+    @Column(name="idempotency_key", length=64)
+    private String idempotencyKey;
+
+    // until when the instance that accepted the application may screen it before another claims it
+    @Column(name="screening_lease_until")
+    private Timestamp screeningLeaseUntil;
+
     public Application() {}
 
     public Integer getApplicationId() { return applicationId; }
@@ -101,4 +111,13 @@ public class Application implements Serializable {
 
     public String getInterviewLocation() { return interviewLocation; }
     public void setInterviewLocation(String interviewLocation) { this.interviewLocation = interviewLocation; }
+
+    public String getSubmissionRef() { return submissionRef; }
+    public void setSubmissionRef(String submissionRef) { this.submissionRef = submissionRef; }
+
+    public String getIdempotencyKey() { return idempotencyKey; }
+    public void setIdempotencyKey(String idempotencyKey) { this.idempotencyKey = idempotencyKey; }
+
+    public Timestamp getScreeningLeaseUntil() { return screeningLeaseUntil; }
+    public void setScreeningLeaseUntil(Timestamp screeningLeaseUntil) { this.screeningLeaseUntil = screeningLeaseUntil; }
 }
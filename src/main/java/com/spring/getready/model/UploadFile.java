@@ -36,6 +36,15 @@ public class UploadFile implements Serializable {
 	@Column(name="uploaded_on")
 	private Timestamp uploadedOn;
 
+	@Column(name="sha256", length=64)
+	private String sha256;
+
+	@Column(name="content_type")
+	private String contentType;
+
+	@Column(name="file_size")
+	private Long fileSize;
+
 	//bi-directional many-to-one association to AssignmentDetail
 	@OneToMany(mappedBy="uploadFile")
 	private List<AssignmentDetail> assignmentDetails;
@@ -99,6 +108,30 @@ public class UploadFile implements Serializable {
 		this.uploadedOn = uploadedOn;
 	}
 
+	public String getSha256() {
+		return this.sha256;
+	}
+
+	public void setSha256(String sha256) {
+		this.sha256 = sha256;
+	}
+
+	public String getContentType() {
+		return this.contentType;
+	}
+
+	public void setContentType(String contentType) {
+		this.contentType = contentType;
+	}
+
+	public Long getFileSize() {
+		return this.fileSize;
+	}
+
+	public void setFileSize(Long fileSize) {
+		this.fileSize = fileSize;
+	}
+
 	public List<AssignmentDetail> getAssignmentDetails() {
 		return this.assignmentDetails;
 	}
@@ -2,11 +2,15 @@ package com.spring.getready.repository;
 
 import com.spring.getready.model.Application;
 import com.spring.getready.model.JobPosting;
+import com.spring.getready.model.UploadFile;
 import com.spring.getready.model.UserDetail;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import java.sql.Timestamp;
 import java.util.List;
 
 @Repository
@@ -15,6 +19,9 @@ public interface ApplicationRepository extends JpaRepository<Application, Intege
     List<Application> findByCandidate(UserDetail candidate);
     List<Application> findByJobPostingOrderByAiScoreDesc(JobPosting jobPosting);
     List<Application> findByStatus(String status);
+    Application findBySubmissionRef(String submissionRef);
+    long countByResume(UploadFile resume);
+    Application findByJobPostingAndCandidateAndIdempotencyKey(JobPosting jobPosting, UserDetail candidate, String idempotencyKey);
     
     @Query("SELECT a FROM Application a LEFT JOIN FETCH a.resume LEFT JOIN FETCH a.candidate LEFT JOIN FETCH a.jobPosting")
     List<Application> findAllWithResumeAndDetails();
@@ -24,4 +31,30 @@ public interface ApplicationRepository extends JpaRepository<Application, Intege
     
     @Query("SELECT a FROM Application a LEFT JOIN FETCH a.resume LEFT JOIN FETCH a.candidate LEFT JOIN FETCH a.jobPosting WHERE a.status = :status ORDER BY a.appliedOn DESC")
     List<Application> findByStatusWithResumeAndDetails(@Param("status") String status);
+
+    // screening writes only its own columns, leaving whatever a recruiter changed meanwhile
+    @Modifying
+    @Transactional
+    @Query("UPDATE Application a SET a.aiScore = :score, a.aiMatchKeywords = :keywords WHERE a.applicationId = :id")
+    int updateScreeningResult(@Param("id") Integer applicationId, @Param("score") Double score,
+            @Param("keywords") String keywords);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Application a SET a.status = :status WHERE a.applicationId = :id AND a.status = :expected")
+    int updateStatusIf(@Param("id") Integer applicationId, @Param("expected") String expected,
+            @Param("status") String status);
+
+    // takes over an unfinished application whose lease has run out, so only one instance screens it again
+    @Modifying
+    @Transactional
+    @Query("UPDATE Application a SET a.screeningLeaseUntil = :until WHERE a.applicationId = :id AND a.status = :status"
+            + " AND (a.screeningLeaseUntil IS NULL OR a.screeningLeaseUntil < :now)")
+    int claimScreening(@Param("id") Integer applicationId, @Param("status") String status,
+            @Param("now") Timestamp now, @Param("until") Timestamp until);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Application a SET a.screeningLeaseUntil = NULL WHERE a.applicationId IN :ids AND a.status = :status")
+    int releaseScreenings(@Param("ids") List<Integer> applicationIds, @Param("status") String status);
 }
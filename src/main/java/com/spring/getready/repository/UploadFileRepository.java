@@ -8,4 +8,8 @@ import com.spring.getready.model.UploadFile;
 @Repository
 public interface UploadFileRepository extends JpaRepository<UploadFile, Integer> {
 
+	UploadFile findFirstByFileName(String fileName);
+
+	long countBySha256AndIsDeletedFalse(String sha256);
+
 }
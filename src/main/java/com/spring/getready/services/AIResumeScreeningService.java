@@ -8,31 +8,13 @@ import java.util.stream.Collectors;
 public class AIResumeScreeningService {
 
     public Map<String, Object> analyzeResume(String resumeText, String requiredSkills) {
-        Map<String, Object> result = new HashMap<>();
-        
-        String resumeLower = resumeText.toLowerCase();
-        String[] skillsArray = requiredSkills.toLowerCase().split(",");
-        
-        List<String> matchedSkills = new ArrayList<>();
-        int matchCount = 0;
-        
-        for (String skill : skillsArray) {
-            String trimmedSkill = skill.trim();
-            if (resumeLower.contains(trimmedSkill)) {
-                matchedSkills.add(trimmedSkill);
-                matchCount++;
-            }
-        }
-        
-        double score = skillsArray.length > 0 ? 
-            (matchCount * 100.0 / skillsArray.length) : 0.0;
-        
-        result.put("score", Math.round(score * 100.0) / 100.0);
-        result.put("matchedSkills", String.join(", ", matchedSkills));
-        result.put("totalSkills", skillsArray.length);
-        result.put("matchedCount", matchCount);
-        
-        return result;
+        ResumeScreeningSession session = startScreening(requiredSkills);
+        session.append(resumeText);
+        return session.getResult();
+    }
+
+    public ResumeScreeningSession startScreening(String requiredSkills) {
+        return new ResumeScreeningSession(requiredSkills);
     }
 
     public String extractKeywords(String text) {
@@ -1,10 +1,6 @@
 package com.spring.getready.services;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Date;
@@ -16,7 +12,6 @@ import java.util.Optional;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import com.spring.getready.config.FilePropertyConfig;
 import com.spring.getready.interceptor.FileException;
 import com.spring.getready.model.AssignmentDetail;
 import com.spring.getready.model.CourseList;
@@ -29,12 +24,15 @@ import com.spring.getready.repository.SubmissionDetailRepository;
 import com.spring.getready.repository.UploadFileRepository;
 import com.spring.getready.repository.UserDetailRepository;
 import com.spring.getready.template.model.AssignmentTemplate;
+import com.spring.getready.services.storage.FileStorageService;
+import com.spring.getready.services.upload.UploadPolicy;
+import com.spring.getready.services.upload.UploadReceipt;
 
 @Service
 public class AssignmentService {
 
 	@Autowired
-	private FilePropertyConfig filePropertyConfig;
+	private FileStorageService fileStorageService;
 
 	@Autowired
 	private CourseListRepository courseListRepository;
@@ -57,18 +55,17 @@ public class AssignmentService {
 		UploadFile referenceFile = null;
 		Optional<CourseList> courseRef = null;
 		if (assignment.getReference() != null) {
-			String fileName = new Date().getTime() + "_" + assignment.getReference().getOriginalFilename();
-			Path path = Paths.get(new File(filePropertyConfig.getFilePath() + File.separator + fileName).toURI());
 			try {
-				Path outputPath = Files.write(path, assignment.getReference().getBytes());
-				if (outputPath != null) {
-					UploadFile uploadFile = new UploadFile();
-					uploadFile.setFileName(fileName);
-					uploadFile.setFileOriginalName(assignment.getReference().getOriginalFilename());
-					uploadFile.setUploadedOn(new Timestamp(new Date().getTime()));
-					uploadFile.setIsDeleted(false);
-					referenceFile = uploadFileRepository.save(uploadFile);
-				}
+				UploadReceipt receipt = fileStorageService.store(assignment.getReference(), UploadPolicy.DOCUMENT);
+				UploadFile uploadFile = new UploadFile();
+				uploadFile.setFileName(receipt.getFileName());
+				uploadFile.setFileOriginalName(receipt.getOriginalFileName());
+				uploadFile.setSha256(receipt.getSha256());
+				uploadFile.setContentType(receipt.getContentType());
+				uploadFile.setFileSize(receipt.getSize());
+				uploadFile.setUploadedOn(new Timestamp(new Date().getTime()));
+				uploadFile.setIsDeleted(false);
+				referenceFile = uploadFileRepository.save(uploadFile);
 			} catch (IOException io) {
 				throw new FileException("Error while creating assignments");
 			}
@@ -1,21 +1,20 @@
 package com.spring.getready.services;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.Date;
 
 import org.springframework.beans.factory.annotation.Autowired;
 
-import com.spring.getready.config.FilePropertyConfig;
 import com.spring.getready.model.ProfileInfo;
 import com.spring.getready.model.UploadFile;
 import com.spring.getready.model.UserDetail;
 import com.spring.getready.repository.ProfileInfoRepository;
 import com.spring.getready.repository.UserDetailRepository;
 import com.spring.getready.template.model.ProfileTemplate;
+import com.spring.getready.services.image.ImageVariantService;
+import com.spring.getready.services.storage.FileStorageService;
+import com.spring.getready.services.upload.UploadPolicy;
+import com.spring.getready.services.upload.UploadReceipt;
 
 import org.springframework.stereotype.Service;
 
@@ -29,7 +28,10 @@ public class ProfileService {
 	private UploadFileService uploadFileService;
 
 	@Autowired
-	private FilePropertyConfig filePropertyConfig;
+	private FileStorageService fileStorageService;
+
+	@Autowired
+	private ImageVariantService imageVariantService;
 	
 	@Autowired
 	private UserDetailRepository userDetailRepository;
@@ -45,15 +47,11 @@ public class ProfileService {
 			profileInfo.setHometown(profileTemplate.getHometown());
 			profileInfo.setReligion(profileTemplate.getReligion());
 			if (!profileTemplate.getProfile().isEmpty()) {
-				String fileName = new Date().getTime() + "_" + profileTemplate.getProfile().getOriginalFilename();
-				Path path = Paths.get(new File(filePropertyConfig.getFilePath() + File.separator + fileName).toURI());
 				try {
-					Path outputPath = Files.write(path, profileTemplate.getProfile().getBytes());
-					if (outputPath != null) {
-						UploadFile uploadFile = uploadFileService.uploadFile(fileName,
-								profileTemplate.getProfile().getOriginalFilename());
-						profileInfo.setUploadFile(uploadFile);
-					}
+					UploadReceipt receipt = fileStorageService.store(profileTemplate.getProfile(), UploadPolicy.IMAGE);
+					UploadFile uploadFile = uploadFileService.uploadFile(receipt);
+					profileInfo.setUploadFile(uploadFile);
+					imageVariantService.generateInBackground(uploadFile);
 				} catch (IOException e) {
 					e.printStackTrace();
 				}
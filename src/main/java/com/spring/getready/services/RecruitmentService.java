@@ -2,16 +2,31 @@ package com.spring.getready.services;
 
 import com.spring.getready.model.Application;
 import com.spring.getready.model.JobPosting;
+import com.spring.getready.model.UploadFile;
+import com.spring.getready.model.UserDetail;
 import com.spring.getready.repository.ApplicationRepository;
 import com.spring.getready.repository.JobPostingRepository;
+import com.spring.getready.repository.UserDetailRepository;
+import com.spring.getready.services.journal.JournalRecord;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class RecruitmentService {
 
+    public static final String STATUS_PROCESSING = "Processing";
+
+    public static final String STATUS_SUBMITTED = "Submitted";
+
     @Autowired
     private JobPostingRepository jobPostingRepository;
 
@@ -21,6 +36,15 @@ public class RecruitmentService {
     @Autowired
     private AIResumeScreeningService aiScreeningService;
 
+    @Autowired
+    private UserDetailRepository userDetailRepository;
+
+    @Autowired
+    private UploadFileService uploadFileService;
+
+    @Value("${ingestion.screening-lease-minutes:10}")
+    private long screeningLeaseMinutes;
+
     public List<JobPosting> getAllActiveJobs() {
         return jobPostingRepository.findByIsActiveTrueOrderByPostedOnDesc();
     }
@@ -29,20 +53,197 @@ public class RecruitmentService {
         return jobPostingRepository.save(jobPosting);
     }
 
+    public JobPosting findJob(Integer jobId) {
+        return jobPostingRepository.findById(jobId).orElse(null);
+    }
+
+    public ResumeScreeningSession startScreening(JobPosting job) {
+        return aiScreeningService.startScreening(job.getRequiredSkills());
+    }
+
     public Application submitApplication(Application application, String resumeText) {
-        JobPosting job = application.getJobPosting();
-        
-        Map<String, Object> aiResult = aiScreeningService.analyzeResume(
-            resumeText, 
-            job.getRequiredSkills()
-        );
+        ResumeScreeningSession screening = startScreening(application.getJobPosting());
+        screening.append(resumeText);
+        return submitApplication(application, screening);
+    }
+
+    public Application submitApplication(Application application, ResumeScreeningSession screening) {
+        application.setAppliedOn(new java.sql.Timestamp(System.currentTimeMillis()));
+        application.setStatus(STATUS_PROCESSING);
+        return completeScreening(application, screening);
+    }
+
+    /**
+     * Stores an application whose resume has not been screened yet.
+     */
+    public Application acceptApplication(Application application) {
+        application.setStatus(STATUS_PROCESSING);
+        application.setAppliedOn(new java.sql.Timestamp(System.currentTimeMillis()));
+        application.setScreeningLeaseUntil(screeningLease());
+        return applicationRepository.save(application);
+    }
+
+    /**
+     * Returns the application the candidate already made to the posting under
+     * this idempotency key, or null if there is none yet.
+     */
+    public Application findRepeatedApplication(JobPosting job, UserDetail candidate, String idempotencyKey) {
+        return applicationRepository.findByJobPostingAndCandidateAndIdempotencyKey(job, candidate, idempotencyKey);
+    }
+
+    /**
+     * Inserts the rows of an application replayed from the journal and
+     * returns the new application. Returns null if there is nothing new to
+     * screen: the record was replayed before, it repeats an earlier submission
+     * under the same idempotency key, or the posting no longer exists.
+     */
+    @Transactional
+    public Application acceptJournaledApplication(JournalRecord record) {
+        Application existing = applicationRepository.findBySubmissionRef(record.getSubmissionRef());
+        if (existing != null) {
+            return null;
+        }
+        JobPosting job = jobPostingRepository.findById(record.getJobRef()).orElse(null);
+        if (job == null) {
+            System.out.println("Dropping journaled application " + record.getSubmissionRef()
+                    + ": job " + record.getJobRef() + " no longer exists");
+            return null;
+        }
+        UserDetail candidate = userDetailRepository.findByEmailEquals(record.getUsername());
+        // a reused resume already has its row, a new one gets it here
+        UploadFile existingResume = uploadFileService.findUploadFile(record.getFileName());
+        if (record.getIdempotencyKey() != null) {
+            Application original = applicationRepository.findByJobPostingAndCandidateAndIdempotencyKey(
+                    job, candidate, record.getIdempotencyKey());
+            if (original != null) {
+                System.out.println("Journaled application " + record.getSubmissionRef() + " repeats application "
+                        + original.getApplicationId() + ", discarding it");
+                if (existingResume == null) {
+                    uploadFileService.discardStoredFile(record.getFileName(), record.getSha256());
+                }
+                return null;
+            }
+        }
+        Timestamp acceptedOn = new Timestamp(record.getAcceptedOn());
+        UploadFile resume = existingResume != null ? existingResume
+                : uploadFileService.uploadFile(record.getFileName(), record.getOriginalFileName(),
+                        record.getSha256(), record.getContentType(), record.getFileSize(), acceptedOn);
+
+        Application application = new Application();
+        application.setJobPosting(job);
+        application.setCandidate(candidate);
+        application.setResume(resume);
+        application.setNotes(record.getNotes());
+        application.setSubmissionRef(record.getSubmissionRef());
+        application.setIdempotencyKey(record.getIdempotencyKey());
+        application.setStatus(STATUS_PROCESSING);
+        application.setAppliedOn(acceptedOn);
+        application.setScreeningLeaseUntil(screeningLease());
+        return applicationRepository.save(application);
+    }
+
+    /**
+     * Records the screening result. An application that is already stored
+     * may have been loaded long before, so only the score and keywords are
+     * written, and the status moves on only if it is still "Processing" in
+     * the database: a recruiter may already have moved the application on.
+     */
+    @Transactional
+    public Application completeScreening(Application application, ResumeScreeningSession screening) {
+        Map<String, Object> aiResult = screening.getResult();
         
         application.setAiScore((Double) aiResult.get("score"));
         application.setAiMatchKeywords((String) aiResult.get("matchedSkills"));
-        application.setStatus("Submitted");
-        application.setAppliedOn(new java.sql.Timestamp(System.currentTimeMillis()));
-        
-        return applicationRepository.save(application);
+        if (application.getApplicationId() == null) {
+            application.setStatus(STATUS_SUBMITTED);
+            return applicationRepository.save(application);
+        }
+
+        return storeScreeningResult(application);
+    }
+
+    /**
+     * Records that the resume could not be read, by a timeout or an error, so
+     * the application goes to the recruiters without a score rather than
+     * with one computed from partial or no text.
+     */
+    @Transactional
+    public Application failScreening(Application application) {
+        application.setAiScore(null);
+        application.setAiMatchKeywords(null);
+        return storeScreeningResult(application);
+    }
+
+    private Application storeScreeningResult(Application application) {
+        applicationRepository.updateScreeningResult(application.getApplicationId(), application.getAiScore(),
+                application.getAiMatchKeywords());
+        if (applicationRepository.updateStatusIf(application.getApplicationId(), STATUS_PROCESSING,
+                STATUS_SUBMITTED) > 0) {
+            application.setStatus(STATUS_SUBMITTED);
+        }
+        return application;
+    }
+
+    /**
+     * Applications left in "Processing" whose screening lease has run out,
+     * each claimed for this instance with a conditional update. When several
+     * instances start together, every application goes to only one of them,
+     * and none is taken from an instance that is still screening it.
+     */
+    public List<Application> claimUnfinishedApplications() {
+        List<Application> claimed = new ArrayList<>();
+        for (Application application : applicationRepository.findByStatus(STATUS_PROCESSING)) {
+            Timestamp now = new Timestamp(System.currentTimeMillis());
+            if (applicationRepository.claimScreening(application.getApplicationId(), STATUS_PROCESSING, now,
+                    screeningLease()) > 0) {
+                claimed.add(application);
+            }
+        }
+        return claimed;
+    }
+
+    /**
+     * Gives up the leases of applications this instance will not screen, so
+     * the next instance to start takes them at once.
+     */
+    public void releaseScreenings(List<Integer> applicationIds) {
+        if (!applicationIds.isEmpty()) {
+            applicationRepository.releaseScreenings(applicationIds, STATUS_PROCESSING);
+        }
+    }
+
+    private Timestamp screeningLease() {
+        return new Timestamp(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(screeningLeaseMinutes));
+    }
+
+    /**
+     * Resumes the candidate has applied with before, most recent first.
+     */
+    public List<UploadFile> getPreviousResumes(UserDetail candidate) {
+        List<Application> applications = new ArrayList<>(applicationRepository.findByCandidate(candidate));
+        applications.sort(Comparator.comparing(Application::getAppliedOn,
+                Comparator.nullsLast(Comparator.reverseOrder())));
+        Map<Integer, UploadFile> resumes = new LinkedHashMap<>();
+        for (Application application : applications) {
+            UploadFile resume = application.getResume();
+            if (resume != null && !Boolean.TRUE.equals(resume.getIsDeleted())) {
+                resumes.putIfAbsent(resume.getFileId(), resume);
+            }
+        }
+        return new ArrayList<>(resumes.values());
+    }
+
+    /**
+     * Returns one of the candidate's previous resumes, or null if the file is
+     * not theirs.
+     */
+    public UploadFile findPreviousResume(UserDetail candidate, Integer fileId) {
+        for (UploadFile resume : getPreviousResumes(candidate)) {
+            if (resume.getFileId().equals(fileId)) {
+                return resume;
+            }
+        }
+        return null;
     }
 
     public List<Application> getApplicationsByJob(JobPosting jobPosting) {
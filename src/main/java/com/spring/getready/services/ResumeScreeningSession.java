@@ -0,0 +1,80 @@
+package com.spring.getready.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.spring.getready.services.extraction.TextSink;
+
+/**
+ * Incremental skill matcher fed by the text extractors. Only the last few
+ * characters of the text seen so far are retained, so that a skill split
+ * across two runs is still matched.
+ */
+public class ResumeScreeningSession implements TextSink {
+
+    private final String[] skills;
+
+    private final boolean[] matched;
+
+    private final int overlap;
+
+    private String tail = "";
+
+    private long textLength;
+
+    ResumeScreeningSession(String requiredSkills) {
+        String[] skillsArray = requiredSkills.toLowerCase().split(",");
+        this.skills = new String[skillsArray.length];
+        this.matched = new boolean[skillsArray.length];
+        int longest = 0;
+        for (int i = 0; i < skillsArray.length; i++) {
+            skills[i] = skillsArray[i].trim();
+            matched[i] = skills[i].isEmpty();
+            longest = Math.max(longest, skills[i].length());
+        }
+        this.overlap = Math.max(longest - 1, 0);
+    }
+
+    @Override
+    public synchronized void append(CharSequence text) {
+        if (text.length() == 0) {
+            return;
+        }
+        String window = tail + text.toString().toLowerCase();
+        for (int i = 0; i < skills.length; i++) {
+            if (!matched[i] && window.contains(skills[i])) {
+                matched[i] = true;
+            }
+        }
+        tail = window.length() > overlap ? window.substring(window.length() - overlap) : window;
+        textLength += text.length();
+    }
+
+    public synchronized long getTextLength() {
+        return textLength;
+    }
+
+    public synchronized Map<String, Object> getResult() {
+        Map<String, Object> result = new HashMap<>();
+
+        List<String> matchedSkills = new ArrayList<>();
+        for (int i = 0; i < skills.length; i++) {
+            if (matched[i]) {
+                matchedSkills.add(skills[i]);
+            }
+        }
+        int matchCount = matchedSkills.size();
+
+        double score = skills.length > 0 ?
+            (matchCount * 100.0 / skills.length) : 0.0;
+
+        result.put("score", Math.round(score * 100.0) / 100.0);
+        result.put("matchedSkills", String.join(", ", matchedSkills));
+        result.put("totalSkills", skills.length);
+        result.put("matchedCount", matchCount);
+
+        return result;
+    }
+}
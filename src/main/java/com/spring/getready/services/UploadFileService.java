@@ -1,21 +1,41 @@
 package com.spring.getready.services;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.UUID;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import com.spring.getready.model.UploadFile;
 import com.spring.getready.repository.UploadFileRepository;
+import com.spring.getready.services.extraction.ExtractedTextStore;
+import com.spring.getready.services.extraction.ExtractionLimitException;
+import com.spring.getready.services.extraction.StreamingExtractionStage;
+import com.spring.getready.services.extraction.TextExtractionService;
+import com.spring.getready.services.extraction.TextSink;
+import com.spring.getready.services.storage.FileStorageService;
+import com.spring.getready.services.upload.ContentTypeSniffer;
+import com.spring.getready.services.upload.DigestStage;
+import com.spring.getready.services.upload.SizeCounterStage;
+import com.spring.getready.services.upload.TypeCheckStage;
+import com.spring.getready.services.upload.UploadPolicy;
+import com.spring.getready.services.upload.UploadReceipt;
+import com.spring.getready.services.upload.UploadStage;
 
 @Service
 public class UploadFileService {
@@ -23,51 +43,289 @@ public class UploadFileService {
 	@Autowired
 	private UploadFileRepository uploadFileRepository;
 
-	@Value("${file.upload-path}")
-	private String uploadPath;
+	@Autowired
+	private TextExtractionService textExtractionService;
+
+	@Autowired
+	private ExtractedTextStore extractedTextStore;
+
+	@Autowired
+	private FileStorageService fileStorageService;
+
+	@Value("${extraction.timeout-seconds:20}")
+	private long extractionTimeoutSeconds;
+
+	// text still being extracted from uploads whose request did not wait for it
+	private final Map<String, CompletableFuture<Void>> pendingExtractions = new ConcurrentHashMap<>();
+
+	public UploadFile uploadFile(UploadReceipt receipt) {
+		return uploadFile(receipt.getFileName(), receipt.getOriginalFileName(), receipt.getSha256(),
+				receipt.getContentType(), receipt.getSize(), new Timestamp(new Date().getTime()));
+	}
 
-	public UploadFile uploadFile(String fileName, String fileOriginalName) {
+	public UploadFile uploadFile(String fileName, String fileOriginalName, String sha256, String contentType,
+			Long fileSize, Timestamp uploadedOn) {
 		UploadFile uploadFile = new UploadFile();
 		uploadFile.setFileName(fileName);
 		uploadFile.setFileOriginalName(fileOriginalName);
+		uploadFile.setSha256(sha256);
+		uploadFile.setContentType(contentType);
+		uploadFile.setFileSize(fileSize);
 		uploadFile.setIsDeleted(false);
-		uploadFile.setUploadedOn(new Timestamp(new Date().getTime()));
+		uploadFile.setUploadedOn(uploadedOn);
 		return uploadFileRepository.save(uploadFile);
 	}
 
+	/**
+	 * Marks an upload nothing refers to any more as deleted. The orphan
+	 * collector removes the row, and the content once no other row shares it.
+	 */
+	public void releaseUploadFile(UploadFile uploadFile) {
+		uploadFile.setIsDeleted(true);
+		uploadFileRepository.save(uploadFile);
+	}
+
+	/**
+	 * Returns the upload row of a stored file, or null if it has none yet.
+	 */
+	public UploadFile findUploadFile(String fileName) {
+		return uploadFileRepository.findFirstByFileName(fileName);
+	}
+
 	public UploadFile saveFile(MultipartFile file, String username) throws IOException {
+		return saveFile(file, username, null).getUploadFile();
+	}
+
+	/**
+	 * Streams the upload to disk once, computing its SHA-256, sniffing its type
+	 * and counting its size on the way. Anything but a resume is rejected from
+	 * its first kilobyte. When a sink is given, the text is
+	 * extracted from the same pass and cached. If extraction cannot keep up
+	 * with the upload or fails partway, the text is extracted from the stored
+	 * file afterwards, in which case the sink may see text it already received. Without a sink
+	 * the text is still extracted from the same pass, but cached in the
+	 * background instead of being waited for.
+	 */
+	public UploadReceipt saveFile(MultipartFile file, String username, TextSink textSink) throws IOException {
+		return store(file, textSink, true);
+	}
+
+	/**
+	 * Stores the upload without touching the database; the caller registers it
+	 * later with {@link #uploadFile(String, String, String, String, Long, Timestamp)}. The text is
+	 * cached in the background.
+	 */
+	public UploadReceipt storeFile(MultipartFile file) throws IOException {
+		return store(file, null, false);
+	}
+
+	/**
+	 * Stores a file read from a stream, such as an entry of an archive, without
+	 * touching the database or extracting its text.
+	 */
+	public UploadReceipt storeStream(InputStream input, String originalFilename, long maxBytes) throws IOException {
+		ContentTypeSniffer sniffer = new ContentTypeSniffer();
+		SizeCounterStage size = new SizeCounterStage(maxBytes);
+		TypeCheckStage typeCheck = new TypeCheckStage(sniffer, originalFilename, UploadPolicy.RESUME);
+		String sha256 = fileStorageService.write(input, Arrays.asList(sniffer, typeCheck, size));
+		return new UploadReceipt(null, fileStorageService.newFileName(originalFilename), originalFilename, sha256,
+				sniffer.getContentType(), size.getSize());
+	}
+
+	/**
+	 * Gives up a stored file that was never registered. Its blob is deleted
+	 * only if no row refers to it and no identical upload matched it within
+	 * the grace period, since that upload may still be about to register;
+	 * otherwise the orphan sweep reclaims it.
+	 */
+	public void discardStoredFile(String fileName, String sha256) {
+		try {
+			if (sha256 == null
+					|| (uploadFileRepository.countBySha256AndIsDeletedFalse(sha256) == 0 && fileStorageService.isPastGrace(sha256))) {
+				fileStorageService.delete(fileName, sha256);
+			}
+		} catch (IOException e) {
+			System.out.println("Could not delete " + fileName + ": " + e.getMessage());
+		}
+	}
+
+	private UploadReceipt store(MultipartFile file, TextSink textSink, boolean register) throws IOException {
 		String originalFilename = file.getOriginalFilename();
-		String extension = originalFilename.substring(originalFilename.lastIndexOf("."));
-		String savedFilename = UUID.randomUUID().toString() + extension;
-		
-		Path uploadDir = Paths.get(uploadPath);
-		if (!Files.exists(uploadDir)) {
-			Files.createDirectories(uploadDir);
+		String savedFilename = fileStorageService.newFileName(originalFilename);
+
+		ContentTypeSniffer sniffer = new ContentTypeSniffer();
+		SizeCounterStage size = new SizeCounterStage();
+		TypeCheckStage typeCheck = new TypeCheckStage(sniffer, originalFilename, UploadPolicy.RESUME);
+		List<UploadStage> stages = new ArrayList<>(Arrays.asList(sniffer, typeCheck, size));
+
+		ExtractedTextStore.Entry cacheEntry = null;
+		StreamingExtractionStage extraction = null;
+		if (textExtractionService.isSupported(savedFilename)) {
+			ExtractedTextStore.Entry entry = extractedTextStore.begin();
+			try {
+				extraction = textExtractionService.openStream(savedFilename, text -> {
+					if (textSink != null) {
+						textSink.append(text);
+					}
+					entry.append(text);
+				});
+				cacheEntry = entry;
+				stages.add(extraction);
+			} catch (IOException e) {
+				entry.abort();
+				System.out.println("Streaming extraction unavailable for " + originalFilename + ": " + e.getMessage());
+			}
+		}
+
+		String sha256;
+		try (InputStream input = file.getInputStream()) {
+			sha256 = fileStorageService.write(input, stages);
+		} catch (IOException | RuntimeException e) {
+			if (extraction != null) {
+				extraction.abort();
+				cacheEntry.abort();
+			}
+			throw e;
 		}
-		
-		Path filePath = uploadDir.resolve(savedFilename);
-		Files.copy(file.getInputStream(), filePath);
-		
-		return uploadFile(savedFilename, originalFilename);
+
+		if (extraction != null && textSink == null) {
+			cacheInBackground(savedFilename, extraction, cacheEntry, sha256);
+		}
+		UploadFile uploadFile = register ? uploadFile(savedFilename, originalFilename, sha256,
+				sniffer.getContentType(), size.getSize(), new Timestamp(new Date().getTime())) : null;
+		if (extraction != null && textSink != null) {
+			boolean streamed = false;
+			try {
+				streamed = extraction.await();
+				if (streamed) {
+					cacheEntry.commit(sha256);
+				}
+			} catch (ExtractionLimitException | InterruptedIOException e) {
+				// the stored file would hit the same limit, or the time is already spent
+				streamed = true;
+				System.out.println("Error extracting text from " + originalFilename + ": " + e.getMessage());
+			} catch (IOException e) {
+				System.out.println("Streaming extraction failed for " + originalFilename
+						+ ", extracting from the stored file: " + e.getMessage());
+			} finally {
+				cacheEntry.abort();
+			}
+			if (!streamed) {
+				extractStoredText(savedFilename, originalFilename, sha256, textSink);
+			}
+		} else if (extraction == null && textSink != null) {
+			extractStoredText(savedFilename, originalFilename, sha256, textSink);
+		}
+		return new UploadReceipt(uploadFile, savedFilename, originalFilename, sha256,
+				sniffer.getContentType(), size.getSize());
+	}
+
+	private void extractStoredText(String fileName, String originalFilename, String sha256, TextSink sink) {
+		try {
+			extractText(fileName, sha256, sink, false);
+		} catch (IOException e) {
+			System.out.println("Error extracting text from " + originalFilename + ": " + e.getMessage());
+		}
+	}
+
+	private void cacheInBackground(String fileName, StreamingExtractionStage extraction,
+			ExtractedTextStore.Entry cacheEntry, String sha256) {
+		CompletableFuture<Void> cached = new CompletableFuture<>();
+		pendingExtractions.put(fileName, cached);
+		extraction.completion().whenComplete((streamed, error) -> {
+			try {
+				if (error == null && streamed) {
+					cacheEntry.commit(sha256);
+				} else if (error != null) {
+					System.out.println("Error extracting text from " + fileName + ": " + error.getMessage());
+				}
+			} catch (RuntimeException e) {
+				System.out.println("Could not cache text of " + fileName + ": " + e.getMessage());
+			} finally {
+				cacheEntry.abort();
+				pendingExtractions.remove(fileName);
+				cached.complete(null);
+			}
+		});
+		extraction.finishWriting();
 	}
 
 	public String extractTextFromFile(UploadFile uploadFile) {
+		StringBuilder text = new StringBuilder();
+		extractText(uploadFile, text::append);
+		return text.toString();
+	}
+
+	public boolean extractText(UploadFile uploadFile, TextSink sink) {
 		try {
-			Path filePath = Paths.get(uploadPath, uploadFile.getFileName());
-			String fileName = uploadFile.getFileName().toLowerCase();
-			
-			if (fileName.endsWith(".pdf")) {
-				return "PDF text extraction placeholder - " + uploadFile.getFileOriginalName();
-			} else if (fileName.endsWith(".doc") || fileName.endsWith(".docx")) {
-				return "DOC/DOCX text extraction placeholder - " + uploadFile.getFileOriginalName();
-			} else if (fileName.endsWith(".txt")) {
-				return new String(Files.readAllBytes(filePath));
+			String fileName = uploadFile.getFileName();
+			InputStreamSource content = () -> fileStorageService.open(fileName, uploadFile.getSha256());
+			String sha256 = uploadFile.getSha256() != null ? uploadFile.getSha256() : sha256(content);
+			extractText(fileName, sha256, content, sink, false);
+			return true;
+		} catch (IOException e) {
+			System.out.println("Error extracting text from " + uploadFile.getFileOriginalName() + ": " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Streams the text of a stored file whose hash is already known into the
+	 * sink, from the cache if possible. Extraction runs on the caller's thread
+	 * when asked to, for callers on a worker pool of their own.
+	 */
+	public void extractText(String fileName, String sha256, TextSink sink, boolean onCallerThread) throws IOException {
+		extractText(fileName, sha256, () -> fileStorageService.open(fileName, sha256), sink, onCallerThread);
+	}
+
+	private void extractText(String fileName, String sha256, InputStreamSource content, TextSink sink,
+			boolean onCallerThread) throws IOException {
+		awaitPendingExtraction(fileName);
+		if (extractedTextStore.read(sha256, sink)) {
+			return;
+		}
+		ExtractedTextStore.Entry cacheEntry = extractedTextStore.begin();
+		try {
+			TextSink tee = text -> {
+				sink.append(text);
+				cacheEntry.append(text);
+			};
+			if (onCallerThread) {
+				textExtractionService.extractOnCallerThread(content, fileName, tee);
 			} else {
-				return "Unsupported file format - " + uploadFile.getFileOriginalName();
+				textExtractionService.extract(content, fileName, tee);
+			}
+			cacheEntry.commit(sha256);
+		} finally {
+			cacheEntry.abort();
+		}
+	}
+
+	private void awaitPendingExtraction(String fileName) {
+		CompletableFuture<Void> pending = pendingExtractions.get(fileName);
+		if (pending == null) {
+			return;
+		}
+		try {
+			pending.get(extractionTimeoutSeconds, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException | TimeoutException e) {
+			// fall through to extracting from the stored file
+		}
+	}
+
+	private String sha256(InputStreamSource content) throws IOException {
+		DigestStage digest = new DigestStage();
+		try (InputStream input = content.getInputStream()) {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = input.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
 			}
-		} catch (IOException e) {
-			return "Error reading file - " + uploadFile.getFileOriginalName();
 		}
+		digest.finish();
+		return digest.getHex();
 	}
 
 }
@@ -1,9 +1,7 @@
 package com.spring.getready.services;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.io.InputStream;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Date;
@@ -39,45 +37,42 @@ public class UserService {
 	@Autowired
 	private FilePropertyConfig filePropertyConfig;
 
-	public boolean uploadUsers(String path) {
+	public boolean uploadUsers(InputStream input) {
 		boolean result = false;
 		Timestamp date = new Timestamp(new Date().getTime());
-		File file = new File(path);
-		if (file.exists()) {
-			try {
-				String users = new String(Files.readAllBytes(Paths.get(file.toURI())));
-				ObjectMapper objectMapper = new ObjectMapper();
-				List<UserTemplate> allUsersList = objectMapper.readValue(users,
-						new TypeReference<List<UserTemplate>>() {
-						});
-				List<UserDetail> newUsers = new ArrayList<UserDetail>();
-				for (int i = 0; i < allUsersList.size(); i++) {
-					UserTemplate user = allUsersList.get(i);
-					String password = passwordEncoder.encode(filePropertyConfig.getDefaultPassword()).toString();
-					UUID uuid = UUID.nameUUIDFromBytes(user.getEmail().getBytes("utf-8"));
-					Optional<UserGroup> userGroup = userGroupRepository.findById(user.getGroup());
-					if (userGroup.isPresent()) {
-						UserDetail newUser = new UserDetail();
-						newUser.setUsername(user.getUsername());
-						newUser.setPassword(password);
-						newUser.setEmail(user.getEmail());
-						newUser.setUserUuid(uuid.toString());
-						newUser.setCreatedOn(date);
-						newUser.setIsLocked(false);
-						newUser.setUserGroup(userGroup.get());
-						newUsers.add(newUser);
-					}
+		try {
+			String users = new String(input.readAllBytes());
+			ObjectMapper objectMapper = new ObjectMapper();
+			List<UserTemplate> allUsersList = objectMapper.readValue(users,
+					new TypeReference<List<UserTemplate>>() {
+					});
+			List<UserDetail> newUsers = new ArrayList<UserDetail>();
+			for (int i = 0; i < allUsersList.size(); i++) {
+				UserTemplate user = allUsersList.get(i);
+				String password = passwordEncoder.encode(filePropertyConfig.getDefaultPassword()).toString();
+				UUID uuid = UUID.nameUUIDFromBytes(user.getEmail().getBytes("utf-8"));
+				Optional<UserGroup> userGroup = userGroupRepository.findById(user.getGroup());
+				if (userGroup.isPresent()) {
+					UserDetail newUser = new UserDetail();
+					newUser.setUsername(user.getUsername());
+					newUser.setPassword(password);
+					newUser.setEmail(user.getEmail());
+					newUser.setUserUuid(uuid.toString());
+					newUser.setCreatedOn(date);
+					newUser.setIsLocked(false);
+					newUser.setUserGroup(userGroup.get());
+					newUsers.add(newUser);
 				}
-				if (newUsers.size() > 0) {
-					List<UserDetail> savedUsers = userDetailRepository.saveAll(newUsers);
-					if (savedUsers.size() > 0) {
-						result = true;
-					}
+			}
+			if (newUsers.size() > 0) {
+				List<UserDetail> savedUsers = userDetailRepository.saveAll(newUsers);
+				if (savedUsers.size() > 0) {
+					result = true;
 				}
-			} catch (IOException e) {
-				System.out.println("IOException occurs");
-				e.printStackTrace();
 			}
+		} catch (IOException e) {
+			System.out.println("IOException occurs");
+			e.printStackTrace();
 		}
 		return result;
 	}
@@ -0,0 +1,118 @@
+package com.spring.getready.services.extraction;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded hand-off of upload buffers to an extraction worker. Unlike a piped
+ * stream, the writer never blocks indefinitely: {@link #offer} gives up after
+ * a timeout so that a busy extraction pool cannot stall the upload.
+ */
+class ChunkPipe extends InputStream {
+
+	private static final long POLL_MILLIS = 100;
+
+	private final BlockingQueue<byte[]> chunks;
+
+	private volatile boolean writerDone;
+
+	private volatile boolean writerAborted;
+
+	private volatile boolean readerClosed;
+
+	private byte[] current;
+
+	private int position;
+
+	// written and read by the reader only
+	private long waitNanos;
+
+	ChunkPipe(int capacity) {
+		this.chunks = new ArrayBlockingQueue<>(capacity);
+	}
+
+	boolean offer(byte[] buffer, int offset, int length, long timeoutNanos) throws InterruptedException {
+		if (readerClosed) {
+			return false;
+		}
+		return chunks.offer(Arrays.copyOfRange(buffer, offset, offset + length), timeoutNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Time the reader has spent waiting for the upload, which is not the
+	 * extractor's to account for.
+	 */
+	long getWaitNanos() {
+		return waitNanos;
+	}
+
+	boolean isReaderClosed() {
+		return readerClosed;
+	}
+
+	void finishWriting() {
+		writerDone = true;
+	}
+
+	void abortWriting() {
+		writerAborted = true;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!fill()) {
+			return -1;
+		}
+		return current[position++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!fill()) {
+			return -1;
+		}
+		int count = Math.min(len, current.length - position);
+		System.arraycopy(current, position, b, off, count);
+		position += count;
+		return count;
+	}
+
+	@Override
+	public void close() {
+		readerClosed = true;
+		chunks.clear();
+	}
+
+	private boolean fill() throws IOException {
+		while (current == null || position == current.length) {
+			long start = System.nanoTime();
+			try {
+				current = chunks.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Text extraction cancelled");
+			} finally {
+				waitNanos += System.nanoTime() - start;
+			}
+			position = 0;
+			if (current == null) {
+				if (writerAborted) {
+					throw new IOException("Upload aborted");
+				}
+				if (writerDone && chunks.isEmpty()) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,83 @@
+package com.spring.getready.services.extraction;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Lightweight text recovery for legacy Word 97-2003 files. Instead of parsing
+ * the OLE2 container, the bytes are scanned for runs of printable characters
+ * stored either as 8-bit text or as UTF-16LE, which is how Word keeps the
+ * document body. Short runs are treated as binary noise and dropped.
+ */
+@Component
+public class DocTextExtractor implements TextExtractor {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private static final int MIN_RUN_LENGTH = 4;
+
+	private static final int MAX_RUN_LENGTH = 4096;
+
+	@Override
+	public boolean supports(String fileName) {
+		return fileName.endsWith(".doc");
+	}
+
+	@Override
+	public void extract(InputStream input, TextSink sink, ExtractionLimits limits) throws IOException {
+		StringBuilder narrowRun = new StringBuilder();
+		StringBuilder wideRun = new StringBuilder();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		long position = 0;
+		int low = 0;
+		int read;
+		while ((read = input.read(buffer)) != -1) {
+			limits.checkpoint();
+			for (int i = 0; i < read; i++, position++) {
+				int b = buffer[i] & 0xFF;
+
+				if (isText(b)) {
+					narrowRun.append(toChar(b));
+					if (narrowRun.length() >= MAX_RUN_LENGTH) {
+						flush(narrowRun, sink);
+					}
+				} else {
+					flush(narrowRun, sink);
+				}
+
+				// UTF-16LE code units start at even offsets; ASCII range only has a zero high byte
+				if ((position & 1) == 0) {
+					low = b;
+				} else if (b == 0 && isText(low)) {
+					wideRun.append(toChar(low));
+					if (wideRun.length() >= MAX_RUN_LENGTH) {
+						flush(wideRun, sink);
+					}
+				} else {
+					flush(wideRun, sink);
+				}
+			}
+		}
+		flush(narrowRun, sink);
+		flush(wideRun, sink);
+	}
+
+	private static boolean isText(int b) {
+		return (b >= 0x20 && b < 0x7F) || b == '\t' || b == '\r' || b == '\n';
+	}
+
+	private static char toChar(int b) {
+		// Word uses a carriage return as its paragraph mark
+		return b == '\r' ? '\n' : (char) b;
+	}
+
+	private static void flush(StringBuilder run, TextSink sink) {
+		if (run.length() >= MIN_RUN_LENGTH) {
+			sink.append(run.append(' ').toString());
+		}
+		run.setLength(0);
+	}
+
+}
@@ -0,0 +1,103 @@
+package com.spring.getready.services.extraction;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Streams word/document.xml out of a DOCX container through a StAX reader and
+ * emits each text run as it is parsed. No DOM is built and the archive is read
+ * sequentially, so memory use does not depend on the document size.
+ */
+@Component
+public class DocxTextExtractor implements TextExtractor {
+
+	private static final String DOCUMENT_ENTRY = "word/document.xml";
+
+	// Factories are not guaranteed to be thread-safe, so each pool thread keeps its own
+	private final ThreadLocal<XMLInputFactory> xmlInputFactory = ThreadLocal.withInitial(() -> {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+		return factory;
+	});
+
+	@Override
+	public boolean supports(String fileName) {
+		return fileName.endsWith(".docx");
+	}
+
+	@Override
+	public void extract(InputStream input, TextSink sink, ExtractionLimits limits) throws IOException {
+		ZipInputStream zip = new ZipInputStream(input);
+		ZipEntry entry;
+		while ((entry = zip.getNextEntry()) != null) {
+			limits.checkpoint();
+			if (DOCUMENT_ENTRY.equals(entry.getName())) {
+				streamDocument(limits.limitInflated(zip), sink, limits);
+				return;
+			}
+		}
+		throw new IOException("Not a Word document: " + DOCUMENT_ENTRY + " is missing");
+	}
+
+	private void streamDocument(InputStream xml, TextSink sink, ExtractionLimits limits) throws IOException {
+		XMLStreamReader reader = null;
+		try {
+			reader = xmlInputFactory.get().createXMLStreamReader(xml);
+			boolean inText = false;
+			while (reader.hasNext()) {
+				switch (reader.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					String start = reader.getLocalName();
+					if ("t".equals(start)) {
+						inText = true;
+					} else if ("tab".equals(start)) {
+						sink.append("\t");
+					} else if ("br".equals(start) || "cr".equals(start)) {
+						sink.append("\n");
+					}
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+					if (inText) {
+						limits.checkpoint();
+						sink.append(reader.getText());
+					}
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					String end = reader.getLocalName();
+					if ("t".equals(end)) {
+						inText = false;
+					} else if ("p".equals(end)) {
+						limits.checkpoint();
+						sink.append("\n");
+					}
+					break;
+				default:
+					break;
+				}
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException("Malformed Word document: " + e.getMessage(), e);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (XMLStreamException e) {
+					// the underlying zip stream is closed by the caller
+				}
+			}
+		}
+	}
+
+}
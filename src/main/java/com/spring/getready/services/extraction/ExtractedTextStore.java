@@ -0,0 +1,286 @@
+package com.spring.getready.services.extraction;
+
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sidecar store of extracted resume text, gzip-compressed and keyed by the
+ * SHA-256 of the source file. The gzip trailer (CRC-32 and length) is checked
+ * before any text is handed out; corrupt entries are dropped and treated as a
+ * miss. The total size is capped and the least recently read entries are
+ * evicted first.
+ */
+@Component
+public class ExtractedTextStore {
+
+	private static final String SUFFIX = ".txt.gz";
+
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private static final int BUFFER_SIZE = 8192;
+
+	@Value("${extraction.cache-path:${file.upload-path}/text-cache}")
+	private String cachePath;
+
+	@Value("${extraction.cache-max-mb:256}")
+	private long maxSizeMb;
+
+	private Path directory;
+
+	// access-ordered, so iteration starts with the least recently used entry
+	private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	private long totalBytes;
+
+	@PostConstruct
+	public void init() throws IOException {
+		directory = Paths.get(cachePath);
+		Files.createDirectories(directory);
+		List<Path> files;
+		try (Stream<Path> listing = Files.list(directory)) {
+			files = listing.collect(Collectors.toList());
+		}
+		for (Path file : files) {
+			if (file.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+				Files.deleteIfExists(file);
+			}
+		}
+		// the modification time is refreshed on every read, so it restores the LRU order after a restart
+		files.stream().filter(file -> file.getFileName().toString().endsWith(SUFFIX))
+				.sorted(Comparator.comparing(ExtractedTextStore::lastModified)).forEach(file -> {
+					String name = file.getFileName().toString();
+					register(name.substring(0, name.length() - SUFFIX.length()), size(file));
+				});
+		synchronized (this) {
+			evict();
+		}
+		System.out.println("Extracted text cache: " + entries.size() + " entries, " + totalBytes + " bytes");
+	}
+
+	/**
+	 * Streams the cached text for the given hash into the sink.
+	 *
+	 * @return false if there is no valid entry for the hash
+	 */
+	public boolean read(String sha256, TextSink sink) throws IOException {
+		synchronized (this) {
+			if (entries.get(sha256) == null) {
+				return false;
+			}
+		}
+		Path file = resolve(sha256);
+		try {
+			verify(file);
+			try (Reader reader = openReader(file)) {
+				char[] buffer = new char[BUFFER_SIZE];
+				int read;
+				while ((read = reader.read(buffer)) != -1) {
+					sink.append(new String(buffer, 0, read));
+				}
+			}
+		} catch (NoSuchFileException | ZipException | EOFException e) {
+			System.out.println("Discarding extracted text cache entry " + sha256 + ": " + e.getMessage());
+			remove(sha256);
+			return false;
+		}
+		try {
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException e) {
+			// recency is only a hint for the next restart
+		}
+		return true;
+	}
+
+	/**
+	 * Starts writing an entry. The key may not be known until the source file
+	 * has been read completely; the text becomes visible to readers only after
+	 * {@link Entry#commit(String)}.
+	 */
+	public Entry begin() throws IOException {
+		Path temp = directory.resolve(UUID.randomUUID() + TEMP_SUFFIX);
+		Writer writer = new OutputStreamWriter(
+				new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)), BUFFER_SIZE),
+				StandardCharsets.UTF_8);
+		return new Entry(temp, writer);
+	}
+
+	public synchronized void remove(String sha256) {
+		Long size = entries.remove(sha256);
+		if (size != null) {
+			totalBytes -= size;
+		}
+		try {
+			Files.deleteIfExists(resolve(sha256));
+		} catch (IOException e) {
+			System.out.println("Could not delete extracted text cache entry " + sha256 + ": " + e.getMessage());
+		}
+	}
+
+	private void verify(Path file) throws IOException {
+		// GZIPInputStream checks the CRC-32 and length trailer once the end of the stream is reached
+		try (InputStream input = new GZIPInputStream(Files.newInputStream(file), BUFFER_SIZE)) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			while (input.read(buffer) != -1) {
+				// discard
+			}
+		}
+	}
+
+	private Reader openReader(Path file) throws IOException {
+		return new InputStreamReader(new GZIPInputStream(Files.newInputStream(file), BUFFER_SIZE),
+				StandardCharsets.UTF_8);
+	}
+
+	private Path resolve(String sha256) {
+		return directory.resolve(sha256 + SUFFIX);
+	}
+
+	private synchronized void register(String sha256, long size) {
+		Long previous = entries.put(sha256, size);
+		if (previous != null) {
+			totalBytes -= previous;
+		}
+		totalBytes += size;
+	}
+
+	private void evict() {
+		long maxBytes = maxSizeMb * 1024 * 1024;
+		Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+		while (totalBytes > maxBytes && eldest.hasNext()) {
+			Map.Entry<String, Long> entry = eldest.next();
+			eldest.remove();
+			totalBytes -= entry.getValue();
+			try {
+				Files.deleteIfExists(resolve(entry.getKey()));
+			} catch (IOException e) {
+				System.out.println("Could not evict extracted text cache entry " + entry.getKey());
+			}
+		}
+	}
+
+	private static FileTime lastModified(Path file) {
+		try {
+			return Files.getLastModifiedTime(file);
+		} catch (IOException e) {
+			return FileTime.fromMillis(0);
+		}
+	}
+
+	private static long size(Path file) {
+		try {
+			return Files.size(file);
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * A cache entry being written. Write failures are remembered rather than
+	 * thrown so that extraction is never interrupted by the cache.
+	 */
+	public class Entry implements TextSink {
+
+		private final Path temp;
+
+		private final Writer writer;
+
+		private boolean failed;
+
+		private boolean closed;
+
+		private Entry(Path temp, Writer writer) {
+			this.temp = temp;
+			this.writer = writer;
+		}
+
+		@Override
+		public synchronized void append(CharSequence text) {
+			if (closed || failed) {
+				return;
+			}
+			try {
+				writer.append(text);
+			} catch (IOException e) {
+				failed = true;
+			}
+		}
+
+		public synchronized void commit(String sha256) {
+			if (closed) {
+				return;
+			}
+			close();
+			if (failed) {
+				deleteTemp();
+				return;
+			}
+			try {
+				Path target = resolve(sha256);
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				synchronized (ExtractedTextStore.this) {
+					register(sha256, size(target));
+					evict();
+				}
+			} catch (IOException e) {
+				System.out.println("Could not store extracted text for " + sha256 + ": " + e.getMessage());
+				deleteTemp();
+			}
+		}
+
+		public synchronized void abort() {
+			if (closed) {
+				return;
+			}
+			close();
+			deleteTemp();
+		}
+
+		private void close() {
+			closed = true;
+			try {
+				writer.close();
+			} catch (IOException e) {
+				failed = true;
+			}
+		}
+
+		private void deleteTemp() {
+			try {
+				Files.deleteIfExists(temp);
+			} catch (IOException e) {
+				// stale temp files are removed on the next start
+			}
+		}
+
+	}
+
+}
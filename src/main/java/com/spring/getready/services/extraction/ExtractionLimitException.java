@@ -0,0 +1,24 @@
+package com.spring.getready.services.extraction;
+
+import java.io.IOException;
+
+public class ExtractionLimitException extends IOException {
+
+	private static final long serialVersionUID = 4127715902441218761L;
+
+	public enum Limit {
+		WALL_CLOCK, CPU_TIME, BYTES_READ, INFLATED_BYTES, INFLATE_RATIO
+	}
+
+	private final Limit limit;
+
+	public ExtractionLimitException(Limit limit, String message) {
+		super(message);
+		this.limit = limit;
+	}
+
+	public Limit getLimit() {
+		return limit;
+	}
+
+}
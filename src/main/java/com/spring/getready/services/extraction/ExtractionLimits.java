@@ -0,0 +1,166 @@
+package com.spring.getready.services.extraction;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import com.spring.getready.services.extraction.ExtractionLimitException.Limit;
+
+/**
+ * Per-document budget checked by the extractors between pages and text runs.
+ * Instances belong to a single extraction task and must be created on the
+ * thread that runs it, since CPU time is measured for the current thread.
+ */
+public class ExtractionLimits {
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	// Small containers legitimately inflate by a large factor, so ratios are measured against at least this much input
+	private static final long MIN_RATIO_BASE = 64 * 1024;
+
+	private final int maxPages;
+
+	private final long deadline;
+
+	private final long cpuTimeLimit;
+
+	private final long cpuTimeStart;
+
+	private final long maxBytes;
+
+	private final long maxInflatedBytes;
+
+	private final int maxInflateRatio;
+
+	private long bytesRead;
+
+	private long inflatedBytes;
+
+	private LongSupplier excludedNanos = () -> 0;
+
+	public ExtractionLimits(int maxPages, long timeoutSeconds, long cpuTimeSeconds, long maxBytes,
+			long maxInflatedBytes, int maxInflateRatio) {
+		this.maxPages = maxPages;
+		this.deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+		this.cpuTimeLimit = TimeUnit.SECONDS.toNanos(cpuTimeSeconds);
+		this.cpuTimeStart = currentThreadCpuTime();
+		this.maxBytes = maxBytes;
+		this.maxInflatedBytes = maxInflatedBytes;
+		this.maxInflateRatio = maxInflateRatio;
+	}
+
+	public int getMaxPages() {
+		return maxPages;
+	}
+
+	/**
+	 * Leaves the time the supplier reports, such as waiting for an upload to
+	 * arrive, out of the wall-clock limit.
+	 */
+	public void excludeTime(LongSupplier nanos) {
+		this.excludedNanos = nanos;
+	}
+
+	public void checkpoint() throws InterruptedIOException, ExtractionLimitException {
+		if (Thread.currentThread().isInterrupted()) {
+			throw new InterruptedIOException("Text extraction cancelled");
+		}
+		if (System.nanoTime() - excludedNanos.getAsLong() - deadline > 0) {
+			throw new ExtractionLimitException(Limit.WALL_CLOCK, "Text extraction time limit exceeded");
+		}
+		if (cpuTimeStart >= 0 && currentThreadCpuTime() - cpuTimeStart > cpuTimeLimit) {
+			throw new ExtractionLimitException(Limit.CPU_TIME, "Text extraction CPU time limit exceeded");
+		}
+	}
+
+	/**
+	 * Wraps the raw document stream so that reading past the byte cap fails.
+	 */
+	public InputStream limitRead(InputStream input) {
+		return new FilterInputStream(input) {
+
+			@Override
+			public int read() throws IOException {
+				int b = super.read();
+				if (b != -1) {
+					countRead(1);
+				}
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int read = super.read(b, off, len);
+				if (read > 0) {
+					countRead(read);
+				}
+				return read;
+			}
+
+		};
+	}
+
+	/**
+	 * Wraps a decompressed stream read out of a container, failing once the
+	 * output grows past the inflated-size cap or too far beyond the input
+	 * consumed so far. Entry headers are not trusted, since zip bombs lie about
+	 * their sizes.
+	 */
+	public InputStream limitInflated(InputStream input) {
+		return new FilterInputStream(input) {
+
+			@Override
+			public int read() throws IOException {
+				int b = super.read();
+				if (b != -1) {
+					countInflated(1);
+				}
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int read = super.read(b, off, len);
+				if (read > 0) {
+					countInflated(read);
+				}
+				return read;
+			}
+
+			@Override
+			public void close() {
+				// the container stream is owned by the extractor
+			}
+
+		};
+	}
+
+	private void countRead(int count) throws ExtractionLimitException {
+		bytesRead += count;
+		if (bytesRead > maxBytes) {
+			throw new ExtractionLimitException(Limit.BYTES_READ, "Document exceeds " + maxBytes + " bytes");
+		}
+	}
+
+	private void countInflated(int count) throws ExtractionLimitException {
+		inflatedBytes += count;
+		if (inflatedBytes > maxInflatedBytes) {
+			throw new ExtractionLimitException(Limit.INFLATED_BYTES,
+					"Document inflates beyond " + maxInflatedBytes + " bytes");
+		}
+		if (inflatedBytes / Math.max(bytesRead, MIN_RATIO_BASE) > maxInflateRatio) {
+			throw new ExtractionLimitException(Limit.INFLATE_RATIO,
+					"Document inflate ratio exceeds " + maxInflateRatio + ":1");
+		}
+	}
+
+	private static long currentThreadCpuTime() {
+		return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : -1;
+	}
+
+}
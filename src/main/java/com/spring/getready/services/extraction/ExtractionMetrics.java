@@ -0,0 +1,71 @@
+package com.spring.getready.services.extraction;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import com.spring.getready.services.extraction.ExtractionLimitException.Limit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Extraction pool counters. They are always maintained; they are published
+ * only where a meter registry exists (metrics are disabled in the prod profile).
+ */
+@Component
+public class ExtractionMetrics implements MeterBinder {
+
+	@Autowired
+	@Qualifier("extractionExecutor")
+	private ThreadPoolTaskExecutor extractionExecutor;
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	private final AtomicLong wallClockTimeouts = new AtomicLong();
+
+	private final AtomicLong cpuTimeouts = new AtomicLong();
+
+	private final AtomicLong sizeLimitsExceeded = new AtomicLong();
+
+	public void recordRejected() {
+		rejected.incrementAndGet();
+	}
+
+	public void recordWallClockTimeout() {
+		wallClockTimeouts.incrementAndGet();
+	}
+
+	public void recordLimitExceeded(Limit limit) {
+		if (limit == Limit.WALL_CLOCK) {
+			wallClockTimeouts.incrementAndGet();
+		} else if (limit == Limit.CPU_TIME) {
+			cpuTimeouts.incrementAndGet();
+		} else {
+			sizeLimitsExceeded.incrementAndGet();
+		}
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		Gauge.builder("ats.extraction.queue.depth", extractionExecutor,
+				executor -> executor.getThreadPoolExecutor().getQueue().size())
+				.description("Documents waiting for an extraction worker").register(registry);
+		Gauge.builder("ats.extraction.active", extractionExecutor, ThreadPoolTaskExecutor::getActiveCount)
+				.description("Documents currently being extracted").register(registry);
+		FunctionCounter.builder("ats.extraction.rejected", rejected, AtomicLong::get)
+				.description("Extractions rejected because the pool queue was full").register(registry);
+		FunctionCounter.builder("ats.extraction.timeouts", wallClockTimeouts, AtomicLong::get).tag("clock", "wall")
+				.description("Extractions stopped by the wall-clock limit").register(registry);
+		FunctionCounter.builder("ats.extraction.timeouts", cpuTimeouts, AtomicLong::get).tag("clock", "cpu")
+				.description("Extractions stopped by the CPU time limit").register(registry);
+		FunctionCounter.builder("ats.extraction.limit.exceeded", sizeLimitsExceeded, AtomicLong::get)
+				.description("Extractions stopped by the byte or inflate-ratio guards").register(registry);
+	}
+
+}
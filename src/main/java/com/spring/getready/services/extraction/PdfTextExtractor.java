@@ -0,0 +1,49 @@
+package com.spring.getready.services.extraction;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Extracts the text of a PDF page by page, so the scorer gets each page as it
+ * is stripped. The document itself is not streamed: PDFBox reads the whole
+ * file into its scratch buffer before the first page can be stripped. That
+ * buffer is capped at {@code extraction.pdf.max-main-memory-mb} of heap and
+ * spills the rest to a temporary file, whose size is bounded by
+ * {@code extraction.max-bytes-mb} through the limited input.
+ */
+@Component
+public class PdfTextExtractor implements TextExtractor {
+
+	@Value("${extraction.pdf.max-main-memory-mb:16}")
+	private long maxMainMemoryMb;
+
+	@Override
+	public boolean supports(String fileName) {
+		return fileName.endsWith(".pdf");
+	}
+
+	@Override
+	public void extract(InputStream input, TextSink sink, ExtractionLimits limits) throws IOException {
+		// the whole document is loaded, but anything beyond the in-memory budget spills to a scratch file
+		MemoryUsageSetting memoryUsage = MemoryUsageSetting.setupMixed(maxMainMemoryMb * 1024 * 1024);
+		try (PDDocument document = PDDocument.load(input, memoryUsage)) {
+			int pageCount = Math.min(document.getNumberOfPages(), limits.getMaxPages());
+			PDFTextStripper stripper = new PDFTextStripper();
+			Writer writer = new TextSinkWriter(sink, limits);
+			for (int page = 1; page <= pageCount; page++) {
+				limits.checkpoint();
+				stripper.setStartPage(page);
+				stripper.setEndPage(page);
+				stripper.writeText(document, writer);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,32 @@
+package com.spring.getready.services.extraction;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.stereotype.Component;
+
+@Component
+public class PlainTextExtractor implements TextExtractor {
+
+	private static final int BUFFER_SIZE = 4096;
+
+	@Override
+	public boolean supports(String fileName) {
+		return fileName.endsWith(".txt");
+	}
+
+	@Override
+	public void extract(InputStream input, TextSink sink, ExtractionLimits limits) throws IOException {
+		Reader reader = new InputStreamReader(input, StandardCharsets.UTF_8);
+		char[] buffer = new char[BUFFER_SIZE];
+		int read;
+		while ((read = reader.read(buffer)) != -1) {
+			limits.checkpoint();
+			sink.append(new String(buffer, 0, read));
+		}
+	}
+
+}
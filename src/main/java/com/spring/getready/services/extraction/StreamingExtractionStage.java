@@ -0,0 +1,118 @@
+package com.spring.getready.services.extraction;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.spring.getready.services.upload.UploadStage;
+
+/**
+ * Upload stage that feeds the bytes to an extractor running on the extraction
+ * pool while the file is being written. If no worker keeps up with the upload
+ * the stage detaches, and the caller extracts from the stored file instead.
+ * The upload waits at most 250 ms for any one buffer and two seconds in all.
+ */
+public class StreamingExtractionStage implements UploadStage {
+
+	private static final long OFFER_TIMEOUT_MILLIS = 250;
+
+	private static final long MAX_BLOCKED_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+	private final TextExtractionService extractionService;
+
+	private final String fileName;
+
+	private final ChunkPipe pipe;
+
+	private final CompletableFuture<Boolean> completion = new CompletableFuture<>();
+
+	private Future<Void> task;
+
+	private boolean detached;
+
+	private long blockedNanos;
+
+	StreamingExtractionStage(TextExtractionService extractionService, String fileName, ChunkPipe pipe) {
+		this.extractionService = extractionService;
+		this.fileName = fileName;
+		this.pipe = pipe;
+	}
+
+	void start(Future<Void> task) {
+		this.task = task;
+	}
+
+	void finished(Throwable error) {
+		if (error == null) {
+			completion.complete(true);
+		} else {
+			completion.completeExceptionally(error);
+		}
+	}
+
+	@Override
+	public void update(byte[] buffer, int offset, int length) {
+		// once the extractor has stopped reading, its outcome is reported by await()
+		if (detached || pipe.isReaderClosed()) {
+			return;
+		}
+		long start = System.nanoTime();
+		try {
+			long timeout = Math.min(TimeUnit.MILLISECONDS.toNanos(OFFER_TIMEOUT_MILLIS), MAX_BLOCKED_NANOS - blockedNanos);
+			boolean offered = pipe.offer(buffer, offset, length, timeout);
+			blockedNanos += System.nanoTime() - start;
+			if ((!offered || blockedNanos >= MAX_BLOCKED_NANOS) && !pipe.isReaderClosed()) {
+				detach();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			detach();
+		}
+	}
+
+	/**
+	 * Waits for the extractor to consume the rest of the upload.
+	 *
+	 * @return false if the stage detached and the text still has to be
+	 *         extracted from the stored file
+	 */
+	public boolean await() throws IOException {
+		if (detached) {
+			return false;
+		}
+		finishWriting();
+		extractionService.await(task, fileName);
+		return true;
+	}
+
+	/**
+	 * Completes with true once the extractor has consumed the upload, with false
+	 * if the stage detached, or exceptionally if extraction failed. Unlike
+	 * {@link #await()} this does not block, for callers that let extraction
+	 * finish in the background.
+	 */
+	public CompletableFuture<Boolean> completion() {
+		return completion;
+	}
+
+	/**
+	 * Marks the end of the upload without waiting for the extractor.
+	 */
+	public void finishWriting() {
+		pipe.finishWriting();
+	}
+
+	public void abort() {
+		completion.complete(false);
+		pipe.abortWriting();
+		task.cancel(true);
+	}
+
+	private void detach() {
+		System.out.println("Streaming extraction fell behind for " + fileName + ", extracting after upload");
+		detached = true;
+		abort();
+	}
+
+}
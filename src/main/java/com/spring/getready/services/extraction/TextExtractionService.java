@@ -0,0 +1,180 @@
+package com.spring.getready.services.extraction;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+/**
+ * Runs resume text extraction on the shared extraction pool so that parsing
+ * never happens on a request thread, and streams the text into a sink.
+ */
+@Service
+public class TextExtractionService {
+
+	// buffers of up to 8 KB each, so at most 128 KB of an upload waits for the extractor
+	private static final int PIPE_CAPACITY = 16;
+
+	@Autowired
+	private List<TextExtractor> extractors;
+
+	@Autowired
+	@Qualifier("extractionExecutor")
+	private ThreadPoolTaskExecutor extractionExecutor;
+
+	@Value("${extraction.max-pages:30}")
+	private int maxPages;
+
+	@Value("${extraction.timeout-seconds:20}")
+	private long timeoutSeconds;
+
+	@Value("${extraction.cpu-time-seconds:10}")
+	private long cpuTimeSeconds;
+
+	@Value("${extraction.max-bytes-mb:20}")
+	private long maxBytesMb;
+
+	@Value("${extraction.max-inflated-mb:50}")
+	private long maxInflatedMb;
+
+	@Value("${extraction.max-inflate-ratio:100}")
+	private int maxInflateRatio;
+
+	@Autowired
+	private ExtractionMetrics extractionMetrics;
+
+	public boolean isSupported(String fileName) {
+		return findExtractor(fileName) != null;
+	}
+
+	public void extract(InputStreamSource file, String fileName, TextSink sink) throws IOException {
+		TextExtractor extractor = findExtractor(fileName);
+		if (extractor == null) {
+			System.out.println("No text extractor available for " + fileName);
+			return;
+		}
+
+		Future<Void> task;
+		try {
+			task = extractionExecutor.submit(() -> {
+				extract(extractor, file, sink);
+				return null;
+			});
+		} catch (TaskRejectedException e) {
+			extractionMetrics.recordRejected();
+			throw new IOException("Text extraction pool is saturated", e);
+		}
+		await(task, fileName);
+	}
+
+	/**
+	 * Extracts on the calling thread, under the same limits. Only for callers
+	 * that already run on a dedicated worker pool of their own.
+	 */
+	public void extractOnCallerThread(InputStreamSource file, String fileName, TextSink sink) throws IOException {
+		TextExtractor extractor = findExtractor(fileName);
+		if (extractor == null) {
+			System.out.println("No text extractor available for " + fileName);
+			return;
+		}
+		extract(extractor, file, sink);
+	}
+
+	private void extract(TextExtractor extractor, InputStreamSource file, TextSink sink) throws IOException {
+		ExtractionLimits limits = newLimits();
+		try (InputStream input = new BufferedInputStream(limits.limitRead(file.getInputStream()))) {
+			extractor.extract(input, sink, limits);
+		} catch (ExtractionLimitException e) {
+			extractionMetrics.recordLimitExceeded(e.getLimit());
+			throw e;
+		}
+	}
+
+	/**
+	 * Starts extracting from an upload that is still being written. The
+	 * returned stage receives the bytes from the upload pipeline.
+	 *
+	 * @return null if the file type has no extractor
+	 */
+	public StreamingExtractionStage openStream(String fileName, TextSink sink) throws IOException {
+		TextExtractor extractor = findExtractor(fileName);
+		if (extractor == null) {
+			return null;
+		}
+		ChunkPipe pipe = new ChunkPipe(PIPE_CAPACITY);
+		StreamingExtractionStage stage = new StreamingExtractionStage(this, fileName, pipe);
+		try {
+			stage.start(extractionExecutor.submit(() -> {
+				ExtractionLimits limits = newLimits();
+				// a slow upload is not the extractor's time
+				limits.excludeTime(pipe::getWaitNanos);
+				try (InputStream input = limits.limitRead(pipe)) {
+					extractor.extract(input, sink, limits);
+					stage.finished(null);
+				} catch (IOException | RuntimeException e) {
+					if (e instanceof ExtractionLimitException) {
+						extractionMetrics.recordLimitExceeded(((ExtractionLimitException) e).getLimit());
+					}
+					stage.finished(e);
+					throw e;
+				} finally {
+					// unblocks the upload if the extractor stopped before the end of the file
+					pipe.close();
+				}
+				return null;
+			}));
+		} catch (TaskRejectedException e) {
+			extractionMetrics.recordRejected();
+			throw new IOException("Text extraction pool is saturated", e);
+		}
+		return stage;
+	}
+
+	void await(Future<Void> task, String fileName) throws IOException {
+		try {
+			task.get(timeoutSeconds, TimeUnit.SECONDS);
+		} catch (TimeoutException e) {
+			task.cancel(true);
+			extractionMetrics.recordWallClockTimeout();
+			throw new InterruptedIOException("Text extraction timed out for " + fileName);
+		} catch (InterruptedException e) {
+			task.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while extracting text from " + fileName);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Text extraction failed for " + fileName, e.getCause());
+		}
+	}
+
+	private ExtractionLimits newLimits() {
+		return new ExtractionLimits(maxPages, timeoutSeconds, cpuTimeSeconds, maxBytesMb * 1024 * 1024,
+				maxInflatedMb * 1024 * 1024, maxInflateRatio);
+	}
+
+	private TextExtractor findExtractor(String fileName) {
+		String name = fileName.toLowerCase();
+		for (TextExtractor extractor : extractors) {
+			if (extractor.supports(name)) {
+				return extractor;
+			}
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,12 @@
+package com.spring.getready.services.extraction;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface TextExtractor {
+
+	boolean supports(String fileName);
+
+	void extract(InputStream input, TextSink sink, ExtractionLimits limits) throws IOException;
+
+}
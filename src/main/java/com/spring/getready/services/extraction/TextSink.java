@@ -0,0 +1,11 @@
+package com.spring.getready.services.extraction;
+
+/**
+ * Receives extracted text incrementally, one run of characters at a time.
+ */
+@FunctionalInterface
+public interface TextSink {
+
+	void append(CharSequence text);
+
+}
@@ -0,0 +1,45 @@
+package com.spring.getready.services.extraction;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Adapts a {@link TextSink} to the {@link Writer} API used by text strippers,
+ * checking the extraction budget on every write.
+ */
+public class TextSinkWriter extends Writer {
+
+	private final TextSink sink;
+
+	private final ExtractionLimits limits;
+
+	public TextSinkWriter(TextSink sink, ExtractionLimits limits) {
+		this.sink = sink;
+		this.limits = limits;
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		limits.checkpoint();
+		if (len > 0) {
+			sink.append(new String(cbuf, off, len));
+		}
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		limits.checkpoint();
+		if (len > 0) {
+			sink.append(str.substring(off, off + len));
+		}
+	}
+
+	@Override
+	public void flush() {
+	}
+
+	@Override
+	public void close() {
+	}
+
+}
@@ -0,0 +1,51 @@
+package com.spring.getready.services.image;
+
+/**
+ * The square renditions kept of an uploaded image, each a JPEG of a fixed
+ * size.
+ */
+public enum ImageVariant {
+
+	// avatars in lists and headers
+	THUMBNAIL("thumb", 96),
+
+	// the profile page, at twice its displayed size for dense screens
+	MEDIUM("medium", 256);
+
+	private final String name;
+
+	private final int size;
+
+	ImageVariant(String name, int size) {
+		this.name = name;
+		this.size = size;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * What the rendition is stored as next to the original's blob.
+	 */
+	public String getSuffix() {
+		return name + ".jpg";
+	}
+
+	/**
+	 * The variant of the given name, or null if there is none.
+	 */
+	public static ImageVariant forName(String name) {
+		for (ImageVariant variant : values()) {
+			if (variant.name.equalsIgnoreCase(name)) {
+				return variant;
+			}
+		}
+		return null;
+	}
+
+}
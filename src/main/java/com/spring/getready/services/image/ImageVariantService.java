@@ -0,0 +1,307 @@
+package com.spring.getready.services.image;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import com.spring.getready.model.UploadFile;
+import com.spring.getready.services.storage.FileStorageService;
+import com.spring.getready.services.storage.StoredBlob;
+
+/**
+ * Renders the {@link ImageVariant}s of uploaded images with ImageIO, on a
+ * background pool, and stores each as a blob next to the original so pages
+ * showing avatars fetch a few kilobytes instead of the camera original.
+ * <p>
+ * Large originals are subsampled while they are decoded, so a 12 megapixel
+ * photo never occupies memory at full size, then center-cropped to a square
+ * and halved step by step down to each size. The EXIF orientation of JPEGs
+ * is applied, since browsers apply it to the original. Uploads stored before
+ * content addressing get no variants.
+ */
+@Service
+public class ImageVariantService {
+
+	private static final int EXIF_ORIENTATION = 0x0112;
+
+	@Autowired
+	private FileStorageService fileStorageService;
+
+	@Autowired
+	@Qualifier("imageExecutor")
+	private ThreadPoolTaskExecutor imageExecutor;
+
+	// decoding is refused beyond this, whatever the file size
+	@Value("${image.max-pixels:50000000}")
+	private long maxPixels;
+
+	@Value("${image.jpeg-quality:0.85}")
+	private float jpegQuality;
+
+	private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+	// images that could not be decoded are not tried again until a restart
+	private final Set<String> failed = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The stored variant of an image upload, or null if it has not been
+	 * generated.
+	 */
+	public StoredBlob locate(UploadFile uploadFile, ImageVariant variant) throws IOException {
+		if (uploadFile.getSha256() == null) {
+			return null;
+		}
+		return fileStorageService.locateVariant(uploadFile.getSha256(), variant.getSuffix());
+	}
+
+	/**
+	 * Queues the variants of an image upload for generation, unless they are
+	 * already queued or the image cannot have any.
+	 */
+	public void generateInBackground(UploadFile uploadFile) {
+		String sha256 = uploadFile.getSha256();
+		String fileName = uploadFile.getFileName();
+		if (sha256 == null || failed.contains(sha256) || !pending.add(sha256)) {
+			return;
+		}
+		try {
+			imageExecutor.execute(() -> {
+				try {
+					generate(fileName, sha256);
+				} catch (IOException | RuntimeException e) {
+					failed.add(sha256);
+					System.out.println("Could not resize " + fileName + ": " + e.getMessage());
+				} finally {
+					pending.remove(sha256);
+				}
+			});
+		} catch (TaskRejectedException e) {
+			// asked for again the next time the image is shown
+			pending.remove(sha256);
+		}
+	}
+
+	private void generate(String fileName, String sha256) throws IOException {
+		int largest = 0;
+		for (ImageVariant variant : ImageVariant.values()) {
+			largest = Math.max(largest, variant.getSize());
+		}
+		long started = System.currentTimeMillis();
+		int[] orientation = { 1 };
+		BufferedImage source = read(fileName, sha256, largest, orientation);
+		for (ImageVariant variant : ImageVariant.values()) {
+			if (fileStorageService.locateVariant(sha256, variant.getSuffix()) != null) {
+				continue;
+			}
+			BufferedImage image = orient(square(source, variant.getSize()), orientation[0]);
+			fileStorageService.storeVariant(sha256, variant.getSuffix(), encode(image));
+		}
+		System.out.println("Resized " + fileName + " (" + source.getWidth() + "x" + source.getHeight() + " decoded) in "
+				+ (System.currentTimeMillis() - started) + " ms");
+	}
+
+	/**
+	 * Decodes the first image of the upload at no more than about twice the
+	 * given size, noting its EXIF orientation.
+	 */
+	private BufferedImage read(String fileName, String sha256, int size, int[] orientation) throws IOException {
+		try (InputStream input = fileStorageService.open(fileName, sha256);
+				ImageInputStream stream = new MemoryCacheImageInputStream(input)) {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+			if (!readers.hasNext()) {
+				throw new IOException("Not a readable image");
+			}
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(stream, true, false);
+				int width = reader.getWidth(0);
+				int height = reader.getHeight(0);
+				if ((long) width * height > maxPixels) {
+					throw new IOException("Image is " + width + "x" + height + ", more than " + maxPixels + " pixels");
+				}
+				if ("jpeg".equalsIgnoreCase(reader.getFormatName())) {
+					orientation[0] = exifOrientation(reader.getImageMetadata(0));
+				}
+				ImageReadParam param = reader.getDefaultReadParam();
+				int subsampling = Math.max(1, Math.min(width, height) / (size * 2));
+				param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+				BufferedImage image = reader.read(0, param);
+				if (image == null) {
+					throw new IOException("Not a readable image");
+				}
+				return image;
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	private static BufferedImage square(BufferedImage source, int size) {
+		int side = Math.min(source.getWidth(), source.getHeight());
+		BufferedImage current = source.getSubimage((source.getWidth() - side) / 2, (source.getHeight() - side) / 2,
+				side, side);
+		// a single bilinear step skips pixels when shrinking by more than half
+		while (side / 2 >= size) {
+			side /= 2;
+			current = scale(current, side);
+		}
+		return scale(current, size);
+	}
+
+	private static BufferedImage scale(BufferedImage source, int size) {
+		BufferedImage target = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = target.createGraphics();
+		try {
+			// transparency becomes white rather than the black JPEG would make of it
+			graphics.setColor(Color.WHITE);
+			graphics.fillRect(0, 0, size, size);
+			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			graphics.drawImage(source, 0, 0, size, size, null);
+		} finally {
+			graphics.dispose();
+		}
+		return target;
+	}
+
+	/**
+	 * Turns a square image as stored into the image as it is meant to be
+	 * seen, following EXIF orientations 2 to 8.
+	 */
+	private static BufferedImage orient(BufferedImage image, int orientation) {
+		if (orientation <= 1 || orientation > 8) {
+			return image;
+		}
+		int n = image.getWidth();
+		BufferedImage target = new BufferedImage(n, n, image.getType());
+		for (int y = 0; y < n; y++) {
+			for (int x = 0; x < n; x++) {
+				int dx;
+				int dy;
+				switch (orientation) {
+				case 2:
+					dx = n - 1 - x;
+					dy = y;
+					break;
+				case 3:
+					dx = n - 1 - x;
+					dy = n - 1 - y;
+					break;
+				case 4:
+					dx = x;
+					dy = n - 1 - y;
+					break;
+				case 5:
+					dx = y;
+					dy = x;
+					break;
+				case 6:
+					dx = n - 1 - y;
+					dy = x;
+					break;
+				case 7:
+					dx = n - 1 - y;
+					dy = n - 1 - x;
+					break;
+				default:
+					dx = y;
+					dy = n - 1 - x;
+					break;
+				}
+				target.setRGB(dx, dy, image.getRGB(x, y));
+			}
+		}
+		return target;
+	}
+
+	/**
+	 * The orientation tag of the EXIF block in a JPEG's APP1 marker, or 1 if
+	 * there is none.
+	 */
+	private static int exifOrientation(IIOMetadata metadata) {
+		if (metadata == null) {
+			return 1;
+		}
+		Node root = metadata.getAsTree("javax_imageio_jpeg_image_1.0");
+		NodeList markers = ((IIOMetadataNode) root).getElementsByTagName("unknown");
+		for (int i = 0; i < markers.getLength(); i++) {
+			IIOMetadataNode marker = (IIOMetadataNode) markers.item(i);
+			if ("225".equals(marker.getAttribute("MarkerTag")) && marker.getUserObject() instanceof byte[]) {
+				int orientation = exifOrientation((byte[]) marker.getUserObject());
+				if (orientation != 0) {
+					return orientation;
+				}
+			}
+		}
+		return 1;
+	}
+
+	private static int exifOrientation(byte[] app1) {
+		// "Exif\0\0", then a TIFF header whose first directory holds the tag
+		if (app1.length < 14 || app1[0] != 'E' || app1[1] != 'x' || app1[2] != 'i' || app1[3] != 'f') {
+			return 0;
+		}
+		ByteBuffer tiff = ByteBuffer.wrap(app1, 6, app1.length - 6).slice();
+		tiff.order(tiff.get(0) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+		try {
+			int directory = tiff.getInt(4);
+			int entries = tiff.getShort(directory) & 0xFFFF;
+			for (int i = 0; i < entries; i++) {
+				int entry = directory + 2 + i * 12;
+				if ((tiff.getShort(entry) & 0xFFFF) == EXIF_ORIENTATION) {
+					return tiff.getShort(entry + 8) & 0xFFFF;
+				}
+			}
+		} catch (IndexOutOfBoundsException e) {
+			// a truncated block has no usable orientation
+		}
+		return 0;
+	}
+
+	private byte[] encode(BufferedImage image) throws IOException {
+		ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 * 1024);
+		try (ImageOutputStream output = new MemoryCacheImageOutputStream(bytes)) {
+			writer.setOutput(output);
+			ImageWriteParam param = writer.getDefaultWriteParam();
+			param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+			param.setCompressionQuality(jpegQuality);
+			writer.write(null, new IIOImage(image, null, null), param);
+		} finally {
+			writer.dispose();
+		}
+		return bytes.toByteArray();
+	}
+
+}
@@ -0,0 +1,97 @@
+package com.spring.getready.services.ingestion;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Inserts screened applications and their resumes with JDBC batches, two
+ * round trips per batch however many rows it holds. Rows sharing a resume
+ * file get a single upload row.
+ */
+@Component
+public class ApplicationBatchWriter {
+
+	private static final String INSERT_FILE = "INSERT INTO upload_files (file_name, file_original_name, sha256, content_type, "
+			+ "file_size, is_deleted, uploaded_on) VALUES (?, ?, ?, ?, ?, FALSE, ?)";
+
+	// the resume id is looked up by its unique stored name, since batches cannot return generated keys
+	private static final String INSERT_APPLICATION = "INSERT INTO applications (job_ref, candidate_ref, resume_ref, "
+			+ "applied_on, status, ai_score, ai_match_keywords, notes, submission_ref, idempotency_key) "
+			+ "SELECT ?, ?, file_id, ?, 'Submitted', ?, ?, ?, ?, ? FROM upload_files WHERE file_name = ?";
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Transactional
+	public void write(List<ApplicationRow> rows) {
+		if (rows.isEmpty()) {
+			return;
+		}
+		Map<String, ApplicationRow> files = new LinkedHashMap<>();
+		for (ApplicationRow row : rows) {
+			files.putIfAbsent(row.getFileName(), row);
+		}
+		List<ApplicationRow> distinctFiles = new ArrayList<>(files.values());
+		jdbcTemplate.batchUpdate(INSERT_FILE, new BatchPreparedStatementSetter() {
+
+			@Override
+			public void setValues(PreparedStatement statement, int i) throws SQLException {
+				ApplicationRow row = distinctFiles.get(i);
+				statement.setString(1, row.getFileName());
+				statement.setString(2, row.getOriginalFileName());
+				statement.setString(3, row.getSha256());
+				statement.setString(4, row.getContentType());
+				statement.setLong(5, row.getFileSize());
+				statement.setTimestamp(6, row.getAppliedOn());
+			}
+
+			@Override
+			public int getBatchSize() {
+				return distinctFiles.size();
+			}
+
+		});
+		jdbcTemplate.batchUpdate(INSERT_APPLICATION, new BatchPreparedStatementSetter() {
+
+			@Override
+			public void setValues(PreparedStatement statement, int i) throws SQLException {
+				ApplicationRow row = rows.get(i);
+				statement.setInt(1, row.getJobRef());
+				if (row.getCandidateRef() != null) {
+					statement.setInt(2, row.getCandidateRef());
+				} else {
+					statement.setNull(2, Types.INTEGER);
+				}
+				statement.setTimestamp(3, row.getAppliedOn());
+				if (row.getAiScore() != null) {
+					statement.setDouble(4, row.getAiScore());
+				} else {
+					statement.setNull(4, Types.DOUBLE);
+				}
+				statement.setString(5, row.getAiMatchKeywords());
+				statement.setString(6, row.getNotes());
+				statement.setString(7, row.getSubmissionRef());
+				statement.setString(8, row.getIdempotencyKey());
+				statement.setString(9, row.getFileName());
+			}
+
+			@Override
+			public int getBatchSize() {
+				return rows.size();
+			}
+
+		});
+	}
+
+}
@@ -0,0 +1,139 @@
+package com.spring.getready.services.ingestion;
+
+import java.util.concurrent.Semaphore;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import com.spring.getready.model.Application;
+import com.spring.getready.repository.ApplicationRepository;
+import com.spring.getready.services.RecruitmentService;
+import com.spring.getready.services.ResumeScreeningSession;
+import com.spring.getready.services.UploadFileService;
+
+/**
+ * Screens submitted applications on a bounded worker pool. Callers reserve a
+ * slot before queueing an application, so the queue never grows without
+ * limit.
+ */
+@Service
+public class ApplicationIngestionService {
+
+	@Autowired
+	@Qualifier("ingestionExecutor")
+	private ThreadPoolTaskExecutor ingestionExecutor;
+
+	@Autowired
+	private ApplicationRepository applicationRepository;
+
+	@Autowired
+	private RecruitmentService recruitmentService;
+
+	@Autowired
+	private UploadFileService uploadFileService;
+
+	@Value("${ingestion.pool-size:2}")
+	private int poolSize;
+
+	@Value("${ingestion.queue-capacity:50}")
+	private int queueCapacity;
+
+	@Value("${ingestion.retry-after-seconds:30}")
+	private int retryAfterSeconds;
+
+	private Semaphore slots;
+
+	@PostConstruct
+	public void init() {
+		// one slot per worker and queue entry, so a reserved submit is never rejected
+		slots = new Semaphore(poolSize + queueCapacity);
+	}
+
+	/**
+	 * Waits for room for one application. A reservation must be followed by
+	 * either {@link #submit(Integer)} or {@link #release()}.
+	 */
+	public void reserve() throws InterruptedException {
+		slots.acquire();
+	}
+
+	public void release() {
+		slots.release();
+	}
+
+	public int getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+
+	/**
+	 * Queues a reserved application for screening. If the pool is shutting
+	 * down the application stays in "Processing".
+	 */
+	public void submit(Integer applicationId) {
+		try {
+			ingestionExecutor.execute(new ScreeningTask(applicationId));
+		} catch (TaskRejectedException e) {
+			slots.release();
+			System.out.println("Ingestion queue rejected application " + applicationId + ": " + e.getMessage());
+		}
+	}
+
+	private void process(Integer applicationId) {
+		try {
+			Application application = applicationRepository.findById(applicationId).orElse(null);
+			if (application == null) {
+				return;
+			}
+			ResumeScreeningSession screening = recruitmentService.startScreening(application.getJobPosting());
+			if (!uploadFileService.extractText(application.getResume(), screening)) {
+				if (Thread.currentThread().isInterrupted()) {
+					// shutting down: leave it in "Processing" so it is picked up again on the next start
+					return;
+				}
+				// partial text would give a misleading score
+				System.out.println("Could not read the resume of application " + applicationId + ", leaving it unscored");
+				recruitmentService.failScreening(application);
+				return;
+			}
+			recruitmentService.completeScreening(application, screening);
+			System.out.println("Application " + applicationId + " screened - Text length: " + screening.getTextLength());
+		} catch (RuntimeException e) {
+			System.out.println("Error screening application " + applicationId + ": " + e.getMessage());
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Queued screening of one application, recognisable among the tasks left
+	 * over when the pool is shut down.
+	 */
+	public class ScreeningTask implements Runnable {
+
+		private final Integer applicationId;
+
+		ScreeningTask(Integer applicationId) {
+			this.applicationId = applicationId;
+		}
+
+		public Integer getApplicationId() {
+			return applicationId;
+		}
+
+		@Override
+		public void run() {
+			try {
+				process(applicationId);
+			} finally {
+				slots.release();
+			}
+		}
+
+	}
+
+}
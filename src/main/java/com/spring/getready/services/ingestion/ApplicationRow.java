@@ -0,0 +1,106 @@
+package com.spring.getready.services.ingestion;
+
+import java.sql.Timestamp;
+
+/**
+ * A screened application, with its resume, ready to be inserted in a batch.
+ */
+public class ApplicationRow {
+
+	private final int jobRef;
+
+	private final Integer candidateRef;
+
+	private final String fileName;
+
+	private final String originalFileName;
+
+	private final String sha256;
+
+	private final String contentType;
+
+	private final long fileSize;
+
+	private final Timestamp appliedOn;
+
+	private final Double aiScore;
+
+	private final String aiMatchKeywords;
+
+	private final String notes;
+
+	private final String submissionRef;
+
+	private final String idempotencyKey;
+
+	public ApplicationRow(int jobRef, Integer candidateRef, String fileName, String originalFileName, String sha256,
+			String contentType, long fileSize, Timestamp appliedOn, Double aiScore, String aiMatchKeywords, String notes,
+			String submissionRef, String idempotencyKey) {
+		this.jobRef = jobRef;
+		this.candidateRef = candidateRef;
+		this.fileName = fileName;
+		this.originalFileName = originalFileName;
+		this.sha256 = sha256;
+		this.contentType = contentType;
+		this.fileSize = fileSize;
+		this.appliedOn = appliedOn;
+		this.aiScore = aiScore;
+		this.aiMatchKeywords = aiMatchKeywords;
+		this.notes = notes;
+		this.submissionRef = submissionRef;
+		this.idempotencyKey = idempotencyKey;
+	}
+
+	public int getJobRef() {
+		return jobRef;
+	}
+
+	public Integer getCandidateRef() {
+		return candidateRef;
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	public String getOriginalFileName() {
+		return originalFileName;
+	}
+
+	public String getSha256() {
+		return sha256;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	public long getFileSize() {
+		return fileSize;
+	}
+
+	public Timestamp getAppliedOn() {
+		return appliedOn;
+	}
+
+	public Double getAiScore() {
+		return aiScore;
+	}
+
+	public String getAiMatchKeywords() {
+		return aiMatchKeywords;
+	}
+
+	public String getNotes() {
+		return notes;
+	}
+
+	public String getSubmissionRef() {
+		return submissionRef;
+	}
+
+	public String getIdempotencyKey() {
+		return idempotencyKey;
+	}
+
+}
@@ -0,0 +1,134 @@
+package com.spring.getready.services.ingestion;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Progress of one bulk import. Entries are counted as they are read from the
+ * archive, and each ends up either imported or in the error report.
+ */
+public class BulkImport {
+
+	public enum State {
+		RUNNING, COMPLETED, FAILED
+	}
+
+	private final String importId;
+
+	private final int jobRef;
+
+	private final long startedOn = System.currentTimeMillis();
+
+	private final List<ApplicationRow> batch = new ArrayList<>();
+
+	private final List<Map<String, String>> errors = new ArrayList<>();
+
+	private State state = State.RUNNING;
+
+	private String failure;
+
+	private boolean readingDone;
+
+	private int entries;
+
+	private int pending;
+
+	private int imported;
+
+	private long finishedOn;
+
+	BulkImport(String importId, int jobRef) {
+		this.importId = importId;
+		this.jobRef = jobRef;
+	}
+
+	public String getImportId() {
+		return importId;
+	}
+
+	synchronized void entryRead() {
+		entries++;
+	}
+
+	synchronized int getEntries() {
+		return entries;
+	}
+
+	synchronized void taskStarted() {
+		pending++;
+	}
+
+	/**
+	 * @return true if this was the last task and the archive has been read
+	 */
+	synchronized boolean taskFinished() {
+		pending--;
+		return readingDone && pending == 0;
+	}
+
+	/**
+	 * @return true if no task is left running
+	 */
+	synchronized boolean readingFinished() {
+		readingDone = true;
+		return pending == 0;
+	}
+
+	synchronized void error(String fileName, String message) {
+		Map<String, String> error = new LinkedHashMap<>();
+		error.put("file", fileName);
+		error.put("error", message);
+		errors.add(error);
+	}
+
+	synchronized void fail(String message) {
+		failure = message;
+	}
+
+	/**
+	 * Adds a screened row, returning a full batch to write or null.
+	 */
+	synchronized List<ApplicationRow> add(ApplicationRow row, int batchSize) {
+		batch.add(row);
+		return batch.size() >= batchSize ? drainBatch() : null;
+	}
+
+	synchronized List<ApplicationRow> drainBatch() {
+		List<ApplicationRow> rows = new ArrayList<>(batch);
+		batch.clear();
+		return rows;
+	}
+
+	synchronized void imported(int count) {
+		imported += count;
+	}
+
+	synchronized void complete() {
+		state = failure == null ? State.COMPLETED : State.FAILED;
+		finishedOn = System.currentTimeMillis();
+	}
+
+	synchronized boolean isFinishedBefore(long time) {
+		return state != State.RUNNING && finishedOn < time;
+	}
+
+	public synchronized Map<String, Object> toReport() {
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("importId", importId);
+		report.put("jobId", jobRef);
+		report.put("state", state.name());
+		report.put("entries", entries);
+		report.put("imported", imported);
+		report.put("failed", errors.size());
+		report.put("inProgress", entries - imported - errors.size());
+		report.put("elapsedMillis", (state == State.RUNNING ? System.currentTimeMillis() : finishedOn) - startedOn);
+		if (failure != null) {
+			report.put("failure", failure);
+		}
+		report.put("errors", new ArrayList<>(errors));
+		return report;
+	}
+
+}
@@ -0,0 +1,235 @@
+package com.spring.getready.services.ingestion;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import com.spring.getready.model.JobPosting;
+import com.spring.getready.services.RecruitmentService;
+import com.spring.getready.services.ResumeScreeningSession;
+import com.spring.getready.services.UploadFileService;
+import com.spring.getready.services.extraction.TextExtractionService;
+import com.spring.getready.services.upload.UploadReceipt;
+
+/**
+ * Imports a ZIP of resumes for a posting. The archive is read as a stream by
+ * the caller, each entry going straight to its stored file; the entries are
+ * then extracted and scored on the import pool, and the rows are written in
+ * JDBC batches. Only a few entries per worker are allowed in flight, so a
+ * fast upload waits for the workers instead of piling up. Everything the
+ * archive unpacks to counts against an overall limit, including the entries
+ * that are skipped.
+ */
+@Service
+public class BulkImportService {
+
+	private static final int IN_FLIGHT_PER_WORKER = 2;
+
+	@Autowired
+	@Qualifier("importExecutor")
+	private ThreadPoolTaskExecutor importExecutor;
+
+	@Autowired
+	private UploadFileService uploadFileService;
+
+	@Autowired
+	private TextExtractionService textExtractionService;
+
+	@Autowired
+	private RecruitmentService recruitmentService;
+
+	@Autowired
+	private ApplicationBatchWriter batchWriter;
+
+	@Value("${import.max-entries:2000}")
+	private int maxEntries;
+
+	@Value("${import.batch-size:100}")
+	private int batchSize;
+
+	@Value("${extraction.max-bytes-mb:20}")
+	private long maxEntryMb;
+
+	@Value("${import.max-total-mb:500}")
+	private long maxTotalMb;
+
+	@Value("${import.retention-minutes:60}")
+	private long retentionMinutes;
+
+	private final Map<String, BulkImport> imports = new ConcurrentHashMap<>();
+
+	public BulkImport getImport(String importId) {
+		return imports.get(importId);
+	}
+
+	/**
+	 * Reads the whole archive, returning once every entry is stored and
+	 * queued. Screening carries on in the background. Callers handling a
+	 * request run this off the request thread, since it lasts as long as the
+	 * upload.
+	 */
+	public BulkImport importZip(JobPosting job, InputStream archive) {
+		long cutoff = System.currentTimeMillis() - retentionMinutes * 60 * 1000;
+		imports.values().removeIf(existing -> existing.isFinishedBefore(cutoff));
+
+		BulkImport bulkImport = new BulkImport(UUID.randomUUID().toString(), job.getJobId());
+		imports.put(bulkImport.getImportId(), bulkImport);
+		Semaphore inFlight = new Semaphore(importExecutor.getMaxPoolSize() * IN_FLIGHT_PER_WORKER);
+		try (ZipInputStream zip = new LimitedZipInputStream(new BufferedInputStream(archive), maxTotalMb * 1024 * 1024)) {
+			ZipEntry entry;
+			while ((entry = zip.getNextEntry()) != null) {
+				String fileName = baseName(entry.getName());
+				if (entry.isDirectory() || fileName.isEmpty() || fileName.startsWith(".")
+						|| entry.getName().startsWith("__MACOSX/")) {
+					continue;
+				}
+				if (bulkImport.getEntries() >= maxEntries) {
+					bulkImport.fail("The archive has more than " + maxEntries + " files, the rest were skipped");
+					break;
+				}
+				bulkImport.entryRead();
+				if (!textExtractionService.isSupported(fileName)) {
+					bulkImport.error(fileName, "Unsupported file type");
+					continue;
+				}
+				UploadReceipt receipt;
+				try {
+					receipt = uploadFileService.storeStream(zip, fileName, maxEntryMb * 1024 * 1024);
+				} catch (ZipException e) {
+					throw e;
+				} catch (IOException e) {
+					bulkImport.error(fileName, e.getMessage());
+					continue;
+				}
+				inFlight.acquire();
+				bulkImport.taskStarted();
+				try {
+					importExecutor.execute(() -> {
+						try {
+							screen(job, bulkImport, receipt);
+						} finally {
+							inFlight.release();
+							if (bulkImport.taskFinished()) {
+								finish(bulkImport);
+							}
+						}
+					});
+				} catch (TaskRejectedException e) {
+					inFlight.release();
+					bulkImport.taskFinished();
+					bulkImport.error(fileName, "Import pool is shutting down");
+					uploadFileService.discardStoredFile(receipt.getFileName(), receipt.getSha256());
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			bulkImport.fail("Interrupted while reading the archive");
+		} catch (InterruptedIOException e) {
+			bulkImport.fail("Interrupted while reading the archive");
+		} catch (IOException e) {
+			bulkImport.fail("Could not read the archive: " + e.getMessage());
+		}
+		System.out.println("Bulk import " + bulkImport.getImportId() + ": read " + bulkImport.getEntries()
+				+ " files for job " + job.getJobId());
+		if (bulkImport.readingFinished()) {
+			finish(bulkImport);
+		}
+		return bulkImport;
+	}
+
+	private void screen(JobPosting job, BulkImport bulkImport, UploadReceipt receipt) {
+		String fileName = receipt.getOriginalFileName();
+		try {
+			ResumeScreeningSession screening = recruitmentService.startScreening(job);
+			uploadFileService.extractText(receipt.getFileName(), receipt.getSha256(), screening, true);
+			Map<String, Object> result = screening.getResult();
+			ApplicationRow row = new ApplicationRow(job.getJobId(), null, receipt.getFileName(), fileName,
+					receipt.getSha256(), receipt.getContentType(), receipt.getSize(),
+					new Timestamp(System.currentTimeMillis()), (Double) result.get("score"),
+					(String) result.get("matchedSkills"), "Imported from " + fileName, UUID.randomUUID().toString(), null);
+			List<ApplicationRow> batch = bulkImport.add(row, batchSize);
+			if (batch != null) {
+				write(bulkImport, batch);
+			}
+		} catch (IOException | RuntimeException e) {
+			bulkImport.error(fileName, e.getMessage());
+			uploadFileService.discardStoredFile(receipt.getFileName(), receipt.getSha256());
+		}
+	}
+
+	private void finish(BulkImport bulkImport) {
+		write(bulkImport, bulkImport.drainBatch());
+		bulkImport.complete();
+		Map<String, Object> report = bulkImport.toReport();
+		System.out.println("Bulk import " + bulkImport.getImportId() + " finished: " + report.get("imported")
+				+ " imported, " + report.get("failed") + " failed");
+	}
+
+	private void write(BulkImport bulkImport, List<ApplicationRow> rows) {
+		if (rows.isEmpty()) {
+			return;
+		}
+		try {
+			batchWriter.write(rows);
+			bulkImport.imported(rows.size());
+		} catch (RuntimeException e) {
+			System.out.println("Error writing import batch: " + e.getMessage());
+			for (ApplicationRow row : rows) {
+				bulkImport.error(row.getOriginalFileName(), "Could not save: " + e.getMessage());
+				uploadFileService.discardStoredFile(row.getFileName(), row.getSha256());
+			}
+		}
+	}
+
+	/**
+	 * Fails the whole archive once it has unpacked to more than the limit.
+	 * Skipping an entry reads it through {@link #read(byte[], int, int)} too,
+	 * so skipped entries are counted.
+	 */
+	private static class LimitedZipInputStream extends ZipInputStream {
+
+		private final long maxBytes;
+
+		private long inflatedBytes;
+
+		LimitedZipInputStream(InputStream input, long maxBytes) {
+			super(input);
+			this.maxBytes = maxBytes;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (read > 0) {
+				inflatedBytes += read;
+				if (inflatedBytes > maxBytes) {
+					throw new ZipException("The archive unpacks to more than " + maxBytes / (1024 * 1024) + " MB");
+				}
+			}
+			return read;
+		}
+
+	}
+
+	private static String baseName(String entryName) {
+		return entryName.substring(Math.max(entryName.lastIndexOf('/'), entryName.lastIndexOf('\\')) + 1);
+	}
+
+}
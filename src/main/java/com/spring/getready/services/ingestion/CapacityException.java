@@ -0,0 +1,20 @@
+package com.spring.getready.services.ingestion;
+
+import java.io.IOException;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class CapacityException extends IOException {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 4127955032170916457L;
+
+	public CapacityException(String message) {
+		super(message);
+	}
+
+}
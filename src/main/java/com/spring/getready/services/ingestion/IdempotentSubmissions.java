@@ -0,0 +1,92 @@
+package com.spring.getready.services.ingestion;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Short-lived record of submissions by idempotency key. Concurrent calls with
+ * the same key share a single computation, and later calls within the TTL get
+ * its result without running it again. Failed computations are forgotten so
+ * they can be retried. Keys outlive the TTL only in the database, through the
+ * unique constraint on the application.
+ */
+@Component
+public class IdempotentSubmissions {
+
+	@Value("${ingestion.idempotency-ttl-seconds:600}")
+	private long ttlSeconds;
+
+	@Value("${ingestion.idempotency-wait-seconds:60}")
+	private long waitSeconds;
+
+	private final Map<String, Submission> submissions = new ConcurrentHashMap<>();
+
+	private volatile long lastSweep = System.currentTimeMillis();
+
+	@SuppressWarnings("unchecked")
+	public <T> T execute(String key, Callable<T> work) throws Exception {
+		long now = System.currentTimeMillis();
+		sweep(now);
+		Submission mine = new Submission(now);
+		Submission existing = submissions.putIfAbsent(key, mine);
+		while (existing != null && existing.isExpired(now, ttlSeconds)) {
+			existing = submissions.replace(key, existing, mine) ? null : submissions.putIfAbsent(key, mine);
+		}
+		if (existing != null) {
+			return (T) await(existing.result);
+		}
+		try {
+			T result = work.call();
+			mine.result.complete(result);
+			return result;
+		} catch (Exception e) {
+			submissions.remove(key, mine);
+			mine.result.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	private Object await(CompletableFuture<Object> result) throws Exception {
+		try {
+			return result.get(waitSeconds, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	private void sweep(long now) {
+		if (now - lastSweep < ttlSeconds * 1000) {
+			return;
+		}
+		lastSweep = now;
+		submissions.values().removeIf(submission -> submission.isExpired(now, ttlSeconds));
+	}
+
+	private static class Submission {
+
+		private final long createdAt;
+
+		private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+		Submission(long createdAt) {
+			this.createdAt = createdAt;
+		}
+
+		boolean isExpired(long now, long ttlSeconds) {
+			// an entry still in flight is never expired, so duplicates keep collapsing into it
+			return result.isDone() && now - createdAt > ttlSeconds * 1000;
+		}
+
+	}
+
+}
@@ -0,0 +1,165 @@
+package com.spring.getready.services.ingestion;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.spring.getready.model.Application;
+import com.spring.getready.services.RecruitmentService;
+import com.spring.getready.services.journal.ApplicationJournal;
+import com.spring.getready.services.journal.JournalRecord;
+
+/**
+ * Moves accepted applications from the journal into the database, one at a
+ * time and in order, and hands them to the ingestion pool. While the database
+ * is unreachable the current record is retried with a growing delay, so the
+ * journal absorbs the outage. On start, and again every lease period,
+ * applications left in "Processing" whose screening lease has run out are
+ * claimed and queued for screening again.
+ */
+@Service
+public class JournalReplayService {
+
+	private static final long POLL_MILLIS = 1000;
+
+	@Autowired
+	private ApplicationJournal journal;
+
+	@Autowired
+	private RecruitmentService recruitmentService;
+
+	@Autowired
+	private ApplicationIngestionService ingestionService;
+
+	@Value("${journal.max-retry-delay-seconds:30}")
+	private long maxRetryDelaySeconds;
+
+	@Value("${ingestion.screening-lease-minutes:10}")
+	private long screeningLeaseMinutes;
+
+	private volatile boolean running;
+
+	private Thread worker;
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void start() {
+		running = true;
+		worker = new Thread(this::run, "journal-replay");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * Stops replaying, letting the current record finish within the given
+	 * time. Whatever is left stays in the journal.
+	 *
+	 * @return true if the replay thread finished in time
+	 */
+	public boolean stop(long timeoutMillis) throws InterruptedException {
+		running = false;
+		if (worker == null) {
+			return true;
+		}
+		worker.join(Math.max(timeoutMillis, 1));
+		if (worker.isAlive()) {
+			worker.interrupt();
+			return false;
+		}
+		return true;
+	}
+
+	@PreDestroy
+	public void stop() {
+		running = false;
+		if (worker != null) {
+			worker.interrupt();
+		}
+	}
+
+	private void run() {
+		try {
+			requeueUnfinished();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		long retryDelay = POLL_MILLIS;
+		long nextRequeue = System.nanoTime() + TimeUnit.MINUTES.toNanos(screeningLeaseMinutes);
+		while (running) {
+			try {
+				// picks up what an instance that stopped without finishing left behind, once its leases run out
+				if (System.nanoTime() - nextRequeue >= 0) {
+					requeueUnfinished();
+					nextRequeue = System.nanoTime() + TimeUnit.MINUTES.toNanos(screeningLeaseMinutes);
+				}
+				ApplicationJournal.Entry entry = journal.poll(POLL_MILLIS);
+				if (entry == null) {
+					continue;
+				}
+				ingestionService.reserve();
+				if (replay(entry)) {
+					retryDelay = POLL_MILLIS;
+				} else {
+					Thread.sleep(retryDelay);
+					retryDelay = Math.min(retryDelay * 2, maxRetryDelaySeconds * 1000);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	private void requeueUnfinished() throws InterruptedException {
+		long retryDelay = POLL_MILLIS;
+		while (running) {
+			List<Application> unfinished;
+			try {
+				unfinished = recruitmentService.claimUnfinishedApplications();
+			} catch (RuntimeException e) {
+				System.out.println("Could not look up unfinished applications, will retry: " + e.getMessage());
+				Thread.sleep(retryDelay);
+				retryDelay = Math.min(retryDelay * 2, maxRetryDelaySeconds * 1000);
+				continue;
+			}
+			for (Application application : unfinished) {
+				ingestionService.reserve();
+				ingestionService.submit(application.getApplicationId());
+			}
+			if (!unfinished.isEmpty()) {
+				System.out.println("Requeued " + unfinished.size() + " unfinished applications for screening");
+			}
+			return;
+		}
+	}
+
+	private boolean replay(ApplicationJournal.Entry entry) {
+		JournalRecord record = entry.getRecord();
+		boolean submitted = false;
+		try {
+			Application application = recruitmentService.acceptJournaledApplication(record);
+			journal.acknowledge(entry);
+			if (application != null) {
+				ingestionService.submit(application.getApplicationId());
+				submitted = true;
+			}
+			return true;
+		} catch (Exception e) {
+			System.out.println("Could not replay application " + record.getSubmissionRef() + ", will retry: "
+					+ e.getMessage());
+			return false;
+		} finally {
+			if (!submitted) {
+				ingestionService.release();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,95 @@
+package com.spring.getready.services.ingestion;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.spring.getready.model.JobPosting;
+import com.spring.getready.model.UserDetail;
+import com.spring.getready.services.RecruitmentService;
+import com.spring.getready.services.UploadFileService;
+import com.spring.getready.services.journal.ApplicationJournal;
+import com.spring.getready.services.journal.JournalRecord;
+import com.spring.getready.services.upload.UploadReceipt;
+
+/**
+ * Applies one resume to several postings at once. The file is stored a
+ * single time and one application per posting is journaled against it, so
+ * each is replayed, screened and, if the resume cannot be read, left
+ * unscored exactly like a single apply; the applications share one upload
+ * row and the cached text.
+ */
+@Service
+public class MultiApplyService {
+
+	@Autowired
+	private UploadFileService uploadFileService;
+
+	@Autowired
+	private ApplicationJournal applicationJournal;
+
+	@Autowired
+	private RecruitmentService recruitmentService;
+
+	@Value("${ingestion.multi-apply-max-jobs:10}")
+	private int maxJobs;
+
+	public int getMaxJobs() {
+		return maxJobs;
+	}
+
+	/**
+	 * A retry under the same idempotency key only journals the postings that
+	 * have no application under that key yet; if there are none, nothing is
+	 * stored.
+	 *
+	 * @return the number of applications, one per posting, including those
+	 *         made by an earlier attempt
+	 */
+	public int apply(List<JobPosting> jobs, UserDetail candidate, MultipartFile resume, String notes,
+			String idempotencyKey) throws IOException {
+		List<JobPosting> remaining = new ArrayList<>();
+		for (JobPosting job : jobs) {
+			if (idempotencyKey == null
+					|| recruitmentService.findRepeatedApplication(job, candidate, idempotencyKey) == null) {
+				remaining.add(job);
+			}
+		}
+		int repeated = jobs.size() - remaining.size();
+		if (remaining.isEmpty()) {
+			System.out.println("Multi-apply: all " + repeated + " applications of " + candidate.getEmail()
+					+ " were made before under key " + idempotencyKey);
+			return repeated;
+		}
+		if (applicationJournal.isFull()) {
+			throw new CapacityException("Application backlog is full");
+		}
+		UploadReceipt receipt = uploadFileService.storeFile(resume);
+		long acceptedOn = System.currentTimeMillis();
+		int journaled = 0;
+		try {
+			for (JobPosting job : remaining) {
+				applicationJournal.append(new JournalRecord(UUID.randomUUID().toString(), job.getJobId(),
+						candidate.getEmail(), receipt.getFileName(), receipt.getOriginalFileName(), receipt.getSha256(),
+						receipt.getContentType(), receipt.getSize(), notes, idempotencyKey, acceptedOn));
+				journaled++;
+			}
+		} catch (IOException | RuntimeException e) {
+			// the postings already journaled keep the file
+			if (journaled == 0) {
+				uploadFileService.discardStoredFile(receipt.getFileName(), receipt.getSha256());
+			}
+			throw e;
+		}
+		System.out.println("Multi-apply: " + journaled + " applications for " + candidate.getEmail()
+				+ " from " + receipt.getFileName() + ", " + repeated + " made before");
+		return repeated + journaled;
+	}
+
+}
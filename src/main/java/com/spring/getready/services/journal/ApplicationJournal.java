@@ -0,0 +1,354 @@
+package com.spring.getready.services.journal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Append-only journal of accepted applications, kept in fixed-size
+ * memory-mapped segments on local disk. Every record is framed as
+ * {@code [length][CRC-32][payload]} and forced to disk before
+ * {@link #append(JournalRecord)} returns. A single consumer reads records in
+ * order and acknowledges them once they are in the database; the position of
+ * the oldest unacknowledged record is kept in a double-buffered checkpoint, so
+ * a torn checkpoint write falls back to the previous one. On startup a torn or
+ * corrupt record at the tail is treated as the end of the journal.
+ */
+@Component
+public class ApplicationJournal {
+
+	private static final String SEGMENT_PREFIX = "journal-";
+
+	private static final String SEGMENT_SUFFIX = ".log";
+
+	private static final String CHECKPOINT_FILE = "checkpoint";
+
+	private static final int HEADER = 8;
+
+	// sequence, segment, position and the CRC-32 of the three
+	private static final int CHECKPOINT_SLOT = 24;
+
+	@Value("${journal.path:${file.upload-path}/journal}")
+	private String journalPath;
+
+	@Value("${journal.segment-size-mb:4}")
+	private int segmentSizeMb;
+
+	@Value("${journal.max-backlog:1000}")
+	private int maxBacklog;
+
+	private Path directory;
+
+	private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+
+	private MappedByteBuffer checkpoint;
+
+	private long checkpointSequence;
+
+	private long writeSegment;
+
+	private int writePosition;
+
+	private long readSegment;
+
+	private int readPosition;
+
+	private int backlog;
+
+	@PostConstruct
+	public synchronized void init() throws IOException {
+		directory = Paths.get(journalPath);
+		Files.createDirectories(directory);
+		openCheckpoint();
+
+		List<Path> files;
+		try (Stream<Path> listing = Files.list(directory)) {
+			files = listing.filter(file -> isSegment(file.getFileName().toString())).collect(Collectors.toList());
+		}
+		for (Path file : files) {
+			long id = segmentId(file.getFileName().toString());
+			if (id < readSegment) {
+				Files.deleteIfExists(file);
+			} else {
+				segments.put(id, map(file));
+			}
+		}
+		if (segments.isEmpty()) {
+			segments.put(Math.max(readSegment, 1), map(segmentPath(Math.max(readSegment, 1))));
+		}
+		if (!segments.containsKey(readSegment)) {
+			readSegment = segments.firstKey();
+			readPosition = 0;
+		}
+		recover();
+		System.out.println("Application journal: " + backlog + " records to replay, " + segments.size() + " segments");
+	}
+
+	/**
+	 * Durably appends a record. Returns only once the record is on disk.
+	 */
+	public synchronized void append(JournalRecord record) throws IOException {
+		byte[] payload = record.encode();
+		int length = HEADER + payload.length;
+		if (length > segmentSizeMb * 1024 * 1024) {
+			throw new IOException("Journal record of " + payload.length + " bytes does not fit in a segment");
+		}
+		MappedByteBuffer buffer = segments.get(writeSegment);
+		if (writePosition + length > buffer.capacity()) {
+			writeSegment++;
+			writePosition = 0;
+			buffer = map(segmentPath(writeSegment));
+			segments.put(writeSegment, buffer);
+		}
+		for (int i = 0; i < payload.length; i++) {
+			buffer.put(writePosition + HEADER + i, payload[i]);
+		}
+		buffer.putInt(writePosition + 4, crc(payload));
+		// the length goes last: a record without one reads as the end of the journal
+		buffer.putInt(writePosition, payload.length);
+		buffer.force();
+		writePosition += length;
+		backlog++;
+		notifyAll();
+	}
+
+	/**
+	 * Whether the backlog of records not yet in the database has reached its
+	 * limit, in which case new applications should be turned away.
+	 */
+	public synchronized boolean isFull() {
+		return backlog >= maxBacklog;
+	}
+
+	public synchronized int getBacklog() {
+		return backlog;
+	}
+
+	/**
+	 * Returns the oldest unacknowledged record, waiting up to the given time for
+	 * one to be appended. The same record is returned until it is acknowledged.
+	 */
+	public synchronized Entry poll(long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (true) {
+			Entry entry = next();
+			if (entry != null) {
+				return entry;
+			}
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				return null;
+			}
+			wait(remaining);
+		}
+	}
+
+	/**
+	 * Marks a record, and every record before it, as stored in the database.
+	 */
+	public synchronized void acknowledge(Entry entry) throws IOException {
+		readSegment = entry.segment;
+		readPosition = entry.end;
+		backlog--;
+		writeCheckpoint();
+		while (segments.firstKey() < readSegment) {
+			long consumed = segments.firstKey();
+			segments.remove(consumed);
+			Files.deleteIfExists(segmentPath(consumed));
+		}
+	}
+
+	private Entry next() {
+		while (true) {
+			boolean tail = readSegment == writeSegment;
+			if (tail && readPosition >= writePosition) {
+				return null;
+			}
+			MappedByteBuffer buffer = segments.get(readSegment);
+			byte[] payload;
+			try {
+				payload = payloadAt(buffer, readPosition);
+			} catch (IOException e) {
+				System.out.println("Skipping the rest of journal segment " + readSegment + ": " + e.getMessage());
+				payload = null;
+			}
+			if (payload == null) {
+				if (tail) {
+					return null;
+				}
+				readSegment = segments.higherKey(readSegment);
+				readPosition = 0;
+				continue;
+			}
+			int end = readPosition + HEADER + payload.length;
+			try {
+				return new Entry(JournalRecord.decode(payload), readSegment, end);
+			} catch (IOException e) {
+				System.out.println("Skipping unreadable journal record: " + e.getMessage());
+				readPosition = end;
+				backlog--;
+			}
+		}
+	}
+
+	private void recover() throws IOException {
+		long lastSegment = segments.lastKey();
+		for (Map.Entry<Long, MappedByteBuffer> segment : segments.tailMap(readSegment, true).entrySet()) {
+			MappedByteBuffer buffer = segment.getValue();
+			int position = segment.getKey() == readSegment ? readPosition : 0;
+			while (true) {
+				byte[] payload;
+				try {
+					payload = payloadAt(buffer, position);
+				} catch (IOException e) {
+					System.out.println("Journal segment " + segment.getKey() + " ends in a torn record: " + e.getMessage());
+					payload = null;
+				}
+				if (payload == null) {
+					break;
+				}
+				position += HEADER + payload.length;
+				backlog++;
+			}
+			if (segment.getKey() == lastSegment) {
+				writeSegment = lastSegment;
+				writePosition = position;
+				// clear whatever a crash left behind so it cannot be mistaken for a record
+				for (int i = position; i < buffer.capacity(); i++) {
+					buffer.put(i, (byte) 0);
+				}
+				buffer.force();
+			}
+		}
+	}
+
+	/**
+	 * Reads the payload of the record at the given position, or returns null at
+	 * the end of the written data.
+	 */
+	private static byte[] payloadAt(MappedByteBuffer buffer, int position) throws IOException {
+		if (position + HEADER > buffer.capacity()) {
+			return null;
+		}
+		int length = buffer.getInt(position);
+		if (length == 0) {
+			return null;
+		}
+		if (length < 0 || position + HEADER + length > buffer.capacity()) {
+			throw new IOException("invalid record length " + length + " at " + position);
+		}
+		byte[] payload = new byte[length];
+		for (int i = 0; i < length; i++) {
+			payload[i] = buffer.get(position + HEADER + i);
+		}
+		if (crc(payload) != buffer.getInt(position + 4)) {
+			throw new IOException("checksum mismatch at " + position);
+		}
+		return payload;
+	}
+
+	private void openCheckpoint() throws IOException {
+		try (FileChannel channel = FileChannel.open(directory.resolve(CHECKPOINT_FILE), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			checkpoint = channel.map(FileChannel.MapMode.READ_WRITE, 0, 2 * CHECKPOINT_SLOT);
+		}
+		for (int slot = 0; slot < 2; slot++) {
+			int base = slot * CHECKPOINT_SLOT;
+			long sequence = checkpoint.getLong(base);
+			long segment = checkpoint.getLong(base + 8);
+			int position = checkpoint.getInt(base + 16);
+			if (sequence > checkpointSequence && checkpoint.getInt(base + 20) == checkpointCrc(sequence, segment, position)) {
+				checkpointSequence = sequence;
+				readSegment = segment;
+				readPosition = position;
+			}
+		}
+	}
+
+	private void writeCheckpoint() {
+		checkpointSequence++;
+		int base = (int) (checkpointSequence % 2) * CHECKPOINT_SLOT;
+		checkpoint.putLong(base, checkpointSequence);
+		checkpoint.putLong(base + 8, readSegment);
+		checkpoint.putInt(base + 16, readPosition);
+		checkpoint.putInt(base + 20, checkpointCrc(checkpointSequence, readSegment, readPosition));
+		checkpoint.force();
+	}
+
+	private MappedByteBuffer map(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			long size = channel.size() > 0 ? channel.size() : segmentSizeMb * 1024L * 1024L;
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		}
+	}
+
+	private Path segmentPath(long id) {
+		return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+	}
+
+	private static boolean isSegment(String name) {
+		return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+	}
+
+	private static long segmentId(String name) {
+		return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+	}
+
+	private static int crc(byte[] payload) {
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		return (int) crc.getValue();
+	}
+
+	private static int checkpointCrc(long sequence, long segment, int position) {
+		CRC32 crc = new CRC32();
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			crc.update((int) (sequence >>> shift));
+			crc.update((int) (segment >>> shift));
+		}
+		for (int shift = 24; shift >= 0; shift -= 8) {
+			crc.update(position >>> shift);
+		}
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * A record read from the journal, with the position just past it.
+	 */
+	public static class Entry {
+
+		private final JournalRecord record;
+
+		private final long segment;
+
+		private final int end;
+
+		Entry(JournalRecord record, long segment, int end) {
+			this.record = record;
+			this.segment = segment;
+			this.end = end;
+		}
+
+		public JournalRecord getRecord() {
+			return record;
+		}
+
+	}
+
+}
@@ -0,0 +1,180 @@
+package com.spring.getready.services.journal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An application accepted from a candidate whose rows have not necessarily
+ * reached the database yet. The submission reference identifies it across
+ * replays.
+ */
+public class JournalRecord {
+
+	private static final int VERSION = 1;
+
+	private final String submissionRef;
+
+	private final int jobRef;
+
+	private final String username;
+
+	private final String fileName;
+
+	private final String originalFileName;
+
+	private final String sha256;
+
+	private final String contentType;
+
+	private final Long fileSize;
+
+	private final String notes;
+
+	private final String idempotencyKey;
+
+	private final long acceptedOn;
+
+	public JournalRecord(String submissionRef, int jobRef, String username, String fileName,
+			String originalFileName, String sha256, String contentType, Long fileSize, String notes,
+			String idempotencyKey, long acceptedOn) {
+		this.submissionRef = submissionRef;
+		this.jobRef = jobRef;
+		this.username = username;
+		this.fileName = fileName;
+		this.originalFileName = originalFileName;
+		this.sha256 = sha256;
+		this.contentType = contentType;
+		this.fileSize = fileSize;
+		this.notes = notes;
+		this.idempotencyKey = idempotencyKey;
+		this.acceptedOn = acceptedOn;
+	}
+
+	public String getSubmissionRef() {
+		return submissionRef;
+	}
+
+	public int getJobRef() {
+		return jobRef;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	public String getOriginalFileName() {
+		return originalFileName;
+	}
+
+	/**
+	 * The hash of the stored content, or null for records journaled before
+	 * uploads were content-addressed.
+	 */
+	public String getSha256() {
+		return sha256;
+	}
+
+	/**
+	 * The sniffed type of the resume, or null for older records.
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * The size of the resume, or null for older records.
+	 */
+	public Long getFileSize() {
+		return fileSize;
+	}
+
+	public String getNotes() {
+		return notes;
+	}
+
+	public String getIdempotencyKey() {
+		return idempotencyKey;
+	}
+
+	public long getAcceptedOn() {
+		return acceptedOn;
+	}
+
+	byte[] encode() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(VERSION);
+			out.writeUTF(submissionRef);
+			out.writeInt(jobRef);
+			out.writeUTF(username);
+			out.writeUTF(fileName);
+			out.writeUTF(originalFileName);
+			out.writeLong(acceptedOn);
+			// a resume stored before hashes were recorded has none
+			writeOptional(out, sha256);
+			writeOptional(out, contentType);
+			out.writeLong(fileSize != null ? fileSize : -1);
+			writeOptional(out, idempotencyKey);
+			// free text, which may be longer than the 64 KB writeUTF takes
+			out.writeBoolean(notes != null);
+			if (notes != null) {
+				byte[] noteBytes = notes.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(noteBytes.length);
+				out.write(noteBytes);
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	static JournalRecord decode(byte[] payload) throws IOException {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+			int version = in.readUnsignedByte();
+			if (version != VERSION) {
+				throw new IOException("Unsupported journal record version " + version);
+			}
+			String submissionRef = in.readUTF();
+			int jobRef = in.readInt();
+			String username = in.readUTF();
+			String fileName = in.readUTF();
+			String originalFileName = in.readUTF();
+			long acceptedOn = in.readLong();
+			String sha256 = readOptional(in);
+			String contentType = readOptional(in);
+			long fileSize = in.readLong();
+			String idempotencyKey = readOptional(in);
+			String notes = in.readBoolean() ? readString(in) : null;
+			return new JournalRecord(submissionRef, jobRef, username, fileName, originalFileName, sha256, contentType,
+					fileSize >= 0 ? fileSize : null, notes, idempotencyKey, acceptedOn);
+		}
+	}
+
+	private static void writeOptional(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readOptional(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0 || length > in.available()) {
+			throw new IOException("Corrupt journal record: string of " + length + " bytes");
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,32 @@
+package com.spring.getready.services.storage;
+
+public class BlobInfo {
+
+	private final String key;
+
+	private final long size;
+
+	private final long lastModified;
+
+	public BlobInfo(String key, long size, long lastModified) {
+		this.key = key;
+		this.size = size;
+		this.lastModified = lastModified;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * In milliseconds since the epoch.
+	 */
+	public long getLastModified() {
+		return lastModified;
+	}
+
+}
@@ -0,0 +1,341 @@
+package com.spring.getready.services.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * A bounded local disk cache in front of a remote backend. Reads are served
+ * from the cache, fetching the whole object on a miss; concurrent misses on
+ * the same key share one fetch. The least recently read objects are evicted
+ * once the cache is over its size. Blobs never change once written, so a
+ * cached copy stays valid until the object is deleted.
+ * <p>
+ * Blobs are also stat'ed from the cache when it holds them, so showing a
+ * cached upload costs no round trip to the remote. The modification time
+ * reported then is the cached copy's; {@link #statUncached(String)}, which
+ * grace periods go by, always asks the remote.
+ */
+public class CachingStorageBackend implements StorageBackend {
+
+	private static final String TEMP_SUFFIX = ".fetch";
+
+	private final StorageBackend remote;
+
+	private final Path directory;
+
+	private final LocalStorageBackend local;
+
+	private final long maxBytes;
+
+	// access-ordered, so iteration starts with the least recently used entry
+	private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	private long totalBytes;
+
+	private final Map<String, CompletableFuture<Path>> fetches = new ConcurrentHashMap<>();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	public CachingStorageBackend(StorageBackend remote, Path directory, long maxBytes) throws IOException {
+		this.remote = remote;
+		this.directory = directory;
+		this.local = new LocalStorageBackend(directory);
+		this.maxBytes = maxBytes;
+		Files.createDirectories(directory);
+		List<Path> files;
+		try (Stream<Path> listing = Files.walk(directory)) {
+			files = listing.filter(Files::isRegularFile).collect(Collectors.toList());
+		}
+		for (Path file : files) {
+			if (file.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+				Files.deleteIfExists(file);
+			}
+		}
+		// the modification time is refreshed on every read, so it restores the LRU order after a restart
+		files.stream().filter(file -> !file.getFileName().toString().endsWith(TEMP_SUFFIX))
+				.sorted(Comparator.comparing(CachingStorageBackend::lastModified))
+				.forEach(file -> register(directory.relativize(file).toString().replace('\\', '/'), size(file)));
+		synchronized (this) {
+			evict();
+		}
+		System.out.println("Storage cache: " + entries.size() + " objects, " + totalBytes + " bytes in " + directory);
+	}
+
+	@Override
+	public BlobInfo stat(String key) throws IOException {
+		BlobInfo cached = cachedStat(key);
+		return cached != null ? cached : remote.stat(key);
+	}
+
+	@Override
+	public BlobInfo statUncached(String key) throws IOException {
+		return remote.stat(key);
+	}
+
+	@Override
+	public BlobInfo statAny(String... keys) throws IOException {
+		for (String key : keys) {
+			BlobInfo cached = cachedStat(key);
+			if (cached != null) {
+				return cached;
+			}
+		}
+		for (String key : keys) {
+			BlobInfo info = remote.stat(key);
+			if (info != null) {
+				return info;
+			}
+		}
+		return null;
+	}
+
+	private BlobInfo cachedStat(String key) {
+		Long size;
+		synchronized (this) {
+			size = entries.get(key);
+		}
+		if (size == null) {
+			return null;
+		}
+		try {
+			return new BlobInfo(key, size, Files.getLastModifiedTime(directory.resolve(key)).toMillis());
+		} catch (IOException e) {
+			// evicted in between
+			return null;
+		}
+	}
+
+	@Override
+	public InputStream open(String key) throws IOException {
+		cached(key);
+		try {
+			return local.open(key);
+		} catch (NoSuchFileException e) {
+			// evicted in between
+			cached(key);
+			return local.open(key);
+		}
+	}
+
+	@Override
+	public InputStream open(String key, long offset, long length) throws IOException {
+		cached(key);
+		try {
+			return local.open(key, offset, length);
+		} catch (NoSuchFileException e) {
+			cached(key);
+			return local.open(key, offset, length);
+		}
+	}
+
+	@Override
+	public PendingBlob create() throws IOException {
+		return remote.create();
+	}
+
+	@Override
+	public void touch(String key) throws IOException {
+		remote.touch(key);
+	}
+
+	@Override
+	public void delete(String key) throws IOException {
+		remote.delete(key);
+		remove(key);
+	}
+
+	/**
+	 * Null: a cached copy can be evicted, and its file deleted, at any time,
+	 * including after its path has been handed out.
+	 */
+	@Override
+	public Path localPath(String key) {
+		return null;
+	}
+
+	@Override
+	public List<BlobInfo> list(String after, int limit) throws IOException {
+		return remote.list(after, limit);
+	}
+
+	@Override
+	public boolean isTemporary(String key) {
+		return remote.isTemporary(key);
+	}
+
+	/**
+	 * The cached copy of an object, fetched first if needed.
+	 */
+	private Path cached(String key) throws IOException {
+		Path file = directory.resolve(key);
+		boolean cached;
+		synchronized (this) {
+			cached = entries.get(key) != null;
+		}
+		if (cached && Files.exists(file)) {
+			hits.incrementAndGet();
+			try {
+				Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+			} catch (IOException e) {
+				// recency is only a hint for the next restart
+			}
+			return file;
+		}
+		misses.incrementAndGet();
+		CompletableFuture<Path> fetch = new CompletableFuture<>();
+		CompletableFuture<Path> running = fetches.putIfAbsent(key, fetch);
+		if (running != null) {
+			return await(running, key);
+		}
+		try {
+			fetch.complete(fetch(key, file));
+		} catch (IOException | RuntimeException e) {
+			fetch.completeExceptionally(e);
+			throw e;
+		} finally {
+			fetches.remove(key);
+		}
+		return file;
+	}
+
+	private Path fetch(String key, Path file) throws IOException {
+		Files.createDirectories(file.getParent());
+		Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), TEMP_SUFFIX);
+		try {
+			try (InputStream input = remote.open(key); OutputStream output = Files.newOutputStream(temp)) {
+				input.transferTo(output);
+			}
+			try {
+				Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+			} catch (FileAlreadyExistsException e) {
+				Files.delete(temp);
+			}
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+		synchronized (this) {
+			register(key, size(file));
+			evict();
+		}
+		return file;
+	}
+
+	private static Path await(CompletableFuture<Path> fetch, String key) throws IOException {
+		try {
+			return fetch.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while fetching " + key, e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Could not fetch " + key + ": " + e.getCause().getMessage(), e.getCause());
+		}
+	}
+
+	private synchronized void remove(String key) {
+		Long size = entries.remove(key);
+		if (size != null) {
+			totalBytes -= size;
+		}
+		try {
+			Files.deleteIfExists(directory.resolve(key));
+		} catch (IOException e) {
+			System.out.println("Could not delete cached " + key + ": " + e.getMessage());
+		}
+	}
+
+	private synchronized void register(String key, long size) {
+		Long previous = entries.put(key, size);
+		if (previous != null) {
+			totalBytes -= previous;
+		}
+		totalBytes += size;
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+		// the newest entry stays even if it alone is over the limit, since a reader is about to open it
+		while (totalBytes > maxBytes && entries.size() > 1 && eldest.hasNext()) {
+			Map.Entry<String, Long> entry = eldest.next();
+			eldest.remove();
+			totalBytes -= entry.getValue();
+			try {
+				Files.deleteIfExists(directory.resolve(entry.getKey()));
+			} catch (IOException e) {
+				System.out.println("Could not evict cached " + entry.getKey());
+			}
+		}
+	}
+
+	/**
+	 * Registered by the storage configuration, since the cache is only known
+	 * as a {@link StorageBackend} there.
+	 */
+	public void bindTo(MeterRegistry registry) {
+		FunctionCounter.builder("ats.storage.cache.requests", hits, AtomicLong::get).tag("result", "hit")
+				.description("Blob reads served by the local cache").register(registry);
+		FunctionCounter.builder("ats.storage.cache.requests", misses, AtomicLong::get).tag("result", "miss")
+				.description("Blob reads that fetched from the remote store").register(registry);
+		Gauge.builder("ats.storage.cache.hit.ratio", this, CachingStorageBackend::hitRatio)
+				.description("Share of blob reads served by the local cache").register(registry);
+		Gauge.builder("ats.storage.cache.size", this, cache -> cache.getTotalBytes()).baseUnit("bytes")
+				.description("Bytes held by the local cache").register(registry);
+	}
+
+	private double hitRatio() {
+		long hit = hits.get();
+		long total = hit + misses.get();
+		return total == 0 ? 0 : (double) hit / total;
+	}
+
+	private synchronized long getTotalBytes() {
+		return totalBytes;
+	}
+
+	private static FileTime lastModified(Path file) {
+		try {
+			return Files.getLastModifiedTime(file);
+		} catch (IOException e) {
+			return FileTime.fromMillis(0);
+		}
+	}
+
+	private static long size(Path file) {
+		try {
+			return Files.size(file);
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+}
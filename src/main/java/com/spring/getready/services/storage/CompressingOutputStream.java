@@ -0,0 +1,102 @@
+package com.spring.getready.services.storage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPOutputStream;
+
+import com.spring.getready.services.upload.ContentTypeSniffer;
+
+/**
+ * Writes either gzip or the plain bytes, decided once the content type is
+ * known. The first bytes are held back until the sniffer has seen enough of
+ * them, or the stream ends, and then go out the chosen way.
+ */
+class CompressingOutputStream extends OutputStream {
+
+	private final OutputStream target;
+
+	private final BooleanSupplier shouldCompress;
+
+	private final int level;
+
+	private byte[] head = new byte[ContentTypeSniffer.SNIFF_LENGTH];
+
+	private int headLength;
+
+	private OutputStream output;
+
+	private boolean compressed;
+
+	CompressingOutputStream(OutputStream target, BooleanSupplier shouldCompress, int level) {
+		this.target = target;
+		this.shouldCompress = shouldCompress;
+		this.level = level;
+	}
+
+	boolean isCompressed() {
+		return compressed;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] buffer, int offset, int length) throws IOException {
+		if (output == null) {
+			int count = Math.min(length, head.length - headLength);
+			System.arraycopy(buffer, offset, head, headLength, count);
+			headLength += count;
+			offset += count;
+			length -= count;
+			if (headLength < head.length) {
+				return;
+			}
+			decide();
+		}
+		if (length > 0) {
+			output.write(buffer, offset, length);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (output != null) {
+			output.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if (output == null) {
+				decide();
+			}
+			if (output instanceof GZIPOutputStream) {
+				((GZIPOutputStream) output).finish();
+			}
+		} finally {
+			target.close();
+		}
+	}
+
+	private void decide() throws IOException {
+		// below a kilobyte the gzip header and trailer eat most of the saving
+		compressed = headLength == head.length && shouldCompress.getAsBoolean();
+		output = compressed ? new LeveledGzipOutputStream(target, level) : target;
+		output.write(head, 0, headLength);
+		head = null;
+	}
+
+	private static class LeveledGzipOutputStream extends GZIPOutputStream {
+
+		LeveledGzipOutputStream(OutputStream output, int level) throws IOException {
+			super(output, 8192);
+			def.setLevel(level);
+		}
+
+	}
+
+}
@@ -0,0 +1,257 @@
+package com.spring.getready.services.storage;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.spring.getready.services.storage.StorageBackend.PendingBlob;
+import com.spring.getready.services.upload.ContentTypeSniffer;
+import com.spring.getready.services.upload.DigestStage;
+import com.spring.getready.services.upload.SizeCounterStage;
+import com.spring.getready.services.upload.TypeCheckStage;
+import com.spring.getready.services.upload.UploadPipeline;
+import com.spring.getready.services.upload.UploadPolicy;
+import com.spring.getready.services.upload.UploadReceipt;
+import com.spring.getready.services.upload.UploadStage;
+
+/**
+ * The one place uploads are written. Content is stored once per SHA-256, as a
+ * blob under {@code ab/cd/<hash>} in the configured {@link StorageBackend},
+ * and every upload row carrying that hash refers to it; the original name
+ * and metadata stay in the row. Uploads are streamed through the upload
+ * pipeline's fixed buffer into a pending blob that is committed under its
+ * hash, or dropped if the blob already exists, so a duplicate costs one hash
+ * computation and no storage.
+ * <p>
+ * Rows stored before content addressing have no hash and keep their file in
+ * the flat upload directory, under their stored name.
+ * <p>
+ * Blobs of a type that compresses well, by sniffed content, are gzipped on
+ * the way in and keyed {@code <hash>.gz}; {@link #open(String, String)}
+ * inflates them again as they are read.
+ */
+@Service
+public class FileStorageService {
+
+	public static final String GZIP_SUFFIX = ".gz";
+
+	@Autowired
+	private StorageBackend blobBackend;
+
+	@Value("${file.upload-path}")
+	private String uploadPath;
+
+	@Value("${storage.blob-grace-hours:24}")
+	private long blobGraceHours;
+
+	@Value("${storage.compression-enabled:true}")
+	private boolean compressionEnabled;
+
+	// archives, DOCX, PDF and images are compressed already
+	@Value("${storage.compress-types:text/plain,application/json,application/msword}")
+	private Set<String> compressTypes;
+
+	@Value("${storage.compression-level:6}")
+	private int compressionLevel;
+
+	private StorageBackend legacyBackend;
+
+	@PostConstruct
+	public void init() {
+		legacyBackend = new LocalStorageBackend(Paths.get(uploadPath));
+	}
+
+	/**
+	 * A new stored name for an upload: a random UUID with the original
+	 * extension. It identifies the upload row, while the content is found by
+	 * its hash.
+	 */
+	public String newFileName(String originalFilename) {
+		int dot = originalFilename != null ? originalFilename.lastIndexOf('.') : -1;
+		return UUID.randomUUID().toString() + (dot >= 0 ? originalFilename.substring(dot) : "");
+	}
+
+	/**
+	 * Finds the stored bytes of an upload: its blob, possibly gzipped, or its
+	 * file in the flat upload directory for rows stored before content
+	 * addressing.
+	 *
+	 * @throws FileNotFoundException if they are gone
+	 */
+	public StoredBlob locate(String fileName, String sha256) throws IOException {
+		if (sha256 == null) {
+			BlobInfo legacy = legacyBackend.stat(fileName);
+			if (legacy == null) {
+				throw new FileNotFoundException(fileName);
+			}
+			return new StoredBlob(legacyBackend, legacy, false);
+		}
+		// a hash is stored one way or the other, never both
+		BlobInfo info = blobBackend.statAny(key(sha256, true), key(sha256, false));
+		if (info == null) {
+			throw new FileNotFoundException(fileName);
+		}
+		return new StoredBlob(blobBackend, info, info.getKey().endsWith(GZIP_SUFFIX));
+	}
+
+	public static String key(String sha256, boolean compressed) {
+		return sha256.substring(0, 2) + "/" + sha256.substring(2, 4) + "/" + sha256 + (compressed ? GZIP_SUFFIX : "");
+	}
+
+	/**
+	 * The key of something derived from a blob, such as a resized image. It
+	 * carries the blob's hash, so it is collected along with the blob.
+	 */
+	public static String variantKey(String sha256, String suffix) {
+		return key(sha256, false) + "." + suffix;
+	}
+
+	/**
+	 * The hash a blob or variant key was made from, or null if the key is
+	 * neither.
+	 */
+	public static String hashOf(String key) {
+		String name = key.substring(key.lastIndexOf('/') + 1);
+		int dot = name.indexOf('.');
+		String sha256 = dot < 0 ? name : name.substring(0, dot);
+		return sha256.matches("[0-9a-f]{64}") && key.startsWith(key(sha256, false)) ? sha256 : null;
+	}
+
+	/**
+	 * A stored variant of a blob, or null if there is none.
+	 */
+	public StoredBlob locateVariant(String sha256, String suffix) throws IOException {
+		BlobInfo info = blobBackend.stat(variantKey(sha256, suffix));
+		return info != null ? new StoredBlob(blobBackend, info, false) : null;
+	}
+
+	/**
+	 * Stores a variant of a blob, unless it exists already.
+	 */
+	public void storeVariant(String sha256, String suffix, byte[] content) throws IOException {
+		PendingBlob pending = blobBackend.create();
+		try {
+			try (OutputStream output = pending.getOutputStream()) {
+				output.write(content);
+			}
+			pending.commit(variantKey(sha256, suffix));
+		} catch (IOException | RuntimeException e) {
+			pending.abort();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads the original content of an upload, inflating it as it goes if the
+	 * blob is compressed.
+	 */
+	public InputStream open(String fileName, String sha256) throws IOException {
+		return locate(fileName, sha256).openContent();
+	}
+
+	/**
+	 * Stores an upload, returning its new name, hash, sniffed type and size.
+	 * An upload the policy does not allow fails within its first buffer.
+	 */
+	public UploadReceipt store(MultipartFile file, UploadPolicy policy) throws IOException {
+		String originalFilename = file.getOriginalFilename();
+		ContentTypeSniffer sniffer = new ContentTypeSniffer();
+		SizeCounterStage size = new SizeCounterStage();
+		String sha256;
+		try (InputStream input = file.getInputStream()) {
+			sha256 = write(input, Arrays.asList(sniffer, new TypeCheckStage(sniffer, originalFilename, policy), size));
+		}
+		return new UploadReceipt(null, newFileName(originalFilename), originalFilename, sha256,
+				sniffer.getContentType(), size.getSize());
+	}
+
+	/**
+	 * Streams the input into the blob store, handing every buffer to the
+	 * stages on the way, and returns its SHA-256. The blob appears only once
+	 * everything is written and every stage has finished; on failure nothing
+	 * is left behind.
+	 */
+	public String write(InputStream input, List<UploadStage> stages) throws IOException {
+		PendingBlob pending = blobBackend.create();
+		try {
+			DigestStage digest = new DigestStage();
+			ContentTypeSniffer sniffer = new ContentTypeSniffer();
+			List<UploadStage> all = new ArrayList<>(stages);
+			all.add(0, digest);
+			all.add(1, sniffer);
+			CompressingOutputStream output = new CompressingOutputStream(pending.getOutputStream(),
+					() -> compressionEnabled && compressTypes.contains(sniffer.getContentType()), compressionLevel);
+			try (output) {
+				UploadPipeline.copy(input, output, all);
+			}
+			String sha256 = digest.getHex();
+			String other = key(sha256, !output.isCompressed());
+			if (blobBackend.statUncached(other) != null) {
+				// stored the other way, before the compression settings changed
+				pending.abort();
+				blobBackend.touch(other);
+			} else if (!pending.commit(key(sha256, output.isCompressed()))) {
+				// restarts the grace period, since this upload may not have its row yet
+				blobBackend.touch(key(sha256, output.isCompressed()));
+			}
+			return sha256;
+		} catch (IOException | RuntimeException e) {
+			pending.abort();
+			throw e;
+		}
+	}
+
+	/**
+	 * Whether a blob was last written, or matched by a duplicate upload, longer
+	 * ago than the grace period. Uploads register their row within it, so a
+	 * blob no row refers to by then is garbage.
+	 */
+	public boolean isPastGrace(String sha256) throws IOException {
+		BlobInfo info = blobBackend.statUncached(key(sha256, true));
+		if (info == null) {
+			info = blobBackend.statUncached(key(sha256, false));
+		}
+		if (info == null) {
+			throw new FileNotFoundException(sha256);
+		}
+		long age = System.currentTimeMillis() - info.getLastModified();
+		return age > blobGraceHours * 60 * 60 * 1000;
+	}
+
+	/**
+	 * Deletes the content of an upload. For a blob, callers make sure no row
+	 * refers to it and it is past its grace period.
+	 *
+	 * @return the bytes freed
+	 */
+	public long delete(String fileName, String sha256) throws IOException {
+		if (sha256 == null) {
+			return delete(legacyBackend, fileName);
+		}
+		return delete(blobBackend, key(sha256, true)) + delete(blobBackend, key(sha256, false));
+	}
+
+	private static long delete(StorageBackend backend, String key) throws IOException {
+		BlobInfo info = backend.stat(key);
+		if (info == null) {
+			return 0;
+		}
+		backend.delete(key);
+		return info.getSize();
+	}
+
+}
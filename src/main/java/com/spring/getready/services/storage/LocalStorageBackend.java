@@ -0,0 +1,181 @@
+package com.spring.getready.services.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps objects as files under a root directory, the key being the relative
+ * path. Pending blobs are temporary files in the root, renamed into place.
+ */
+public class LocalStorageBackend implements StorageBackend {
+
+	public static final String TEMP_PREFIX = ".upload-";
+
+	public static final String TEMP_SUFFIX = ".tmp";
+
+	private final Path root;
+
+	public LocalStorageBackend(Path root) {
+		this.root = root;
+	}
+
+	public Path getRoot() {
+		return root;
+	}
+
+	@Override
+	public BlobInfo stat(String key) throws IOException {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(root.resolve(key), BasicFileAttributes.class);
+			return new BlobInfo(key, attributes.size(), attributes.lastModifiedTime().toMillis());
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public InputStream open(String key) throws IOException {
+		return Files.newInputStream(root.resolve(key));
+	}
+
+	@Override
+	public InputStream open(String key, long offset, long length) throws IOException {
+		SeekableByteChannel channel = Files.newByteChannel(root.resolve(key));
+		try {
+			channel.position(offset);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		return new BoundedInputStream(Channels.newInputStream(channel), length);
+	}
+
+	@Override
+	public PendingBlob create() throws IOException {
+		Files.createDirectories(root);
+		Path temp = Files.createTempFile(root, TEMP_PREFIX, TEMP_SUFFIX);
+		OutputStream output;
+		try {
+			output = Files.newOutputStream(temp);
+		} catch (IOException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+		return new PendingBlob() {
+
+			private boolean committed;
+
+			@Override
+			public OutputStream getOutputStream() {
+				return output;
+			}
+
+			@Override
+			public boolean commit(String key) throws IOException {
+				Path target = root.resolve(key);
+				committed = true;
+				if (Files.exists(target)) {
+					Files.delete(temp);
+					return false;
+				}
+				Files.createDirectories(target.getParent());
+				try {
+					Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(temp, target);
+				} catch (FileAlreadyExistsException e) {
+					// an identical upload got there first
+					Files.delete(temp);
+					return false;
+				}
+				return true;
+			}
+
+			@Override
+			public void abort() {
+				if (committed) {
+					return;
+				}
+				try {
+					output.close();
+					Files.deleteIfExists(temp);
+				} catch (IOException e) {
+					System.out.println("Could not delete " + temp + ": " + e.getMessage());
+				}
+			}
+
+		};
+	}
+
+	@Override
+	public void touch(String key) throws IOException {
+		Files.setLastModifiedTime(root.resolve(key), FileTime.fromMillis(System.currentTimeMillis()));
+	}
+
+	@Override
+	public void delete(String key) throws IOException {
+		Files.deleteIfExists(root.resolve(key));
+	}
+
+	@Override
+	public Path localPath(String key) {
+		return root.resolve(key);
+	}
+
+	@Override
+	public List<BlobInfo> list(String after, int limit) throws IOException {
+		List<BlobInfo> blobs = new ArrayList<>();
+		if (Files.isDirectory(root)) {
+			list(root, "", after == null ? "" : after, limit, blobs);
+		}
+		return blobs;
+	}
+
+	private void list(Path directory, String prefix, String after, int limit, List<BlobInfo> blobs) throws IOException {
+		List<String> names;
+		try (Stream<Path> listing = Files.list(directory)) {
+			// a directory sorts as its keys do, with the separator
+			names = listing.map(path -> path.getFileName().toString() + (Files.isDirectory(path) ? "/" : ""))
+					.sorted(Comparator.naturalOrder()).collect(Collectors.toList());
+		}
+		for (String name : names) {
+			if (blobs.size() >= limit) {
+				return;
+			}
+			String key = prefix + name;
+			if (name.endsWith("/")) {
+				// skipped whole if every key in it comes before the cursor
+				if (key.compareTo(after) > 0 || after.startsWith(key)) {
+					list(directory.resolve(name.substring(0, name.length() - 1)), key, after, limit, blobs);
+				}
+			} else if (key.compareTo(after) > 0) {
+				BlobInfo info = stat(key);
+				if (info != null) {
+					blobs.add(info);
+				}
+			}
+		}
+	}
+
+	@Override
+	public boolean isTemporary(String key) {
+		return key.indexOf('/') < 0 && key.startsWith(TEMP_PREFIX) && key.endsWith(TEMP_SUFFIX);
+	}
+
+}
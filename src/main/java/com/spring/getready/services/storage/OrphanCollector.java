@@ -0,0 +1,261 @@
+package com.spring.getready.services.storage;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.spring.getready.repository.UploadFileRepository;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Reclaims uploads nothing refers to, in the background. Each pass walks
+ * {@code upload_files} and then the blob store in key order, one batch at a
+ * time from where the previous batch stopped:
+ * <ul>
+ * <li>upload rows no application, profile, assignment or submission refers
+ * to are deleted once released or older than the grace period, and so is
+ * their content if no other row shares it;</li>
+ * <li>blobs no live row refers to, such as those of failed applications, and
+ * their resized variants are deleted once past the grace period, as are
+ * temporaries of pending blobs whose upload died.</li>
+ * </ul>
+ * Every query and storage call waits its turn under a fixed rate, so a pass
+ * over a large store spreads out rather than competing with live uploads.
+ */
+@Component
+public class OrphanCollector implements MeterBinder {
+
+	private static final String UNREFERENCED = "NOT EXISTS (SELECT 1 FROM applications a WHERE a.resume_ref = u.file_id) "
+			+ "AND NOT EXISTS (SELECT 1 FROM profile_info p WHERE p.profile_picture = u.file_id) "
+			+ "AND NOT EXISTS (SELECT 1 FROM assignment_details d WHERE d.reference_file_ref = u.file_id) "
+			+ "AND NOT EXISTS (SELECT 1 FROM submission_details s WHERE s.submission_file_ref = u.file_id)";
+
+	private static final String SELECT_ORPHAN_ROWS = "SELECT u.file_id, u.file_name, u.sha256 FROM upload_files u "
+			+ "WHERE u.file_id > ? AND (u.is_deleted = TRUE OR u.uploaded_on < ?) AND " + UNREFERENCED
+			+ " ORDER BY u.file_id LIMIT ?";
+
+	// checked again, in case the row was picked up since it was selected
+	private static final String DELETE_ORPHAN_ROW = "DELETE FROM upload_files u WHERE u.file_id = ? AND " + UNREFERENCED;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private UploadFileRepository uploadFileRepository;
+
+	@Autowired
+	private FileStorageService fileStorageService;
+
+	@Autowired
+	private StorageBackend blobBackend;
+
+	@Value("${storage.gc.enabled:true}")
+	private boolean enabled;
+
+	@Value("${storage.gc.interval-minutes:60}")
+	private long intervalMinutes;
+
+	@Value("${storage.gc.batch-size:200}")
+	private int batchSize;
+
+	@Value("${storage.gc.operations-per-second:20}")
+	private int operationsPerSecond;
+
+	@Value("${storage.blob-grace-hours:24}")
+	private long graceHours;
+
+	private final AtomicLong reclaimedBytes = new AtomicLong();
+
+	private final AtomicLong deletedRows = new AtomicLong();
+
+	private final AtomicLong deletedBlobs = new AtomicLong();
+
+	private final AtomicLong deletedTemporaries = new AtomicLong();
+
+	private long nextOperation;
+
+	private volatile boolean running;
+
+	private Thread worker;
+
+	@PostConstruct
+	public void start() {
+		if (!enabled) {
+			System.out.println("Orphan collection is disabled");
+			return;
+		}
+		running = true;
+		worker = new Thread(this::run, "orphan-collector");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	@PreDestroy
+	public void stop() {
+		running = false;
+		if (worker != null) {
+			worker.interrupt();
+		}
+	}
+
+	private void run() {
+		while (running) {
+			try {
+				Thread.sleep(TimeUnit.MINUTES.toMillis(intervalMinutes));
+				collect();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (RuntimeException e) {
+				System.out.println("Orphan collection failed, retrying next pass: " + e.getMessage());
+			}
+		}
+	}
+
+	private void collect() throws InterruptedException {
+		long started = System.currentTimeMillis();
+		long bytes = reclaimedBytes.get();
+		long rows = collectRows(started - TimeUnit.HOURS.toMillis(graceHours));
+		long blobs = collectBlobs(started - TimeUnit.HOURS.toMillis(graceHours));
+		System.out.println("Orphan collection: " + rows + " upload rows and " + blobs + " objects deleted, "
+				+ (reclaimedBytes.get() - bytes) + " bytes reclaimed in " + (System.currentTimeMillis() - started) + " ms");
+	}
+
+	private long collectRows(long graceStart) throws InterruptedException {
+		long deleted = 0;
+		int after = 0;
+		List<Map<String, Object>> batch;
+		do {
+			pace();
+			batch = jdbcTemplate.queryForList(SELECT_ORPHAN_ROWS, after, new Timestamp(graceStart), batchSize);
+			for (Map<String, Object> row : batch) {
+				int fileId = ((Number) row.get("file_id")).intValue();
+				after = fileId;
+				pace();
+				if (jdbcTemplate.update(DELETE_ORPHAN_ROW, fileId) == 0) {
+					continue;
+				}
+				deleted++;
+				deletedRows.incrementAndGet();
+				reclaimContent((String) row.get("file_name"), (String) row.get("sha256"));
+			}
+		} while (running && batch.size() == batchSize);
+		return deleted;
+	}
+
+	/**
+	 * Deletes the content of a deleted row, unless another row shares it or an
+	 * identical upload matched it recently; the blob pass gets to it then.
+	 */
+	private void reclaimContent(String fileName, String sha256) throws InterruptedException {
+		try {
+			if (sha256 != null) {
+				pace();
+				if (uploadFileRepository.countBySha256AndIsDeletedFalse(sha256) > 0) {
+					return;
+				}
+				pace();
+				if (!fileStorageService.isPastGrace(sha256)) {
+					return;
+				}
+			}
+			pace();
+			reclaimedBytes.addAndGet(fileStorageService.delete(fileName, sha256));
+		} catch (FileNotFoundException e) {
+			// already gone
+		} catch (IOException e) {
+			System.out.println("Could not delete the content of " + fileName + ": " + e.getMessage());
+		}
+	}
+
+	private long collectBlobs(long graceStart) throws InterruptedException {
+		long deleted = 0;
+		String after = null;
+		List<BlobInfo> batch;
+		do {
+			pace();
+			try {
+				batch = blobBackend.list(after, batchSize);
+			} catch (IOException e) {
+				System.out.println("Could not list blobs after " + after + ": " + e.getMessage());
+				return deleted;
+			}
+			for (BlobInfo blob : batch) {
+				after = blob.getKey();
+				if (blob.getLastModified() >= graceStart) {
+					continue;
+				}
+				try {
+					if (blobBackend.isTemporary(blob.getKey())) {
+						pace();
+						blobBackend.delete(blob.getKey());
+						deletedTemporaries.incrementAndGet();
+					} else {
+						String sha256 = FileStorageService.hashOf(blob.getKey());
+						if (sha256 == null) {
+							continue;
+						}
+						pace();
+						if (uploadFileRepository.countBySha256AndIsDeletedFalse(sha256) > 0) {
+							continue;
+						}
+						// a duplicate upload may have touched it since it was listed
+						pace();
+						BlobInfo current = blobBackend.statUncached(blob.getKey());
+						if (current == null || current.getLastModified() >= graceStart) {
+							continue;
+						}
+						pace();
+						blobBackend.delete(blob.getKey());
+						deletedBlobs.incrementAndGet();
+					}
+					deleted++;
+					reclaimedBytes.addAndGet(blob.getSize());
+				} catch (IOException e) {
+					System.out.println("Could not delete " + blob.getKey() + ": " + e.getMessage());
+				}
+			}
+		} while (running && batch.size() == batchSize);
+		return deleted;
+	}
+
+	/**
+	 * Waits until the next operation is allowed under the rate limit.
+	 */
+	private void pace() throws InterruptedException {
+		long now = System.nanoTime();
+		if (nextOperation - now > 0) {
+			TimeUnit.NANOSECONDS.sleep(nextOperation - now);
+			now = nextOperation;
+		}
+		nextOperation = now + TimeUnit.SECONDS.toNanos(1) / Math.max(operationsPerSecond, 1);
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		FunctionCounter.builder("ats.storage.gc.reclaimed", reclaimedBytes, AtomicLong::get).baseUnit("bytes")
+				.description("Bytes of unreferenced uploads deleted by the orphan collector").register(registry);
+		FunctionCounter.builder("ats.storage.gc.deleted", deletedRows, AtomicLong::get).tag("kind", "row")
+				.description("Unreferenced upload rows deleted").register(registry);
+		FunctionCounter.builder("ats.storage.gc.deleted", deletedBlobs, AtomicLong::get).tag("kind", "blob")
+				.description("Unreferenced blobs deleted").register(registry);
+		FunctionCounter.builder("ats.storage.gc.deleted", deletedTemporaries, AtomicLong::get).tag("kind", "temporary")
+				.description("Temporaries of abandoned uploads deleted").register(registry);
+	}
+
+}
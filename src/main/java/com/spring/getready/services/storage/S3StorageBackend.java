@@ -0,0 +1,318 @@
+package com.spring.getready.services.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.MetadataDirective;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+/**
+ * Keeps objects in an S3-compatible bucket, such as MinIO, so that every
+ * instance sees the same uploads and they survive redeploys.
+ * <p>
+ * A pending blob buffers up to a part in memory, in a buffer that grows with
+ * the content, so small uploads stay small. Content that fits in one
+ * part, which is nearly every resume, is put straight under its key on
+ * commit. Larger content is streamed as a multipart upload to a temporary
+ * key while it is written, and copied to its key on commit.
+ */
+public class S3StorageBackend implements StorageBackend {
+
+	public static final String TEMP_PREFIX = "tmp/";
+
+	// the smallest part S3 accepts, except for the last one
+	private static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+	private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+	private final S3Client client;
+
+	private final String bucket;
+
+	private final String prefix;
+
+	private final int partSize;
+
+	public S3StorageBackend(S3Client client, String bucket, String prefix, int partSize) {
+		this.client = client;
+		this.bucket = bucket;
+		this.prefix = prefix == null || prefix.isEmpty() || prefix.endsWith("/") ? prefix : prefix + "/";
+		this.partSize = Math.max(partSize, MIN_PART_SIZE);
+	}
+
+	@Override
+	public BlobInfo stat(String key) throws IOException {
+		try {
+			HeadObjectResponse head = client.headObject(HeadObjectRequest.builder().bucket(bucket).key(object(key)).build());
+			Instant lastModified = head.lastModified();
+			return new BlobInfo(key, head.contentLength(), lastModified != null ? lastModified.toEpochMilli() : 0);
+		} catch (S3Exception e) {
+			if (e.statusCode() == 404) {
+				return null;
+			}
+			throw new IOException("Could not stat " + key + ": " + e.getMessage(), e);
+		} catch (SdkException e) {
+			throw new IOException("Could not stat " + key + ": " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public InputStream open(String key) throws IOException {
+		return get(GetObjectRequest.builder().bucket(bucket).key(object(key)).build(), key);
+	}
+
+	@Override
+	public InputStream open(String key, long offset, long length) throws IOException {
+		if (length <= 0) {
+			return InputStream.nullInputStream();
+		}
+		String range = "bytes=" + offset + "-" + (offset + length - 1);
+		return get(GetObjectRequest.builder().bucket(bucket).key(object(key)).range(range).build(), key);
+	}
+
+	private InputStream get(GetObjectRequest request, String key) throws IOException {
+		try {
+			return client.getObject(request);
+		} catch (S3Exception e) {
+			if (e.statusCode() == 404) {
+				throw new FileNotFoundException(key);
+			}
+			throw new IOException("Could not read " + key + ": " + e.getMessage(), e);
+		} catch (SdkException e) {
+			throw new IOException("Could not read " + key + ": " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public PendingBlob create() {
+		return new MultipartBlob();
+	}
+
+	@Override
+	public void touch(String key) throws IOException {
+		// S3 cannot set the modification time; copying an object onto itself renews it
+		try {
+			client.copyObject(CopyObjectRequest.builder().sourceBucket(bucket).sourceKey(object(key))
+					.destinationBucket(bucket).destinationKey(object(key))
+					.metadataDirective(MetadataDirective.REPLACE).build());
+		} catch (SdkException e) {
+			throw new IOException("Could not touch " + key + ": " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void delete(String key) throws IOException {
+		try {
+			client.deleteObject(DeleteObjectRequest.builder().bucket(bucket).key(object(key)).build());
+		} catch (SdkException e) {
+			throw new IOException("Could not delete " + key + ": " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public Path localPath(String key) {
+		return null;
+	}
+
+	@Override
+	public List<BlobInfo> list(String after, int limit) throws IOException {
+		ListObjectsV2Request.Builder request = ListObjectsV2Request.builder().bucket(bucket).maxKeys(limit);
+		if (prefix != null) {
+			request.prefix(prefix);
+		}
+		if (after != null && !after.isEmpty()) {
+			request.startAfter(object(after));
+		}
+		try {
+			List<BlobInfo> blobs = new ArrayList<>();
+			for (S3Object object : client.listObjectsV2(request.build()).contents()) {
+				Instant lastModified = object.lastModified();
+				blobs.add(new BlobInfo(object.key().substring(prefix == null ? 0 : prefix.length()), object.size(),
+						lastModified != null ? lastModified.toEpochMilli() : 0));
+			}
+			return blobs;
+		} catch (SdkException e) {
+			throw new IOException("Could not list " + bucket + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Only content larger than a part leaves a temporary object, and only if
+	 * the instance went away between completing and committing it. Parts of
+	 * uploads that were never completed are not objects; a bucket lifecycle
+	 * rule aborting incomplete multipart uploads takes care of those.
+	 */
+	@Override
+	public boolean isTemporary(String key) {
+		return key.startsWith(TEMP_PREFIX);
+	}
+
+	private String object(String key) {
+		return prefix == null ? key : prefix + key;
+	}
+
+	private class MultipartBlob extends OutputStream implements PendingBlob {
+
+		private final String tempKey = TEMP_PREFIX + UUID.randomUUID();
+
+		private final List<CompletedPart> parts = new ArrayList<>();
+
+		// grown as data arrives, so a small upload never holds a whole part
+		private byte[] buffer = new byte[Math.min(INITIAL_BUFFER_SIZE, partSize)];
+
+		private int buffered;
+
+		private String uploadId;
+
+		private boolean closed;
+
+		private boolean finished;
+
+		@Override
+		public OutputStream getOutputStream() {
+			return this;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] data, int offset, int length) throws IOException {
+			while (length > 0) {
+				if (buffered == buffer.length) {
+					buffer = Arrays.copyOf(buffer, (int) Math.min((long) buffer.length * 2, partSize));
+				}
+				int count = Math.min(length, buffer.length - buffered);
+				System.arraycopy(data, offset, buffer, buffered, count);
+				buffered += count;
+				offset += count;
+				length -= count;
+				if (buffered == partSize) {
+					uploadPart();
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			if (uploadId == null) {
+				// fits in one part, which is put under its key on commit
+				return;
+			}
+			if (buffered > 0) {
+				uploadPart();
+			}
+			try {
+				client.completeMultipartUpload(CompleteMultipartUploadRequest.builder().bucket(bucket)
+						.key(object(tempKey)).uploadId(uploadId)
+						.multipartUpload(CompletedMultipartUpload.builder().parts(parts).build()).build());
+				uploadId = null;
+			} catch (SdkException e) {
+				throw new IOException("Could not complete upload to " + tempKey + ": " + e.getMessage(), e);
+			}
+		}
+
+		private void uploadPart() throws IOException {
+			try {
+				if (uploadId == null) {
+					uploadId = client.createMultipartUpload(
+							CreateMultipartUploadRequest.builder().bucket(bucket).key(object(tempKey)).build()).uploadId();
+				}
+				int partNumber = parts.size() + 1;
+				String eTag = client.uploadPart(UploadPartRequest.builder().bucket(bucket).key(object(tempKey))
+						.uploadId(uploadId).partNumber(partNumber).contentLength((long) buffered).build(),
+						buffered()).eTag();
+				parts.add(CompletedPart.builder().partNumber(partNumber).eTag(eTag).build());
+				buffered = 0;
+			} catch (SdkException e) {
+				throw new IOException("Could not upload part to " + tempKey + ": " + e.getMessage(), e);
+			}
+		}
+
+		/**
+		 * The buffered bytes as a request body, read in place; the stream can
+		 * be reset, so the SDK can retry with it.
+		 */
+		private RequestBody buffered() {
+			return RequestBody.fromInputStream(new ByteArrayInputStream(buffer, 0, buffered), buffered);
+		}
+
+		@Override
+		public boolean commit(String key) throws IOException {
+			if (!closed) {
+				throw new IllegalStateException("Pending blob is still open");
+			}
+			try {
+				if (stat(key) != null) {
+					return false;
+				}
+				if (parts.isEmpty()) {
+					client.putObject(PutObjectRequest.builder().bucket(bucket).key(object(key)).build(),
+							buffered());
+				} else {
+					client.copyObject(CopyObjectRequest.builder().sourceBucket(bucket).sourceKey(object(tempKey))
+							.destinationBucket(bucket).destinationKey(object(key)).build());
+				}
+				return true;
+			} catch (SdkException e) {
+				throw new IOException("Could not store " + key + ": " + e.getMessage(), e);
+			} finally {
+				abort();
+			}
+		}
+
+		@Override
+		public void abort() {
+			if (finished) {
+				return;
+			}
+			finished = true;
+			buffer = null;
+			try {
+				if (uploadId != null) {
+					client.abortMultipartUpload(AbortMultipartUploadRequest.builder().bucket(bucket)
+							.key(object(tempKey)).uploadId(uploadId).build());
+				} else if (!parts.isEmpty()) {
+					client.deleteObject(DeleteObjectRequest.builder().bucket(bucket).key(object(tempKey)).build());
+				}
+			} catch (SdkException e) {
+				// a bucket lifecycle rule on tmp/ cleans up what is left
+				System.out.println("Could not clean up " + tempKey + ": " + e.getMessage());
+			}
+		}
+
+	}
+
+}
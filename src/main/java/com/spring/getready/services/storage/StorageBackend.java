@@ -0,0 +1,98 @@
+package com.spring.getready.services.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Where blobs are kept, addressed by key. New content is written to a
+ * pending blob first, since its key is the hash of what is being written,
+ * and committed under that key once it is complete.
+ */
+public interface StorageBackend {
+
+	/**
+	 * @return the size and last modification of the object, or null if it
+	 *         does not exist
+	 */
+	BlobInfo stat(String key) throws IOException;
+
+	/**
+	 * Like {@link #stat(String)}, but always asked of the store itself. A
+	 * cache answers {@code stat} from the copies it holds, with their own
+	 * modification times; grace periods, and checks for an existing object
+	 * before writing one, go by this instead.
+	 */
+	default BlobInfo statUncached(String key) throws IOException {
+		return stat(key);
+	}
+
+	/**
+	 * The first of the keys that exists, or null if none does. A cache
+	 * answers from the copies it holds before asking the store about any key.
+	 */
+	default BlobInfo statAny(String... keys) throws IOException {
+		for (String key : keys) {
+			BlobInfo info = stat(key);
+			if (info != null) {
+				return info;
+			}
+		}
+		return null;
+	}
+
+	InputStream open(String key) throws IOException;
+
+	/**
+	 * Reads {@code length} bytes from {@code offset}, fetching only that range.
+	 */
+	InputStream open(String key, long offset, long length) throws IOException;
+
+	PendingBlob create() throws IOException;
+
+	/**
+	 * Marks the object as modified now.
+	 */
+	void touch(String key) throws IOException;
+
+	void delete(String key) throws IOException;
+
+	/**
+	 * The object as a local file, which stays in place until the object is
+	 * deleted, or null if the backend does not keep its objects on local disk.
+	 */
+	Path localPath(String key);
+
+	/**
+	 * Up to {@code limit} objects whose keys sort after {@code after}, in key
+	 * order, so that a long listing can be taken in batches.
+	 */
+	List<BlobInfo> list(String after, int limit) throws IOException;
+
+	/**
+	 * Whether the key is left over from a pending blob rather than a blob.
+	 */
+	boolean isTemporary(String key);
+
+	interface PendingBlob {
+
+		OutputStream getOutputStream();
+
+		/**
+		 * Stores what was written under the key, once the output is closed.
+		 *
+		 * @return false, dropping the pending content, if an object already
+		 *         exists under the key
+		 */
+		boolean commit(String key) throws IOException;
+
+		/**
+		 * Drops the pending content; does nothing after a commit.
+		 */
+		void abort();
+
+	}
+
+}
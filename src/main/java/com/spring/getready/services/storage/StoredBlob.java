@@ -0,0 +1,119 @@
+package com.spring.getready.services.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The stored bytes of an upload as they are: possibly gzipped, in whichever
+ * backend holds them.
+ */
+public class StoredBlob {
+
+	private final StorageBackend backend;
+
+	private final BlobInfo info;
+
+	private final boolean compressed;
+
+	StoredBlob(StorageBackend backend, BlobInfo info, boolean compressed) {
+		this.backend = backend;
+		this.info = info;
+		this.compressed = compressed;
+	}
+
+	public String getKey() {
+		return info.getKey();
+	}
+
+	/**
+	 * The size as stored, compressed or not.
+	 */
+	public long getSize() {
+		return info.getSize();
+	}
+
+	public long getLastModified() {
+		return info.getLastModified();
+	}
+
+	/**
+	 * Whether the bytes are gzip rather than the upload itself.
+	 */
+	public boolean isCompressed() {
+		return compressed;
+	}
+
+	public InputStream open() throws IOException {
+		return backend.open(info.getKey());
+	}
+
+	/**
+	 * Reads the upload itself, inflating the bytes if they are gzipped.
+	 */
+	public InputStream openContent() throws IOException {
+		InputStream input = open();
+		if (!compressed) {
+			return input;
+		}
+		try {
+			return new GZIPInputStream(input, 8192);
+		} catch (IOException e) {
+			input.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads part of the upload itself. Inflated bytes are not addressable, so
+	 * for a gzipped blob everything before the range is inflated and skipped.
+	 */
+	public InputStream openContent(long offset, long length) throws IOException {
+		if (!compressed) {
+			return open(offset, length);
+		}
+		InputStream input = openContent();
+		try {
+			long skipped = input.skip(offset);
+			if (skipped < offset) {
+				throw new IOException("Blob " + info.getKey() + " is shorter than " + offset + " bytes");
+			}
+		} catch (IOException e) {
+			input.close();
+			throw e;
+		}
+		return new BoundedInputStream(input, length);
+	}
+
+	/**
+	 * The size of the upload itself. For gzip it is read from the trailer,
+	 * which holds it modulo 4 GB; uploads are far smaller.
+	 */
+	public long getContentLength() throws IOException {
+		if (!compressed) {
+			return info.getSize();
+		}
+		byte[] trailer;
+		try (InputStream input = open(info.getSize() - 4, 4)) {
+			trailer = input.readNBytes(4);
+		}
+		if (trailer.length < 4) {
+			throw new IOException("Truncated gzip blob " + info.getKey());
+		}
+		return (trailer[0] & 0xFF) | (trailer[1] & 0xFF) << 8 | (trailer[2] & 0xFF) << 16
+				| (long) (trailer[3] & 0xFF) << 24;
+	}
+
+	public InputStream open(long offset, long length) throws IOException {
+		return backend.open(info.getKey(), offset, length);
+	}
+
+	/**
+	 * The bytes as a local file, or null if the backend is remote.
+	 */
+	public Path getLocalPath() {
+		return backend.localPath(info.getKey());
+	}
+
+}
@@ -0,0 +1,116 @@
+package com.spring.getready.services.storage;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Records when uploads were last read in {@code upload_files.last_access_on}.
+ * Reads only note the time in memory; the latest time of each upload is
+ * written periodically in one batch, so a busy resume costs one update per
+ * interval rather than one per view.
+ */
+@Component
+public class UploadAccessRecorder {
+
+	private static final String UPDATE_LAST_ACCESS = "UPDATE upload_files SET last_access_on = ? "
+			+ "WHERE file_id = ? AND (last_access_on IS NULL OR last_access_on < ?)";
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Value("${storage.access-flush-seconds:60}")
+	private long flushSeconds;
+
+	private final Map<Integer, Long> pending = new ConcurrentHashMap<>();
+
+	private volatile boolean running;
+
+	private Thread worker;
+
+	@PostConstruct
+	public void start() {
+		running = true;
+		worker = new Thread(this::run, "upload-access-flush");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	public void recordAccess(Integer fileId) {
+		if (fileId != null) {
+			pending.merge(fileId, System.currentTimeMillis(), Math::max);
+		}
+	}
+
+	@PreDestroy
+	public void stop() {
+		running = false;
+		if (worker != null) {
+			worker.interrupt();
+		}
+		flush();
+	}
+
+	private void run() {
+		while (running) {
+			try {
+				Thread.sleep(flushSeconds * 1000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			flush();
+		}
+	}
+
+	private synchronized void flush() {
+		if (pending.isEmpty()) {
+			return;
+		}
+		List<Map.Entry<Integer, Long>> batch = new ArrayList<>();
+		for (Integer fileId : new ArrayList<>(pending.keySet())) {
+			Long accessedOn = pending.remove(fileId);
+			if (accessedOn != null) {
+				batch.add(Map.entry(fileId, accessedOn));
+			}
+		}
+		try {
+			jdbcTemplate.batchUpdate(UPDATE_LAST_ACCESS, new BatchPreparedStatementSetter() {
+
+				@Override
+				public void setValues(PreparedStatement statement, int i) throws SQLException {
+					Timestamp accessedOn = new Timestamp(batch.get(i).getValue());
+					statement.setTimestamp(1, accessedOn);
+					statement.setInt(2, batch.get(i).getKey());
+					statement.setTimestamp(3, accessedOn);
+				}
+
+				@Override
+				public int getBatchSize() {
+					return batch.size();
+				}
+
+			});
+		} catch (RuntimeException e) {
+			// keep them for the next flush, unless a newer read has been noted since
+			for (Map.Entry<Integer, Long> entry : batch) {
+				pending.merge(entry.getKey(), entry.getValue(), Math::max);
+			}
+			System.out.println("Could not record upload access times, will retry: " + e.getMessage());
+		}
+	}
+
+}
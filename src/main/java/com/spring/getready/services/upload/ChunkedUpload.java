@@ -0,0 +1,163 @@
+package com.spring.getready.services.upload;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * An upload session: a file preallocated at its final size, which chunks are
+ * written into at their offsets, and the byte ranges received so far. The
+ * session is saved next to the file, so it survives a restart.
+ */
+public class ChunkedUpload {
+
+	private final String id;
+
+	private final String owner;
+
+	private final String fileName;
+
+	private final long size;
+
+	private final UploadPolicy policy;
+
+	private final Path file;
+
+	// start of each received range to its end, exclusive; adjacent ranges are merged
+	private final TreeMap<Long, Long> ranges = new TreeMap<>();
+
+	private boolean typeChecked;
+
+	private long lastWrite;
+
+	ChunkedUpload(String id, String owner, String fileName, long size, UploadPolicy policy, Path file) {
+		this.id = id;
+		this.owner = owner;
+		this.fileName = fileName;
+		this.size = size;
+		this.policy = policy;
+		this.file = file;
+		this.lastWrite = System.currentTimeMillis();
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getOwner() {
+		return owner;
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public UploadPolicy getPolicy() {
+		return policy;
+	}
+
+	Path getFile() {
+		return file;
+	}
+
+	/**
+	 * How much of the upload has been received without a gap from its
+	 * start, which is where the client resumes.
+	 */
+	public synchronized long getOffset() {
+		Long end = ranges.get(0L);
+		return end != null ? end : 0;
+	}
+
+	public synchronized boolean isComplete() {
+		return getOffset() == size;
+	}
+
+	synchronized long getLastWrite() {
+		return lastWrite;
+	}
+
+	synchronized boolean isTypeChecked() {
+		return typeChecked;
+	}
+
+	synchronized void typeChecked() {
+		typeChecked = true;
+	}
+
+	synchronized void received(long start, long end) {
+		lastWrite = System.currentTimeMillis();
+		Map.Entry<Long, Long> before = ranges.floorEntry(start);
+		if (before != null && before.getValue() >= start) {
+			start = before.getKey();
+			end = Math.max(end, before.getValue());
+		}
+		Map.Entry<Long, Long> after;
+		while ((after = ranges.ceilingEntry(start)) != null && after.getKey() <= end) {
+			end = Math.max(end, after.getValue());
+			ranges.remove(after.getKey());
+		}
+		ranges.put(start, end);
+	}
+
+	/**
+	 * Saves the session, replacing the previous copy in one step.
+	 */
+	synchronized void save(Path sessionFile) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("owner", owner);
+		properties.setProperty("fileName", fileName);
+		properties.setProperty("size", String.valueOf(size));
+		properties.setProperty("policy", policy.name());
+		properties.setProperty("typeChecked", String.valueOf(typeChecked));
+		properties.setProperty("lastWrite", String.valueOf(lastWrite));
+		StringBuilder received = new StringBuilder();
+		for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+			received.append(received.length() > 0 ? "," : "").append(range.getKey()).append('-').append(range.getValue());
+		}
+		properties.setProperty("ranges", received.toString());
+		Path temp = sessionFile.resolveSibling(sessionFile.getFileName() + ".tmp");
+		try (OutputStream output = Files.newOutputStream(temp)) {
+			properties.store(output, null);
+		}
+		try {
+			Files.move(temp, sessionFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, sessionFile, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	static ChunkedUpload load(String id, Path sessionFile, Path file) throws IOException {
+		Properties properties = new Properties();
+		try (InputStream input = Files.newInputStream(sessionFile)) {
+			properties.load(input);
+		}
+		try {
+			ChunkedUpload upload = new ChunkedUpload(id, properties.getProperty("owner"),
+					properties.getProperty("fileName"), Long.parseLong(properties.getProperty("size")),
+					UploadPolicy.valueOf(properties.getProperty("policy")), file);
+			upload.typeChecked = Boolean.parseBoolean(properties.getProperty("typeChecked"));
+			upload.lastWrite = Long.parseLong(properties.getProperty("lastWrite"));
+			String received = properties.getProperty("ranges", "");
+			for (String range : received.isEmpty() ? new String[0] : received.split(",")) {
+				String[] bounds = range.split("-");
+				upload.ranges.put(Long.parseLong(bounds[0]), Long.parseLong(bounds[1]));
+			}
+			return upload;
+		} catch (RuntimeException e) {
+			throw new IOException("Corrupt upload session " + sessionFile + ": " + e.getMessage(), e);
+		}
+	}
+
+}
@@ -0,0 +1,318 @@
+package com.spring.getready.services.upload;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileCopyUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.spring.getready.interceptor.FileException;
+import com.spring.getready.services.ingestion.CapacityException;
+
+/**
+ * Resumable uploads for clients on unreliable connections. A session is
+ * created with the final size, chunks are written at their offsets in any
+ * order and as often as needed, and the client asks for the offset to
+ * resume from after a dropped connection. Once complete, the file is handed
+ * to the normal upload flow as a {@link MultipartFile}.
+ * <p>
+ * Each session's file is allocated at its final size up front and chunks
+ * are written straight into place with positional writes, so there are no
+ * part files to assemble. A range is recorded only once it is on disk, so a
+ * crash never claims bytes that were lost. The type is checked as soon as
+ * the first kilobyte has arrived, as for one-shot uploads.
+ */
+@Service
+public class ChunkedUploadService {
+
+	private static final String SESSION_SUFFIX = ".session";
+
+	private static final String DATA_SUFFIX = ".part";
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	@Value("${upload.chunked.path:${file.upload-path}/chunked}")
+	private String path;
+
+	@Value("${upload.chunked.max-size-mb:3}")
+	private long maxSizeMb;
+
+	@Value("${upload.chunked.chunk-size-kb:512}")
+	private long chunkSizeKb;
+
+	@Value("${upload.chunked.expiry-hours:24}")
+	private long expiryHours;
+
+	@Value("${upload.chunked.max-sessions-per-user:3}")
+	private int maxSessionsPerUser;
+
+	private Path directory;
+
+	private final Map<String, ChunkedUpload> uploads = new ConcurrentHashMap<>();
+
+	@PostConstruct
+	public void init() throws IOException {
+		directory = Paths.get(path);
+		Files.createDirectories(directory);
+		List<Path> sessions;
+		try (Stream<Path> listing = Files.list(directory)) {
+			sessions = listing.filter(file -> file.getFileName().toString().endsWith(SESSION_SUFFIX))
+					.collect(Collectors.toList());
+		}
+		for (Path sessionFile : sessions) {
+			String name = sessionFile.getFileName().toString();
+			String id = name.substring(0, name.length() - SESSION_SUFFIX.length());
+			try {
+				uploads.put(id, ChunkedUpload.load(id, sessionFile, directory.resolve(id + DATA_SUFFIX)));
+			} catch (IOException e) {
+				System.out.println("Dropping upload session " + id + ": " + e.getMessage());
+				delete(id);
+			}
+		}
+		expire();
+		// data without a session, or a session saved halfway
+		try (Stream<Path> listing = Files.list(directory)) {
+			for (Path file : listing.collect(Collectors.toList())) {
+				String name = file.getFileName().toString();
+				if (name.endsWith(".tmp") || (name.endsWith(DATA_SUFFIX)
+						&& !uploads.containsKey(name.substring(0, name.length() - DATA_SUFFIX.length())))) {
+					Files.deleteIfExists(file);
+				}
+			}
+		}
+		System.out.println("Resumable uploads: " + uploads.size() + " sessions in " + directory);
+	}
+
+	public long getChunkSize() {
+		return chunkSizeKb * 1024;
+	}
+
+	/**
+	 * Starts a session, dropping the user's oldest one if they have too many.
+	 */
+	public ChunkedUpload create(String owner, String fileName, long size, UploadPolicy policy) throws IOException {
+		if (fileName == null || fileName.trim().isEmpty()) {
+			throw new IllegalArgumentException("The file needs a name");
+		}
+		if (size <= 0 || size > maxSizeMb * 1024 * 1024) {
+			throw new IllegalArgumentException("Uploads must be between 1 byte and " + maxSizeMb + " MB");
+		}
+		expire();
+		List<ChunkedUpload> owned = uploads.values().stream().filter(upload -> upload.getOwner().equals(owner))
+				.sorted(Comparator.comparingLong(ChunkedUpload::getLastWrite)).collect(Collectors.toList());
+		for (int i = 0; i <= owned.size() - maxSessionsPerUser; i++) {
+			discard(owned.get(i).getId());
+		}
+		if (directory.toFile().getUsableSpace() < size * 2) {
+			throw new CapacityException("Not enough disk space for uploads");
+		}
+
+		String id = UUID.randomUUID().toString();
+		String baseName = fileName.substring(Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf('\\')) + 1);
+		ChunkedUpload upload = new ChunkedUpload(id, owner, baseName, size, policy, directory.resolve(id + DATA_SUFFIX));
+		try (RandomAccessFile file = new RandomAccessFile(upload.getFile().toFile(), "rw")) {
+			file.setLength(size);
+		}
+		upload.save(sessionFile(id));
+		uploads.put(id, upload);
+		return upload;
+	}
+
+	/**
+	 * @throws FileException if there is no such session for the user
+	 */
+	public ChunkedUpload get(String id, String owner) throws FileException {
+		ChunkedUpload upload = id != null ? uploads.get(id) : null;
+		if (upload == null || !upload.getOwner().equals(owner)) {
+			throw new FileException("Upload " + id + " does not exist or has expired");
+		}
+		return upload;
+	}
+
+	/**
+	 * Writes a chunk at its offset. If the body ends early, what did arrive is
+	 * kept, so the client resumes after it.
+	 *
+	 * @return the offset to continue from
+	 */
+	public long write(String id, String owner, long offset, long length, InputStream body) throws IOException {
+		ChunkedUpload upload = get(id, owner);
+		if (offset < 0 || length <= 0 || offset + length > upload.getSize()) {
+			throw new IllegalArgumentException("Bytes " + offset + " to " + (offset + length) + " are outside the "
+					+ upload.getSize() + " byte upload");
+		}
+		if (length > getChunkSize()) {
+			throw new IllegalArgumentException("Chunks are at most " + getChunkSize() + " bytes");
+		}
+		long written = 0;
+		try (FileChannel channel = FileChannel.open(upload.getFile(), StandardOpenOption.WRITE)) {
+			ReadableByteChannel source = Channels.newChannel(body);
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			try {
+				while (written < length) {
+					buffer.clear().limit((int) Math.min(BUFFER_SIZE, length - written));
+					if (source.read(buffer) < 0) {
+						break;
+					}
+					buffer.flip();
+					while (buffer.hasRemaining()) {
+						written += channel.write(buffer, offset + written);
+					}
+				}
+			} finally {
+				if (written > 0) {
+					channel.force(false);
+					upload.received(offset, offset + written);
+					upload.save(sessionFile(id));
+				}
+			}
+		}
+		checkType(upload);
+		return upload.getOffset();
+	}
+
+	/**
+	 * Sniffs the type from the first kilobyte, or the whole upload if it is
+	 * shorter, once it has arrived, and drops the session if it is refused.
+	 */
+	private void checkType(ChunkedUpload upload) throws IOException {
+		int headLength = (int) Math.min(ContentTypeSniffer.SNIFF_LENGTH, upload.getSize());
+		if (upload.isTypeChecked() || upload.getOffset() < headLength) {
+			return;
+		}
+		ByteBuffer head = ByteBuffer.allocate(headLength);
+		try (FileChannel channel = FileChannel.open(upload.getFile(), StandardOpenOption.READ)) {
+			while (head.hasRemaining()) {
+				if (channel.read(head, head.position()) < 0) {
+					break;
+				}
+			}
+		}
+		ContentTypeSniffer sniffer = new ContentTypeSniffer();
+		TypeCheckStage typeCheck = new TypeCheckStage(sniffer, upload.getFileName(), upload.getPolicy());
+		try {
+			sniffer.update(head.array(), 0, head.position());
+			typeCheck.finish();
+		} catch (IOException e) {
+			discard(upload.getId());
+			throw e;
+		}
+		upload.typeChecked();
+		upload.save(sessionFile(upload.getId()));
+	}
+
+	/**
+	 * The finished upload as a multipart file for the normal upload flow,
+	 * read from where it was assembled.
+	 *
+	 * @throws IOException if bytes are still missing
+	 */
+	public MultipartFile complete(String id, String owner) throws IOException {
+		ChunkedUpload upload = get(id, owner);
+		if (!upload.isComplete()) {
+			throw new IOException("Upload " + id + " has " + upload.getOffset() + " of " + upload.getSize() + " bytes");
+		}
+		return new AssembledFile(upload);
+	}
+
+	public void discard(String id) {
+		uploads.remove(id);
+		delete(id);
+	}
+
+	private void expire() {
+		long cutoff = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(expiryHours);
+		for (ChunkedUpload upload : uploads.values()) {
+			if (upload.getLastWrite() < cutoff) {
+				System.out.println("Upload session " + upload.getId() + " of " + upload.getOwner() + " expired");
+				discard(upload.getId());
+			}
+		}
+	}
+
+	private void delete(String id) {
+		try {
+			Files.deleteIfExists(sessionFile(id));
+			Files.deleteIfExists(directory.resolve(id + DATA_SUFFIX));
+		} catch (IOException e) {
+			System.out.println("Could not delete upload session " + id + ": " + e.getMessage());
+		}
+	}
+
+	private Path sessionFile(String id) {
+		return directory.resolve(id + SESSION_SUFFIX);
+	}
+
+	private static class AssembledFile implements MultipartFile {
+
+		private final ChunkedUpload upload;
+
+		AssembledFile(ChunkedUpload upload) {
+			this.upload = upload;
+		}
+
+		@Override
+		public String getName() {
+			return "resume";
+		}
+
+		@Override
+		public String getOriginalFilename() {
+			return upload.getFileName();
+		}
+
+		@Override
+		public String getContentType() {
+			return null;
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return upload.getSize() == 0;
+		}
+
+		@Override
+		public long getSize() {
+			return upload.getSize();
+		}
+
+		@Override
+		public byte[] getBytes() throws IOException {
+			return Files.readAllBytes(upload.getFile());
+		}
+
+		@Override
+		public InputStream getInputStream() throws IOException {
+			return Files.newInputStream(upload.getFile());
+		}
+
+		@Override
+		public void transferTo(File dest) throws IOException {
+			FileCopyUtils.copy(upload.getFile().toFile(), dest);
+		}
+
+	}
+
+}
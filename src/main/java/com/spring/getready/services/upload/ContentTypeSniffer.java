@@ -0,0 +1,247 @@
+package com.spring.getready.services.upload;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Detects the real type of an upload from its leading bytes rather than from
+ * the file name. A Word 97 document shares its container with other Office
+ * files, so it is only confirmed once its WordDocument stream has been seen,
+ * which may be anywhere in the upload.
+ */
+public class ContentTypeSniffer implements UploadStage {
+
+	public static final String PDF = "application/pdf";
+
+	public static final String DOC = "application/msword";
+
+	public static final String DOCX = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+
+	public static final String ZIP = "application/zip";
+
+	public static final String TEXT = "text/plain";
+
+	public static final String JSON = "application/json";
+
+	public static final String PNG = "image/png";
+
+	public static final String JPEG = "image/jpeg";
+
+	public static final String GIF = "image/gif";
+
+	public static final String EXECUTABLE = "application/x-executable";
+
+	public static final String UNKNOWN = "application/octet-stream";
+
+	// the type is known once this many bytes, or the whole upload if shorter, have been seen
+	public static final int SNIFF_LENGTH = 1024;
+
+	private static final byte[] OLE_MAGIC = { (byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0, (byte) 0xA1, (byte) 0xB1,
+			0x1A, (byte) 0xE1 };
+
+	// OLE directory entries are 128 bytes and start with their UTF-16LE name, null terminated
+	private static final int OLE_ENTRY_SIZE = 128;
+
+	private static final byte[] WORD_DOCUMENT = "WordDocument\0".getBytes(StandardCharsets.UTF_16LE);
+
+	private static final int ZIP_HEADER_SIZE = 30;
+
+	private final byte[] head = new byte[SNIFF_LENGTH];
+
+	private int headLength;
+
+	private long position;
+
+	// whether the name at the last entry boundary matched as far as the previous buffer went
+	private boolean partialMatch;
+
+	private boolean wordDocument;
+
+	private boolean finished;
+
+	private String contentType;
+
+	public ContentTypeSniffer() {
+	}
+
+	@Override
+	public void update(byte[] buffer, int offset, int length) {
+		if (headLength < SNIFF_LENGTH) {
+			int count = Math.min(length, SNIFF_LENGTH - headLength);
+			System.arraycopy(buffer, offset, head, headLength, count);
+			headLength += count;
+		}
+		if (!wordDocument && isOle()) {
+			findWordDocument(buffer, offset, length);
+		}
+		position += length;
+	}
+
+	@Override
+	public void finish() {
+		finished = true;
+	}
+
+	/**
+	 * Whether enough has been seen for the type to be final before the end of
+	 * the upload.
+	 */
+	public boolean isDetermined() {
+		return headLength == SNIFF_LENGTH && (wordDocument || !isOle());
+	}
+
+	/**
+	 * The sniffed type. Until the upload has finished, an OLE container
+	 * without a WordDocument stream so far is provisionally a Word document.
+	 */
+	public String getContentType() {
+		if (contentType != null) {
+			return contentType;
+		}
+		if (isOle()) {
+			if (!wordDocument && !finished) {
+				return DOC;
+			}
+			contentType = wordDocument ? DOC : UNKNOWN;
+		} else {
+			contentType = detect(Arrays.copyOf(head, headLength));
+		}
+		return contentType;
+	}
+
+	private boolean isOle() {
+		return headLength >= OLE_MAGIC.length && Arrays.equals(head, 0, OLE_MAGIC.length, OLE_MAGIC, 0, OLE_MAGIC.length);
+	}
+
+	/**
+	 * Looks for a directory entry named WordDocument at each 128-byte boundary
+	 * of the buffer, comparing a name cut by the end of the previous buffer
+	 * from where it left off.
+	 */
+	private void findWordDocument(byte[] buffer, int offset, int length) {
+		long end = position + length;
+		long entry = position - position % OLE_ENTRY_SIZE;
+		for (; entry < end && !wordDocument; entry += OLE_ENTRY_SIZE) {
+			int matched = (int) Math.max(0, position - entry);
+			if (matched >= WORD_DOCUMENT.length || (matched > 0 && !partialMatch)) {
+				continue;
+			}
+			int count = (int) Math.min(WORD_DOCUMENT.length - matched, end - entry - matched);
+			int from = offset + (int) (entry + matched - position);
+			boolean matches = Arrays.equals(buffer, from, from + count, WORD_DOCUMENT, matched, matched + count);
+			if (matches && matched + count == WORD_DOCUMENT.length) {
+				wordDocument = true;
+			}
+			partialMatch = matches;
+		}
+	}
+
+	private String detect(byte[] bytes) {
+		if (startsWith(bytes, 0x25, 0x50, 0x44, 0x46, 0x2D)) {
+			return PDF;
+		}
+		if (startsWith(bytes, 0x50, 0x4B, 0x03, 0x04)) {
+			return isDocx(bytes) ? DOCX : ZIP;
+		}
+		if (startsWith(bytes, 0x89, 0x50, 0x4E, 0x47)) {
+			return PNG;
+		}
+		if (startsWith(bytes, 0xFF, 0xD8, 0xFF)) {
+			return JPEG;
+		}
+		if (startsWith(bytes, 0x47, 0x49, 0x46, 0x38)) {
+			return GIF;
+		}
+		if (startsWith(bytes, 0x4D, 0x5A) || startsWith(bytes, 0x7F, 0x45, 0x4C, 0x46)
+				|| startsWith(bytes, 0xCA, 0xFE, 0xBA, 0xBE)) {
+			return EXECUTABLE;
+		}
+		if (isText(bytes)) {
+			int first = firstNonWhitespace(bytes);
+			return first == '{' || first == '[' ? JSON : TEXT;
+		}
+		return UNKNOWN;
+	}
+
+	/**
+	 * Whether a zip is a Word document, from the names of the entries whose
+	 * local headers fall within the bytes: Word writes [Content_Types].xml
+	 * first and keeps the document under word/, while the other Office formats
+	 * use xl/ and ppt/.
+	 */
+	private static boolean isDocx(byte[] bytes) {
+		boolean contentTypesFirst = false;
+		int header = 0;
+		while (header + ZIP_HEADER_SIZE <= bytes.length && readInt(bytes, header) == 0x04034B50) {
+			int nameLength = readShort(bytes, header + 26);
+			if (header + ZIP_HEADER_SIZE + nameLength > bytes.length) {
+				break;
+			}
+			String name = new String(bytes, header + ZIP_HEADER_SIZE, nameLength, StandardCharsets.UTF_8);
+			if (name.startsWith("word/")) {
+				return true;
+			}
+			if (name.startsWith("xl/") || name.startsWith("ppt/")) {
+				return false;
+			}
+			if (header == 0) {
+				contentTypesFirst = name.equals("[Content_Types].xml");
+			}
+			// with a data descriptor the size of the entry is only known after its data
+			if ((readShort(bytes, header + 6) & 0x08) != 0) {
+				break;
+			}
+			long next = (long) header + ZIP_HEADER_SIZE + nameLength + readShort(bytes, header + 28)
+					+ (readInt(bytes, header + 18) & 0xFFFFFFFFL);
+			if (next > bytes.length) {
+				break;
+			}
+			header = (int) next;
+		}
+		return contentTypesFirst;
+	}
+
+	private static int readShort(byte[] bytes, int offset) {
+		return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8;
+	}
+
+	private static int readInt(byte[] bytes, int offset) {
+		return readShort(bytes, offset) | readShort(bytes, offset + 2) << 16;
+	}
+
+	private static boolean startsWith(byte[] bytes, int... prefix) {
+		if (bytes.length < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if ((bytes[i] & 0xFF) != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isText(byte[] bytes) {
+		if (bytes.length == 0) {
+			return false;
+		}
+		for (byte value : bytes) {
+			int b = value & 0xFF;
+			// control characters other than whitespace do not occur in text; bytes >= 0x80 may be UTF-8
+			if (b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int firstNonWhitespace(byte[] bytes) {
+		for (byte value : bytes) {
+			if (!Character.isWhitespace(value)) {
+				return value;
+			}
+		}
+		return -1;
+	}
+
+}
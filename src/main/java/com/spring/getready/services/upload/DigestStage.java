@@ -0,0 +1,35 @@
+package com.spring.getready.services.upload;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public class DigestStage implements UploadStage {
+
+	private final MessageDigest digest;
+
+	private String hex;
+
+	public DigestStage() {
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public void update(byte[] buffer, int offset, int length) {
+		digest.update(buffer, offset, length);
+	}
+
+	@Override
+	public void finish() {
+		hex = String.format("%064x", new BigInteger(1, digest.digest()));
+	}
+
+	public String getHex() {
+		return hex;
+	}
+
+}
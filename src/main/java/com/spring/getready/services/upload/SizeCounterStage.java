@@ -0,0 +1,34 @@
+package com.spring.getready.services.upload;
+
+import java.io.IOException;
+
+public class SizeCounterStage implements UploadStage {
+
+	private final long maxSize;
+
+	private long size;
+
+	public SizeCounterStage() {
+		this(Long.MAX_VALUE);
+	}
+
+	/**
+	 * Fails the upload as soon as it grows past the given size.
+	 */
+	public SizeCounterStage(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	@Override
+	public void update(byte[] buffer, int offset, int length) throws IOException {
+		size += length;
+		if (size > maxSize) {
+			throw new IOException("File is larger than " + maxSize + " bytes");
+		}
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+}
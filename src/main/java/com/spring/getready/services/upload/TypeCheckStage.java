@@ -0,0 +1,81 @@
+package com.spring.getready.services.upload;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fails an upload whose sniffed type is not allowed, or does not match its
+ * extension, as soon as the sniffer has seen enough of it. That is within the
+ * first buffer, before anything of a larger upload is written. Must come
+ * after the sniffer in the pipeline.
+ */
+public class TypeCheckStage implements UploadStage {
+
+	private static final Map<String, List<String>> EXTENSION_TYPES = new HashMap<>();
+
+	static {
+		EXTENSION_TYPES.put("pdf", Collections.singletonList(ContentTypeSniffer.PDF));
+		EXTENSION_TYPES.put("doc", Collections.singletonList(ContentTypeSniffer.DOC));
+		EXTENSION_TYPES.put("docx", Collections.singletonList(ContentTypeSniffer.DOCX));
+		// an archive of a Word document's parts is one, whatever it is called
+		EXTENSION_TYPES.put("zip", Arrays.asList(ContentTypeSniffer.ZIP, ContentTypeSniffer.DOCX));
+		// text that happens to start with a bracket sniffs as JSON, and JSON with a byte order mark as text
+		EXTENSION_TYPES.put("txt", Arrays.asList(ContentTypeSniffer.TEXT, ContentTypeSniffer.JSON));
+		EXTENSION_TYPES.put("json", Arrays.asList(ContentTypeSniffer.JSON, ContentTypeSniffer.TEXT));
+		EXTENSION_TYPES.put("png", Collections.singletonList(ContentTypeSniffer.PNG));
+		EXTENSION_TYPES.put("jpg", Collections.singletonList(ContentTypeSniffer.JPEG));
+		EXTENSION_TYPES.put("jpeg", Collections.singletonList(ContentTypeSniffer.JPEG));
+		EXTENSION_TYPES.put("gif", Collections.singletonList(ContentTypeSniffer.GIF));
+	}
+
+	private final ContentTypeSniffer sniffer;
+
+	private final String fileName;
+
+	private final UploadPolicy policy;
+
+	private boolean checked;
+
+	public TypeCheckStage(ContentTypeSniffer sniffer, String fileName, UploadPolicy policy) {
+		this.sniffer = sniffer;
+		this.fileName = fileName == null ? "" : fileName;
+		this.policy = policy;
+	}
+
+	@Override
+	public void update(byte[] buffer, int offset, int length) throws IOException {
+		if (!checked && sniffer.isDetermined()) {
+			check();
+		}
+	}
+
+	@Override
+	public void finish() throws IOException {
+		if (!checked) {
+			check();
+		}
+	}
+
+	private void check() throws UnsupportedFileException {
+		checked = true;
+		String contentType = sniffer.getContentType();
+		int dot = fileName.lastIndexOf('.');
+		String extension = dot < 0 ? "" : fileName.substring(dot + 1).toLowerCase();
+		// a text file starting with a bracket sniffs as JSON but is still text to a policy that takes text
+		boolean textAsJson = ContentTypeSniffer.JSON.equals(contentType) && extension.equals("txt")
+				&& policy.allows(ContentTypeSniffer.TEXT);
+		if (!textAsJson && !policy.allows(contentType)) {
+			throw new UnsupportedFileException(fileName + " is not a " + policy.getDescription() + " file");
+		}
+		List<String> expected = EXTENSION_TYPES.get(extension);
+		if (expected == null || !expected.contains(contentType)) {
+			throw new UnsupportedFileException(fileName + " does not have the extension of its content ("
+					+ contentType + ")");
+		}
+	}
+
+}
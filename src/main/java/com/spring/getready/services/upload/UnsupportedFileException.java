@@ -0,0 +1,20 @@
+package com.spring.getready.services.upload;
+
+import java.io.IOException;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.UNSUPPORTED_MEDIA_TYPE)
+public class UnsupportedFileException extends IOException {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 4920175683312467105L;
+
+	public UnsupportedFileException(String message) {
+		super(message);
+	}
+
+}
@@ -0,0 +1,33 @@
+package com.spring.getready.services.upload;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Copies an upload to its destination in one read, handing every buffer to
+ * the stages on the way.
+ */
+public final class UploadPipeline {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private UploadPipeline() {
+	}
+
+	public static void copy(InputStream input, OutputStream output, List<UploadStage> stages) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int read;
+		while ((read = input.read(buffer)) != -1) {
+			for (UploadStage stage : stages) {
+				stage.update(buffer, 0, read);
+			}
+			output.write(buffer, 0, read);
+		}
+		for (UploadStage stage : stages) {
+			stage.finish();
+		}
+	}
+
+}
@@ -0,0 +1,44 @@
+package com.spring.getready.services.upload;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The types an upload may be, depending on what it is uploaded as.
+ */
+public enum UploadPolicy {
+
+	RESUME("PDF, DOC, DOCX or TXT", ContentTypeSniffer.PDF, ContentTypeSniffer.DOC, ContentTypeSniffer.DOCX,
+			ContentTypeSniffer.TEXT),
+
+	DOCUMENT("PDF, Word, text, image or ZIP", ContentTypeSniffer.PDF, ContentTypeSniffer.DOC,
+			ContentTypeSniffer.DOCX, ContentTypeSniffer.TEXT, ContentTypeSniffer.JSON, ContentTypeSniffer.ZIP,
+			ContentTypeSniffer.PNG, ContentTypeSniffer.JPEG, ContentTypeSniffer.GIF),
+
+	IMAGE("PNG, JPEG or GIF", ContentTypeSniffer.PNG, ContentTypeSniffer.JPEG, ContentTypeSniffer.GIF),
+
+	USER_IMPORT("JSON", ContentTypeSniffer.JSON);
+
+	private final String description;
+
+	private final Set<String> contentTypes;
+
+	UploadPolicy(String description, String... contentTypes) {
+		this.description = description;
+		this.contentTypes = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(contentTypes)));
+	}
+
+	/**
+	 * The allowed types as a user would name them.
+	 */
+	public String getDescription() {
+		return description;
+	}
+
+	public boolean allows(String contentType) {
+		return contentTypes.contains(contentType);
+	}
+
+}
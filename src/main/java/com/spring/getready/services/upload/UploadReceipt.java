@@ -0,0 +1,59 @@
+package com.spring.getready.services.upload;
+
+import com.spring.getready.model.UploadFile;
+
+/**
+ * Everything learned about an upload during its single pass to disk.
+ */
+public class UploadReceipt {
+
+	private final UploadFile uploadFile;
+
+	private final String fileName;
+
+	private final String originalFileName;
+
+	private final String sha256;
+
+	private final String contentType;
+
+	private final long size;
+
+	public UploadReceipt(UploadFile uploadFile, String fileName, String originalFileName, String sha256,
+			String contentType, long size) {
+		this.uploadFile = uploadFile;
+		this.fileName = fileName;
+		this.originalFileName = originalFileName;
+		this.sha256 = sha256;
+		this.contentType = contentType;
+		this.size = size;
+	}
+
+	/**
+	 * The database row of the upload, or null if the file was only stored.
+	 */
+	public UploadFile getUploadFile() {
+		return uploadFile;
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	public String getOriginalFileName() {
+		return originalFileName;
+	}
+
+	public String getSha256() {
+		return sha256;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+}
@@ -0,0 +1,16 @@
+package com.spring.getready.services.upload;
+
+import java.io.IOException;
+
+/**
+ * One consumer in the single-pass upload pipeline. Stages see every buffer
+ * before it is written to disk and must not keep a reference to it.
+ */
+public interface UploadStage {
+
+	void update(byte[] buffer, int offset, int length) throws IOException;
+
+	default void finish() throws IOException {
+	}
+
+}
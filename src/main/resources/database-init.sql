@@ -66,6 +66,18 @@ CREATE INDEX IF NOT EXISTS idx_app_candidate ON applications(candidate_ref);
 CREATE INDEX IF NOT EXISTS idx_app_job ON applications(job_ref);
 CREATE INDEX IF NOT EXISTS idx_app_score ON applications(ai_score DESC);
 CREATE INDEX IF NOT EXISTS idx_app_status ON applications(status);
+CREATE INDEX IF NOT EXISTS idx_upload_file_name ON upload_files(file_name);
+ALTER TABLE upload_files ADD COLUMN IF NOT EXISTS sha256 VARCHAR(64);
+CREATE INDEX IF NOT EXISTS idx_upload_sha256 ON upload_files(sha256);
+
+-- Journal replay key, so an application accepted during an outage is inserted once
+ALTER TABLE applications ADD COLUMN IF NOT EXISTS submission_ref VARCHAR(36);
+CREATE UNIQUE INDEX IF NOT EXISTS idx_app_submission_ref ON applications(submission_ref);
+ALTER TABLE applications ADD COLUMN IF NOT EXISTS idempotency_key VARCHAR(64);
+CREATE UNIQUE INDEX IF NOT EXISTS idx_app_idempotency ON applications(job_ref, candidate_ref, idempotency_key);
+
+-- Screening lease, so an unfinished application is requeued by one instance only
+ALTER TABLE applications ADD COLUMN IF NOT EXISTS screening_lease_until TIMESTAMP;
 
 -- Insert user groups
 INSERT INTO user_group (group_name, short_group, is_active) 
@@ -0,0 +1,169 @@
+package com.spring.getready.controller;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.head;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.spring.getready.model.UploadFile;
+import com.spring.getready.repository.UploadFileRepository;
+import com.spring.getready.services.image.ImageVariantService;
+import com.spring.getready.services.storage.FileStorageService;
+import com.spring.getready.services.storage.LocalStorageBackend;
+import com.spring.getready.services.storage.UploadAccessRecorder;
+import com.spring.getready.services.upload.ContentTypeSniffer;
+
+class DownloadControllerTests {
+
+	private static final String PDF = "%PDF-1.4\n" + String.join("", Collections.nCopies(20, "0123456789")) + "\n%%EOF\n";
+
+	private static final String TEXT = String.join("\n", Collections.nCopies(100, "Java, Spring Boot, PostgreSQL"));
+
+	// whole seconds, as HTTP dates carry them
+	private static final long UPLOADED_ON = 1_700_000_000_000L;
+
+	@TempDir
+	Path directory;
+
+	private final UploadFileRepository uploadFileRepository = mock(UploadFileRepository.class);
+
+	private FileStorageService fileStorageService;
+
+	private MockMvc mockMvc;
+
+	@BeforeEach
+	void setUp() {
+		fileStorageService = new FileStorageService();
+		ReflectionTestUtils.setField(fileStorageService, "blobBackend", new LocalStorageBackend(directory));
+		ReflectionTestUtils.setField(fileStorageService, "uploadPath", directory.resolve("uploads").toString());
+		ReflectionTestUtils.setField(fileStorageService, "compressionEnabled", true);
+		ReflectionTestUtils.setField(fileStorageService, "compressTypes",
+				new HashSet<>(Arrays.asList(ContentTypeSniffer.TEXT)));
+		ReflectionTestUtils.setField(fileStorageService, "compressionLevel", 6);
+		fileStorageService.init();
+
+		DownloadController controller = new DownloadController();
+		ReflectionTestUtils.setField(controller, "uploadFileRepository", uploadFileRepository);
+		ReflectionTestUtils.setField(controller, "fileStorageService", fileStorageService);
+		ReflectionTestUtils.setField(controller, "uploadAccessRecorder", mock(UploadAccessRecorder.class));
+		ReflectionTestUtils.setField(controller, "imageVariantService", mock(ImageVariantService.class));
+		mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+	}
+
+	private String upload(int id, String name, String content, String contentType) throws Exception {
+		byte[] bytes = content.getBytes(StandardCharsets.US_ASCII);
+		String sha256 = fileStorageService.write(new ByteArrayInputStream(bytes), Collections.emptyList());
+		UploadFile uploadFile = new UploadFile();
+		uploadFile.setFileId(id);
+		uploadFile.setFileName(name);
+		uploadFile.setFileOriginalName(name);
+		uploadFile.setSha256(sha256);
+		uploadFile.setContentType(contentType);
+		uploadFile.setFileSize((long) bytes.length);
+		uploadFile.setUploadedOn(new Timestamp(UPLOADED_ON));
+		when(uploadFileRepository.findById(id)).thenReturn(Optional.of(uploadFile));
+		return "\"" + sha256 + "\"";
+	}
+
+	@Test
+	void sendsARange() throws Exception {
+		upload(1, "resume.pdf", PDF, ContentTypeSniffer.PDF);
+
+		mockMvc.perform(get("/view/attachment").param("id", "1").header(HttpHeaders.RANGE, "bytes=9-18"))
+				.andExpect(status().isPartialContent())
+				.andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 9-18/" + PDF.length()))
+				.andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 10))
+				.andExpect(content().string("0123456789"));
+	}
+
+	@Test
+	void refusesARangePastTheEnd() throws Exception {
+		upload(1, "resume.pdf", PDF, ContentTypeSniffer.PDF);
+
+		mockMvc.perform(get("/view/attachment").param("id", "1").header(HttpHeaders.RANGE, "bytes=5000-"))
+				.andExpect(status().isRequestedRangeNotSatisfiable())
+				.andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */" + PDF.length()));
+	}
+
+	@Test
+	void sendsARangeOfAGzippedUploadInflated() throws Exception {
+		upload(1, "resume.txt", TEXT, ContentTypeSniffer.TEXT);
+
+		mockMvc.perform(get("/view/attachment").param("id", "1").header(HttpHeaders.RANGE, "bytes=-6")
+				.header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+				.andExpect(status().isPartialContent())
+				.andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+				.andExpect(header().string(HttpHeaders.CONTENT_RANGE,
+						"bytes " + (TEXT.length() - 6) + "-" + (TEXT.length() - 1) + "/" + TEXT.length()))
+				.andExpect(content().string("greSQL"));
+	}
+
+	@Test
+	void answersHeadFromTheRow() throws Exception {
+		upload(1, "resume.pdf", PDF, ContentTypeSniffer.PDF);
+
+		mockMvc.perform(head("/view/attachment").param("id", "1"))
+				.andExpect(status().isOk())
+				.andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, PDF.length()))
+				.andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"));
+	}
+
+	@Test
+	void answersIfNoneMatchWithNotModified() throws Exception {
+		String etag = upload(1, "resume.pdf", PDF, ContentTypeSniffer.PDF);
+
+		mockMvc.perform(get("/view/attachment").param("id", "1").header(HttpHeaders.IF_NONE_MATCH, etag))
+				.andExpect(status().isNotModified())
+				.andExpect(header().string(HttpHeaders.ETAG, etag));
+		mockMvc.perform(get("/view/attachment").param("id", "1").header(HttpHeaders.IF_NONE_MATCH, "\"other\""))
+				.andExpect(status().isOk());
+	}
+
+	@Test
+	void answersIfModifiedSinceWithNotModified() throws Exception {
+		upload(1, "resume.pdf", PDF, ContentTypeSniffer.PDF);
+
+		HttpHeaders since = new HttpHeaders();
+		since.setIfModifiedSince(UPLOADED_ON);
+		mockMvc.perform(get("/view/attachment").param("id", "1").headers(since))
+				.andExpect(status().isNotModified());
+		since.setIfModifiedSince(UPLOADED_ON - 1000);
+		mockMvc.perform(get("/view/attachment").param("id", "1").headers(since))
+				.andExpect(status().isOk());
+	}
+
+	@Test
+	void sendsEverythingWhenIfRangeNamesAnotherVersion() throws Exception {
+		String etag = upload(1, "resume.pdf", PDF, ContentTypeSniffer.PDF);
+
+		mockMvc.perform(get("/view/attachment").param("id", "1").header(HttpHeaders.RANGE, "bytes=0-3")
+				.header(HttpHeaders.IF_RANGE, etag))
+				.andExpect(status().isPartialContent())
+				.andExpect(content().string("%PDF"));
+		mockMvc.perform(get("/view/attachment").param("id", "1").header(HttpHeaders.RANGE, "bytes=0-3")
+				.header(HttpHeaders.IF_RANGE, "\"other\""))
+				.andExpect(status().isOk())
+				.andExpect(content().string(PDF));
+	}
+
+}
@@ -0,0 +1,59 @@
+package com.spring.getready.interceptor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class RateLimitBucketTests {
+
+	private static final long INTERVAL = 1000;
+
+	private static final long BURST = 3 * INTERVAL;
+
+	@Test
+	void allowsTheBurstThenTellsHowLongToWait() {
+		RateLimitFilter.Bucket bucket = new RateLimitFilter.Bucket();
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0, bucket.tryAcquire(0, INTERVAL, BURST));
+		}
+		assertEquals(INTERVAL, bucket.tryAcquire(0, INTERVAL, BURST));
+		assertEquals(INTERVAL / 2, bucket.tryAcquire(INTERVAL / 2, INTERVAL, BURST));
+		assertEquals(0, bucket.tryAcquire(INTERVAL, INTERVAL, BURST));
+	}
+
+	@Test
+	void refusedAttemptsTakeNoToken() {
+		RateLimitFilter.Bucket bucket = new RateLimitFilter.Bucket();
+		for (int i = 0; i < 3; i++) {
+			bucket.tryAcquire(0, INTERVAL, BURST);
+		}
+		for (int i = 0; i < 5; i++) {
+			assertTrue(bucket.tryAcquire(0, INTERVAL, BURST) > 0);
+		}
+		assertEquals(0, bucket.tryAcquire(INTERVAL, INTERVAL, BURST));
+	}
+
+	@Test
+	void refundGivesTheTokenBack() {
+		RateLimitFilter.Bucket bucket = new RateLimitFilter.Bucket();
+		for (int i = 0; i < 3; i++) {
+			bucket.tryAcquire(0, INTERVAL, BURST);
+		}
+		bucket.refund(INTERVAL);
+		assertEquals(0, bucket.tryAcquire(0, INTERVAL, BURST));
+		assertTrue(bucket.tryAcquire(0, INTERVAL, BURST) > 0);
+	}
+
+	@Test
+	void isFullOnceRefilled() {
+		RateLimitFilter.Bucket bucket = new RateLimitFilter.Bucket();
+		assertTrue(bucket.isFull(0));
+		bucket.tryAcquire(0, INTERVAL, BURST);
+		bucket.tryAcquire(0, INTERVAL, BURST);
+		assertFalse(bucket.isFull(INTERVAL));
+		assertTrue(bucket.isFull(2 * INTERVAL));
+	}
+
+}
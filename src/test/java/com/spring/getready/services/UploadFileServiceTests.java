@@ -0,0 +1,85 @@
+package com.spring.getready.services;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.spring.getready.repository.UploadFileRepository;
+import com.spring.getready.services.storage.FileStorageService;
+import com.spring.getready.services.storage.LocalStorageBackend;
+
+class UploadFileServiceTests {
+
+	private static final byte[] PDF = "%PDF-1.4\n%%EOF\n".getBytes(StandardCharsets.US_ASCII);
+
+	@TempDir
+	Path directory;
+
+	private final UploadFileRepository uploadFileRepository = mock(UploadFileRepository.class);
+
+	private FileStorageService fileStorageService;
+
+	private UploadFileService service(long graceHours) {
+		fileStorageService = new FileStorageService();
+		ReflectionTestUtils.setField(fileStorageService, "blobBackend", new LocalStorageBackend(directory));
+		ReflectionTestUtils.setField(fileStorageService, "uploadPath", directory.resolve("uploads").toString());
+		ReflectionTestUtils.setField(fileStorageService, "blobGraceHours", graceHours);
+		ReflectionTestUtils.setField(fileStorageService, "compressTypes", Collections.emptySet());
+		fileStorageService.init();
+
+		UploadFileService service = new UploadFileService();
+		ReflectionTestUtils.setField(service, "uploadFileRepository", uploadFileRepository);
+		ReflectionTestUtils.setField(service, "fileStorageService", fileStorageService);
+		return service;
+	}
+
+	private String storeOldBlob() throws Exception {
+		String sha256 = fileStorageService.write(new ByteArrayInputStream(PDF), Collections.emptyList());
+		Thread.sleep(10);
+		return sha256;
+	}
+
+	private boolean isStored(String sha256) {
+		return Files.exists(directory.resolve(FileStorageService.key(sha256, false)));
+	}
+
+	@Test
+	void keepsABlobThatAnotherUploadRefersTo() throws Exception {
+		UploadFileService service = service(0);
+		String sha256 = storeOldBlob();
+		when(uploadFileRepository.countBySha256AndIsDeletedFalse(sha256)).thenReturn(1L);
+
+		service.discardStoredFile("a.pdf", sha256);
+		assertTrue(isStored(sha256));
+	}
+
+	@Test
+	void keepsABlobWithinItsGracePeriod() throws Exception {
+		UploadFileService service = service(24);
+		String sha256 = storeOldBlob();
+
+		service.discardStoredFile("a.pdf", sha256);
+		assertTrue(isStored(sha256));
+	}
+
+	@Test
+	void deletesABlobNoUploadRefersTo() throws Exception {
+		UploadFileService service = service(0);
+		String sha256 = storeOldBlob();
+
+		service.discardStoredFile("a.pdf", sha256);
+		assertFalse(isStored(sha256));
+	}
+
+}
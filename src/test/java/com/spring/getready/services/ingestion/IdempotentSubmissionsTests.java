@@ -0,0 +1,84 @@
+package com.spring.getready.services.ingestion;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class IdempotentSubmissionsTests {
+
+	private IdempotentSubmissions submissions(long ttlSeconds) {
+		IdempotentSubmissions submissions = new IdempotentSubmissions();
+		ReflectionTestUtils.setField(submissions, "ttlSeconds", ttlSeconds);
+		ReflectionTestUtils.setField(submissions, "waitSeconds", 5L);
+		return submissions;
+	}
+
+	@Test
+	void replaysTheFirstResultForTheSameKey() throws Exception {
+		IdempotentSubmissions submissions = submissions(600);
+		AtomicInteger runs = new AtomicInteger();
+
+		assertEquals("ref-1", submissions.execute("key", () -> "ref-" + runs.incrementAndGet()));
+		assertEquals("ref-1", submissions.execute("key", () -> "ref-" + runs.incrementAndGet()));
+		assertEquals("ref-2", submissions.execute("other", () -> "ref-" + runs.incrementAndGet()));
+		assertEquals(2, runs.get());
+	}
+
+	@Test
+	void concurrentCallsShareOneComputation() throws Exception {
+		IdempotentSubmissions submissions = submissions(600);
+		AtomicInteger runs = new AtomicInteger();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<String> first = executor.submit(() -> submissions.execute("key", () -> {
+				runs.incrementAndGet();
+				started.countDown();
+				release.await();
+				return "ref";
+			}));
+			started.await();
+			Future<String> second = executor.submit(() -> submissions.execute("key", () -> "ref-" + runs.incrementAndGet()));
+			release.countDown();
+			assertEquals("ref", first.get(5, TimeUnit.SECONDS));
+			assertEquals("ref", second.get(5, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(1, runs.get());
+	}
+
+	@Test
+	void forgetsAFailureSoItCanBeRetried() throws Exception {
+		IdempotentSubmissions submissions = submissions(600);
+
+		assertThrows(IOException.class, () -> submissions.execute("key", () -> {
+			throw new IOException("disk full");
+		}));
+		assertEquals("ref", submissions.execute("key", () -> "ref"));
+	}
+
+	@Test
+	void runsAgainOnceTheEntryHasExpired() throws Exception {
+		IdempotentSubmissions submissions = submissions(0);
+		AtomicInteger runs = new AtomicInteger();
+
+		submissions.execute("key", () -> runs.incrementAndGet());
+		Thread.sleep(5);
+		submissions.execute("key", () -> runs.incrementAndGet());
+		assertEquals(2, runs.get());
+	}
+
+}
@@ -0,0 +1,155 @@
+package com.spring.getready.services.journal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class ApplicationJournalTests {
+
+	@TempDir
+	Path directory;
+
+	private ApplicationJournal open() throws IOException {
+		ApplicationJournal journal = new ApplicationJournal();
+		ReflectionTestUtils.setField(journal, "journalPath", directory.toString());
+		ReflectionTestUtils.setField(journal, "segmentSizeMb", 1);
+		ReflectionTestUtils.setField(journal, "maxBacklog", 1000);
+		journal.init();
+		return journal;
+	}
+
+	private static JournalRecord record(String submissionRef, String notes) {
+		return new JournalRecord(submissionRef, 1, "candidate@example.com", submissionRef + ".pdf", "resume.pdf",
+				"sha", "application/pdf", 10L, notes, null, 0);
+	}
+
+	private static String take(ApplicationJournal journal) throws Exception {
+		ApplicationJournal.Entry entry = journal.poll(0);
+		journal.acknowledge(entry);
+		return entry.getRecord().getSubmissionRef();
+	}
+
+	private List<Path> segments() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(file -> file.getFileName().toString().endsWith(".log")).sorted()
+					.collect(Collectors.toList());
+		}
+	}
+
+	@Test
+	void treatsATornRecordAtTheTailAsTheEnd() throws Exception {
+		ApplicationJournal journal = open();
+		journal.append(record("a", null));
+		journal.append(record("b", null));
+
+		// a record whose length reached the disk but whose payload did not
+		Path segment = segments().get(0);
+		long end = 0;
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer length = ByteBuffer.allocate(4);
+			while (true) {
+				length.clear();
+				channel.read(length, end);
+				int payload = length.getInt(0);
+				if (payload == 0) {
+					break;
+				}
+				end += 8 + payload;
+			}
+			ByteBuffer torn = ByteBuffer.allocate(12).putInt(100).putInt(12345).putInt(-1);
+			torn.flip();
+			channel.write(torn, end);
+		}
+
+		ApplicationJournal reopened = open();
+		assertEquals(2, reopened.getBacklog());
+		assertEquals("a", take(reopened));
+		assertEquals("b", take(reopened));
+		assertNull(reopened.poll(0));
+
+		// the torn bytes were cleared, so a new record is read back in full
+		reopened.append(record("c", null));
+		assertEquals("c", take(reopened));
+	}
+
+	@Test
+	void fallsBackToThePreviousCheckpointSlot() throws Exception {
+		ApplicationJournal journal = open();
+		journal.append(record("a", null));
+		journal.append(record("b", null));
+		journal.append(record("c", null));
+		assertEquals("a", take(journal));
+		assertEquals("b", take(journal));
+
+		// the second checkpoint went to slot 0; tear it so only the first is valid
+		try (FileChannel channel = FileChannel.open(directory.resolve("checkpoint"), StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 0x7F }), 16);
+		}
+
+		ApplicationJournal reopened = open();
+		assertEquals(2, reopened.getBacklog());
+		assertEquals("b", take(reopened));
+		assertEquals("c", take(reopened));
+		assertNull(reopened.poll(0));
+	}
+
+	@Test
+	void rollsOverToANewSegmentAndDropsConsumedOnes() throws Exception {
+		char[] filler = new char[300 * 1024];
+		Arrays.fill(filler, 'x');
+		String notes = new String(filler);
+
+		ApplicationJournal journal = open();
+		for (String ref : new String[] { "a", "b", "c", "d", "e" }) {
+			journal.append(record(ref, notes));
+		}
+		assertEquals(2, segments().size());
+
+		assertEquals("a", take(journal));
+		assertEquals("b", take(journal));
+		assertEquals("c", take(journal));
+		assertEquals(2, segments().size());
+		assertEquals("d", take(journal));
+		assertEquals(1, segments().size());
+
+		ApplicationJournal reopened = open();
+		assertEquals(1, reopened.getBacklog());
+		ApplicationJournal.Entry entry = reopened.poll(0);
+		assertEquals("e", entry.getRecord().getSubmissionRef());
+		assertEquals(notes, entry.getRecord().getNotes());
+		reopened.acknowledge(entry);
+		assertEquals(0, reopened.getBacklog());
+	}
+
+	@Test
+	void keepsARecordOfAResumeStoredWithoutAHash() throws Exception {
+		ApplicationJournal journal = open();
+		journal.append(new JournalRecord("a", 1, "candidate@example.com", "a.pdf", "resume.pdf", null, null, null,
+				"notes", "key", 5));
+
+		JournalRecord record = open().poll(0).getRecord();
+		assertEquals("a", record.getSubmissionRef());
+		assertNull(record.getSha256());
+		assertNull(record.getContentType());
+		assertNull(record.getFileSize());
+		assertEquals("notes", record.getNotes());
+		assertEquals("key", record.getIdempotencyKey());
+		assertEquals(5, record.getAcceptedOn());
+	}
+
+}
@@ -0,0 +1,135 @@
+package com.spring.getready.services.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.spring.getready.services.upload.ContentTypeSniffer;
+import com.spring.getready.services.upload.UploadStage;
+
+class FileStorageServiceTests {
+
+	private static final byte[] TEXT = String.join("\n", Collections.nCopies(200, "Java, Spring Boot, PostgreSQL"))
+			.getBytes(StandardCharsets.US_ASCII);
+
+	private static final byte[] PDF = "%PDF-1.4\n1 0 obj << >> endobj\n%%EOF\n".getBytes(StandardCharsets.US_ASCII);
+
+	@TempDir
+	Path directory;
+
+	private FileStorageService storage() {
+		FileStorageService storage = new FileStorageService();
+		ReflectionTestUtils.setField(storage, "blobBackend", new LocalStorageBackend(directory.resolve("blobs")));
+		ReflectionTestUtils.setField(storage, "uploadPath", directory.resolve("uploads").toString());
+		ReflectionTestUtils.setField(storage, "blobGraceHours", 24L);
+		ReflectionTestUtils.setField(storage, "compressionEnabled", true);
+		ReflectionTestUtils.setField(storage, "compressTypes", new HashSet<>(
+				Arrays.asList(ContentTypeSniffer.TEXT, ContentTypeSniffer.JSON, ContentTypeSniffer.DOC)));
+		ReflectionTestUtils.setField(storage, "compressionLevel", 6);
+		storage.init();
+		return storage;
+	}
+
+	private List<Path> blobs() throws IOException {
+		try (Stream<Path> files = Files.walk(directory.resolve("blobs"))) {
+			return files.filter(Files::isRegularFile).collect(Collectors.toList());
+		}
+	}
+
+	private static byte[] read(InputStream input) throws IOException {
+		try (input) {
+			return input.readAllBytes();
+		}
+	}
+
+	@Test
+	void storesIdenticalUploadsOnce() throws Exception {
+		FileStorageService storage = storage();
+		String first = storage.write(new ByteArrayInputStream(PDF), Collections.emptyList());
+		String second = storage.write(new ByteArrayInputStream(PDF), Collections.emptyList());
+
+		assertEquals(first, second);
+		List<Path> blobs = blobs();
+		assertEquals(1, blobs.size());
+		assertEquals(directory.resolve("blobs").resolve(FileStorageService.key(first, false)), blobs.get(0));
+		// two upload rows with their own names share the blob
+		assertArrayEquals(PDF, read(storage.open(storage.newFileName("a.pdf"), first)));
+		assertArrayEquals(PDF, read(storage.open(storage.newFileName("b.pdf"), first)));
+	}
+
+	@Test
+	void leavesNothingBehindWhenAStageFails() throws Exception {
+		FileStorageService storage = storage();
+		UploadStage failing = (buffer, offset, length) -> {
+			throw new IOException("rejected");
+		};
+
+		assertThrows(IOException.class,
+				() -> storage.write(new ByteArrayInputStream(PDF), Collections.singletonList(failing)));
+		assertTrue(blobs().isEmpty());
+	}
+
+	@Test
+	void deletesTheBlobOfAHash() throws Exception {
+		FileStorageService storage = storage();
+		String sha256 = storage.write(new ByteArrayInputStream(PDF), Collections.emptyList());
+
+		assertEquals(PDF.length, storage.delete("a.pdf", sha256));
+		assertTrue(blobs().isEmpty());
+	}
+
+	@Test
+	void gzipsTextAndInflatesItOnTheWayOut() throws Exception {
+		FileStorageService storage = storage();
+		String sha256 = storage.write(new ByteArrayInputStream(TEXT), Collections.emptyList());
+
+		StoredBlob blob = storage.locate("a.txt", sha256);
+		assertTrue(blob.isCompressed());
+		assertEquals(FileStorageService.key(sha256, true), blob.getKey());
+		assertTrue(blob.getSize() < TEXT.length);
+		assertEquals(TEXT.length, blob.getContentLength());
+		assertArrayEquals(TEXT, read(storage.open("a.txt", sha256)));
+		assertArrayEquals(Arrays.copyOfRange(TEXT, 100, 150), read(blob.openContent(100, 50)));
+	}
+
+	@Test
+	void leavesCompressedFormatsAsTheyAre() throws Exception {
+		FileStorageService storage = storage();
+		String sha256 = storage.write(new ByteArrayInputStream(PDF), Collections.emptyList());
+
+		StoredBlob blob = storage.locate("a.pdf", sha256);
+		assertFalse(blob.isCompressed());
+		assertEquals(PDF.length, blob.getContentLength());
+	}
+
+	@Test
+	void keepsOneBlobWhenTheCompressionSettingChanges() throws Exception {
+		FileStorageService storage = storage();
+		String sha256 = storage.write(new ByteArrayInputStream(TEXT), Collections.emptyList());
+		ReflectionTestUtils.setField(storage, "compressionEnabled", false);
+
+		assertEquals(sha256, storage.write(new ByteArrayInputStream(TEXT), Collections.emptyList()));
+		assertEquals(1, blobs().size());
+		assertArrayEquals(TEXT, read(storage.open("a.txt", sha256)));
+	}
+
+}
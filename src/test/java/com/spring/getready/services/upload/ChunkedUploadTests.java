@@ -0,0 +1,65 @@
+package com.spring.getready.services.upload;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ChunkedUploadTests {
+
+	@TempDir
+	Path directory;
+
+	private ChunkedUpload upload(long size) {
+		return new ChunkedUpload("id", "owner", "resume.pdf", size, UploadPolicy.RESUME, directory.resolve("id.part"));
+	}
+
+	@Test
+	void resumesAtTheFirstGap() {
+		ChunkedUpload upload = upload(100);
+		upload.received(30, 70);
+		assertEquals(0, upload.getOffset());
+		upload.received(0, 30);
+		assertEquals(70, upload.getOffset());
+		assertFalse(upload.isComplete());
+		upload.received(70, 100);
+		assertEquals(100, upload.getOffset());
+		assertTrue(upload.isComplete());
+	}
+
+	@Test
+	void mergesOverlappingAndRepeatedChunks() {
+		ChunkedUpload upload = upload(100);
+		upload.received(0, 40);
+		upload.received(20, 60);
+		upload.received(10, 30);
+		assertEquals(60, upload.getOffset());
+		upload.received(80, 90);
+		upload.received(50, 85);
+		assertEquals(90, upload.getOffset());
+		upload.received(0, 100);
+		assertTrue(upload.isComplete());
+	}
+
+	@Test
+	void keepsItsRangesAcrossSaveAndLoad() throws Exception {
+		ChunkedUpload upload = upload(100);
+		upload.received(0, 10);
+		upload.received(50, 60);
+		upload.typeChecked();
+		Path sessionFile = directory.resolve("id.session");
+		upload.save(sessionFile);
+
+		ChunkedUpload loaded = ChunkedUpload.load("id", sessionFile, directory.resolve("id.part"));
+		assertEquals(10, loaded.getOffset());
+		assertTrue(loaded.isTypeChecked());
+		assertEquals(UploadPolicy.RESUME, loaded.getPolicy());
+		loaded.received(10, 50);
+		assertEquals(60, loaded.getOffset());
+	}
+
+}
@@ -0,0 +1,113 @@
+package com.spring.getready.services.upload;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+class TypeCheckStageTests {
+
+	private static final byte[] OLE_MAGIC = { (byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0, (byte) 0xA1, (byte) 0xB1,
+			0x1A, (byte) 0xE1 };
+
+	/**
+	 * Runs the content through a sniffer and a type check in one buffer, as
+	 * the upload pipeline would, and returns the sniffed type.
+	 */
+	private static String check(byte[] content, String fileName, UploadPolicy policy) throws IOException {
+		ContentTypeSniffer sniffer = new ContentTypeSniffer();
+		TypeCheckStage typeCheck = new TypeCheckStage(sniffer, fileName, policy);
+		sniffer.update(content, 0, content.length);
+		typeCheck.update(content, 0, content.length);
+		sniffer.finish();
+		typeCheck.finish();
+		return sniffer.getContentType();
+	}
+
+	private static byte[] padded(byte[] head, int length) {
+		byte[] content = new byte[length];
+		System.arraycopy(head, 0, content, 0, head.length);
+		return content;
+	}
+
+	private static byte[] zip(String... entryNames) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+			for (String name : entryNames) {
+				ZipEntry entry = new ZipEntry(name);
+				byte[] data = "<xml/>".getBytes(StandardCharsets.US_ASCII);
+				// stored with its sizes up front, as Word writes its parts
+				entry.setMethod(ZipEntry.STORED);
+				entry.setSize(data.length);
+				CRC32 crc = new CRC32();
+				crc.update(data);
+				entry.setCrc(crc.getValue());
+				zip.putNextEntry(entry);
+				zip.write(data);
+				zip.closeEntry();
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	@Test
+	void rejectsAnExecutableWithADocumentExtension() {
+		byte[] executable = padded(new byte[] { 0x4D, 0x5A, (byte) 0x90, 0x00 }, 4096);
+		ContentTypeSniffer sniffer = new ContentTypeSniffer();
+		TypeCheckStage typeCheck = new TypeCheckStage(sniffer, "resume.pdf", UploadPolicy.RESUME);
+
+		// refused within the first buffer, before the rest is read
+		sniffer.update(executable, 0, ContentTypeSniffer.SNIFF_LENGTH);
+		assertThrows(UnsupportedFileException.class,
+				() -> typeCheck.update(executable, 0, ContentTypeSniffer.SNIFF_LENGTH));
+	}
+
+	@Test
+	void rejectsContentUnderAnotherTypesExtension() {
+		byte[] pdf = "%PDF-1.4\n%%EOF\n".getBytes(StandardCharsets.US_ASCII);
+		assertThrows(UnsupportedFileException.class, () -> check(pdf, "resume.docx", UploadPolicy.RESUME));
+	}
+
+	@Test
+	void rejectsATypeThePolicyDoesNotAllow() {
+		byte[] png = padded(new byte[] { (byte) 0x89, 0x50, 0x4E, 0x47, 0x0D, 0x0A, 0x1A, 0x0A }, 64);
+		assertThrows(UnsupportedFileException.class, () -> check(png, "resume.png", UploadPolicy.RESUME));
+	}
+
+	@Test
+	void rejectsAnOleContainerWithoutAWordDocument() {
+		byte[] ole = padded(OLE_MAGIC, 4096);
+		assertThrows(UnsupportedFileException.class, () -> check(ole, "resume.doc", UploadPolicy.RESUME));
+	}
+
+	@Test
+	void acceptsAWordDocumentInAnOleContainer() throws Exception {
+		byte[] ole = padded(OLE_MAGIC, 4096);
+		byte[] name = "WordDocument\0".getBytes(StandardCharsets.UTF_16LE);
+		System.arraycopy(name, 0, ole, 1024 + 128, name.length);
+		assertEquals(ContentTypeSniffer.DOC, check(ole, "resume.doc", UploadPolicy.RESUME));
+	}
+
+	@Test
+	void tellsAWordDocumentFromOtherZips() throws Exception {
+		byte[] docx = zip("[Content_Types].xml", "_rels/.rels", "word/document.xml");
+		assertEquals(ContentTypeSniffer.DOCX, check(docx, "resume.docx", UploadPolicy.RESUME));
+
+		byte[] xlsx = zip("[Content_Types].xml", "_rels/.rels", "xl/workbook.xml");
+		assertThrows(UnsupportedFileException.class, () -> check(xlsx, "resume.docx", UploadPolicy.RESUME));
+	}
+
+	@Test
+	void acceptsTextThatStartsWithABracket() throws Exception {
+		byte[] text = "[Summary]\nJava developer".getBytes(StandardCharsets.US_ASCII);
+		assertEquals(ContentTypeSniffer.JSON, check(text, "resume.txt", UploadPolicy.RESUME));
+	}
+
+}